@@ -0,0 +1,50 @@
+#!/bin/sh
+#
+# Build the core and the GUI in build/: the core is compiled without java.desktop, linked into a minimal runtime,
+# and given an AppCDS archive from a short training run, so that the command line tools start quickly:
+#
+#   $ ./build.sh
+#   $ build/janus JanusEllipsoid -gamma 12 -nsteps 100
+#   $ java -jar build/janus-gui.jar
+#
+# @author Giovanni Brandani
+#
+set -e
+cd "$(dirname "$0")"
+
+BUILD="$(pwd -P)/build"	# absolute and canonical, as the AppCDS archive only works with the classpath it was dumped with
+# modules of the core: the simulations, JMX metrics, flight recorder events, JobServer and local JConsole attach
+MODULES=java.base,java.management,jdk.management,jdk.management.agent,jdk.jfr,jdk.httpserver
+
+rm -rf "$BUILD"
+mkdir -p "$BUILD"
+
+# core, which must not depend on java.desktop, and GUI
+javac --limit-modules $MODULES -XDstringConcat=inline -d "$BUILD/classes/core" src/core/*.java
+javac -cp "$BUILD/classes/core" -d "$BUILD/classes/gui" src/gui/*.java
+jar --create --file "$BUILD/janus-core.jar" -C "$BUILD/classes/core" .
+printf 'Class-Path: janus-core.jar\n' > "$BUILD/gui.mf"
+jar --create --file "$BUILD/janus-gui.jar" --manifest "$BUILD/gui.mf" --main-class InteractiveJanusEllipsoid -C "$BUILD/classes/gui" .
+
+# minimal runtime for the core
+jlink --add-modules $MODULES --strip-debug --no-man-pages --no-header-files --output "$BUILD/runtime"
+
+# AppCDS archive of the classes of the runtime and of the core loaded by a short run, with the absolute path
+# of the jar that the launcher passes, so that the archive is used from any working directory
+"$BUILD/runtime/bin/java" -Xshare:off -XX:DumpLoadedClassList="$BUILD/janus-core.classlist" -cp "$BUILD/janus-core.jar" \
+	JanusEllipsoid -ngrid 20 -dt 10 -nequil 10 -nsteps 100 -out "$BUILD/training.dat" > /dev/null
+"$BUILD/runtime/bin/java" -Xshare:dump -XX:SharedClassListFile="$BUILD/janus-core.classlist" -XX:SharedArchiveFile="$BUILD/janus-core.jsa" \
+	-cp "$BUILD/janus-core.jar" > "$BUILD/cds.log"
+rm "$BUILD/training.dat"
+
+# launcher of the command line tools
+cat > "$BUILD/janus" <<'EOF'
+#!/bin/sh
+# Run a command line tool of the core, e.g. build/janus JanusEllipsoid -gamma 12
+# The JMX metrics, whose server takes longer to start than a short run, are enabled with JAVA_OPTS=-Djanus.metrics=true
+DIR="$(cd "$(dirname "$0")" && pwd -P)"	# canonical, as when the AppCDS archive was dumped
+exec "$DIR/runtime/bin/java" -XX:SharedArchiveFile="$DIR/janus-core.jsa" -Xshare:auto -Djanus.metrics=false $JAVA_OPTS -cp "$DIR/janus-core.jar" "$@"
+EOF
+chmod +x "$BUILD/janus"
+
+echo "# built build/janus, build/janus-core.jar and build/janus-gui.jar"
@@ -0,0 +1,180 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.Arrays;
+
+/**
+ * Autocorrelation analysis of the trajectories of a Janus ellipsoid: autocorrelation functions computed
+ * with the FFT, integrated autocorrelation times with the automatic window of Sokal, and effective sample sizes.
+ * The same estimate of the integrated time is used for the streaming correlators of <code>MultiTauCorrelator</code>.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class Autocorrelation {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final double WINDOW = 5.;	// the sum of the correlation stops at the first lag W >= WINDOW*tau_int(W)
+
+	// COMPUTES
+
+	/**
+	 * Normalised autocorrelation function of a time series, with the FFT in O(n log n)
+	 *
+	 * @param x	time series
+	 * @return the correlation at lags 0 to n-1
+	 */
+	public static double[] correlation(double[] x) {
+		int n = x.length;
+		int size = 1;
+		while(size<2*n) size *= 2;	// zero padding avoids the periodic wrap around
+		double[] re = new double[size], im = new double[size];
+		double mean = 0.;
+		for(int i=0; i<n; i++) mean += x[i]/n;
+		for(int i=0; i<n; i++) re[i] = x[i]-mean;
+		fft(re, im, false);
+		for(int i=0; i<size; i++) {
+			re[i] = re[i]*re[i] + im[i]*im[i];
+			im[i] = 0.;
+		}
+		fft(re, im, true);
+		double[] rho = new double[n];
+		for(int t=0; t<n; t++) rho[t] = (re[0]>0.) ? (re[t]/(n-t)) / (re[0]/n) : 0.;
+		return rho;
+	}
+
+	/**
+	 * In place radix-2 fast Fourier transform, the length must be a power of 2
+	 *
+	 * @param re		real parts
+	 * @param im		imaginary parts
+	 * @param inverse	whether to compute the inverse transform, normalised by 1/n
+	 */
+	public static void fft(double[] re, double[] im, boolean inverse) {
+		int n = re.length;
+		for(int i=1, j=0; i<n; i++) {	// bit reversal permutation
+			int bit = n>>1;
+			for(; (j&bit)!=0; bit>>=1) j ^= bit;
+			j ^= bit;
+			if(i<j) {
+				double t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+		for(int len=2; len<=n; len<<=1) {
+			double angle = 2.*Math.PI/len*(inverse ? 1. : -1.);
+			double wre = Math.cos(angle), wim = Math.sin(angle);
+			for(int i=0; i<n; i+=len) {
+				double ure = 1., uim = 0.;
+				for(int j=0; j<len/2; j++) {
+					int a = i+j, b = i+j+len/2;
+					double vre = re[b]*ure - im[b]*uim, vim = re[b]*uim + im[b]*ure;
+					re[b] = re[a]-vre; im[b] = im[a]-vim;
+					re[a] += vre;      im[a] += vim;
+					double t = ure*wre - uim*wim;
+					uim = ure*wim + uim*wre;
+					ure = t;
+				}
+			}
+		}
+		if(inverse) for(int i=0; i<n; i++) { re[i] /= n; im[i] /= n; }
+	}
+
+	/**
+	 * Integrated autocorrelation time, the integral of the correlation function from lag 0 to the window W,
+	 * with the trapezoidal rule so that lags need not be evenly spaced; for unit spacing it differs from
+	 * the usual 1/2 + sum_{t=1}^W rho(t) only by rho(W)/2
+	 *
+	 * @param lags	lags, in increasing order starting from 0
+	 * @param rho	normalised correlation at the lags
+	 * @return tau_int, in the units of the lags
+	 */
+	public static double integratedTime(double[] lags, double[] rho) {
+		double tau = 0.;
+		for(int i=1; i<lags.length; i++) {
+			tau += 0.5*(rho[i-1]+rho[i])*(lags[i]-lags[i-1]);
+			if(lags[i]>=WINDOW*tau) break;
+		}
+		return Math.max(0.5, tau);
+	}
+
+	/**
+	 * Integrated autocorrelation time of a time series, in samples
+	 */
+	public static double integratedTime(double[] x) {
+		double[] rho = correlation(x);
+		double[] lags = new double[rho.length];
+		for(int t=0; t<lags.length; t++) lags[t] = t;
+		return integratedTime(lags, rho);
+	}
+
+	//   MAIN METHOD
+
+	public static void main(String args[]) {
+
+		int skip = 0;	// initial samples to discard
+		boolean printacf = false;	// whether to print the correlation functions
+		String file = null;
+
+		// parse command line arguments
+		System.out.println("# Usage: java Autocorrelation [-skip val] [-acf] file");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-skip") )     { skip = Integer.valueOf(args[i+1]); i++; }
+				else if( args[i].equals("-acf") ) printacf = true;
+				else file = args[i];
+			}
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+		if(file==null) { System.out.println("# No input file"); System.exit(-1); }
+
+		// read the output of JanusEllipsoid: time z theta energy Sao Spo Si
+		String[] names = { "z", "theta", "energy" };
+		double[][] x = new double[names.length][1024];
+		int n = 0, count = 0, dt = 1;
+		try(BufferedReader in = new BufferedReader(new FileReader(file))) {
+			String line;
+			while((line = in.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty()) continue;
+				if(line.startsWith("#")) {
+					if(line.startsWith("# dt = ")) dt = Integer.valueOf(line.substring(7));
+					continue;
+				}
+				if(count++<skip) continue;
+				String[] col = line.split("\\s+");
+				if(n==x[0].length) for(int k=0; k<names.length; k++) x[k] = Arrays.copyOf(x[k], 2*n);
+				for(int k=0; k<names.length; k++) x[k][n] = Double.valueOf(col[k+1]);
+				n++;
+			}
+		}
+		catch(Exception e) { System.out.println("# Error reading input: " + e.getMessage()); System.exit(-1); }
+		if(n<2) { System.out.println("# Not enough samples"); System.exit(-1); }
+
+		System.out.print("# Generated by: java Autocorrelation");
+		for(int i=0; i<args.length; i++) System.out.print( " " + args[i] );
+		System.out.println("");
+		System.out.println("# samples = " + n );
+		System.out.println("# dt = "      + dt );
+		double[][] rho = new double[names.length][];
+		double taumax = 0.5;
+		for(int k=0; k<names.length; k++) {
+			double[] series = Arrays.copyOf(x[k], n);
+			rho[k] = correlation(series);
+			double[] lags = new double[n];
+			for(int t=0; t<n; t++) lags[t] = t;
+			double tau = integratedTime(lags, rho[k]);
+			taumax = Math.max(taumax, tau);
+			System.out.println("# tau_int(" + names[k] + ") = " + tau + " samples = " + tau*dt + " MC steps, ESS = " + Math.min(n, n/(2.*tau)) );
+		}
+		System.out.println("# dt for independent samples = " + (int)Math.ceil(2.*taumax*dt) );
+		if(printacf) {
+			System.out.println("# lag(samples) rho(z) rho(theta) rho(energy)");
+			for(int t=0; t<n; t++) System.out.printf("%d\t%f\t%f\t%f\n", t, rho[0][t], rho[1][t], rho[2][t]);
+		}
+
+	}
+}
@@ -0,0 +1,267 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Snapshot of the full state of a simulation of a Janus ellipsoid: parameters, step sizes, position,
+ * orientation, time, areas, state of the random numbers, accumulated statistics and monitor of the equilibration.
+ * Restarting from a checkpoint continues the simulation exactly as if it had never stopped.
+ * The snapshot is encoded in memory when it is taken, which is fast, while writing it to disk
+ * can be done by another thread, so the simulation does not wait for the disk.
+ *
+ * The binary format is: MAGIC, FORMAT (int), JanusEllipsoid.VERSION (UTF), the parameters,
+ * the index of the next sample, the length of the trajectory written so far, the state of the ellipsoid, the statistics, and the monitor.
+ * The statistics and the monitor are accumulators of fixed size, so that taking a checkpoint costs the same
+ * at any point of the run.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class Checkpoint {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final int MAGIC = 0x4A45434B;	// "JECK"
+	public static final int FORMAT = 1;	// version of the binary format
+
+	/**
+	 * The encoded snapshot
+	 */
+	private final byte[] data;
+
+	// CONSTRUCTORS
+
+	/**
+	 * Take a snapshot of a simulation; this should be called between calls to iterate,
+	 * the ellipsoid is locked while its state is read
+	 *
+	 * @param p		parameters of the simulation, with the current step sizes
+	 * @param step	index of the next sample
+	 * @param output	length in bytes of the trajectory written up to step, or -1 if it is not written to a file
+	 * @param je	the ellipsoid
+	 * @param stats	statistics accumulated so far, or null
+	 * @param monitor	monitor of the equilibration, or null
+	 */
+	public Checkpoint(SimulationParameters p, long step, long output, JanusEllipsoid je, SimulationStatistics stats, EquilibrationMonitor monitor) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeUTF(JanusEllipsoid.VERSION);
+			Vector3d axis = p.getAxis();
+			for(int i=0; i<JanusEllipsoid.DIM; i++) out.writeDouble(axis.a[i]);
+			out.writeDouble(p.getAlpha());
+			out.writeInt(p.getNgrid());
+			out.writeDouble(p.getGamma());
+			out.writeDouble(p.getCosthetaA());
+			out.writeDouble(p.getCosthetaP());
+			out.writeDouble(p.getDz());
+			out.writeDouble(p.getDphi());
+			out.writeInt(p.getDt());
+			out.writeInt(p.getNsteps());
+			out.writeInt(p.getNequil());
+			out.writeInt(p.getNtries());
+			out.writeLong(p.getSeed());
+			out.writeDouble(p.getRadius());
+			out.writeLong(step);
+			out.writeLong(output);
+			double[] areas = new double[JanusEllipsoid.NAREAS];
+			synchronized(je) {
+				for(int i=0; i<JanusEllipsoid.DIM; i++) out.writeDouble(je.center.a[i]);
+				out.writeDouble(je.rot.re);
+				for(int i=0; i<JanusEllipsoid.DIM; i++) out.writeDouble(je.rot.im.a[i]);
+				out.writeDouble(je.time);
+				je.getAreas(areas);
+				for(int k=0; k<JanusEllipsoid.NAREAS; k++) out.writeDouble(areas[k]);
+				for(long s : je.getRandom().getState()) out.writeLong(s);
+			}
+			out.writeBoolean(stats!=null);
+			if(stats!=null) stats.write(out);
+			out.writeBoolean(monitor!=null);
+			if(monitor!=null) monitor.write(out);
+		}
+		catch(IOException e) { throw new IllegalStateException(e); }	// cannot happen in memory
+		this.data = bytes.toByteArray();
+	}
+
+	/**
+	 * Create from encoded data
+	 */
+	private Checkpoint(byte[] data) throws IOException {
+		this.data = data;
+		try(DataInputStream in = this.open()) {
+			if(in.readInt()!=MAGIC) throw new IOException("not a checkpoint file");
+			if(in.readInt()!=FORMAT) throw new IOException("unsupported checkpoint format");
+			String version = in.readUTF();
+			if(!version.equals(JanusEllipsoid.VERSION)) throw new IOException("checkpoint written by version " + version + " of the code");
+		}
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Open the encoded data from the beginning
+	 */
+	private DataInputStream open() throws IOException {
+		return new DataInputStream(new ByteArrayInputStream(this.data));
+	}
+
+	/**
+	 * Skip the header and read the parameters
+	 */
+	private static SimulationParameters readParameters(DataInputStream in) throws IOException {
+		in.readInt();
+		in.readInt();
+		in.readUTF();
+		double Lx = in.readDouble(), Ly = in.readDouble(), Lz = in.readDouble();
+		double alpha = in.readDouble();
+		int ngrid = in.readInt();
+		double gamma = in.readDouble(), costhetaA = in.readDouble(), costhetaP = in.readDouble();
+		double dz = in.readDouble(), dphi = in.readDouble();
+		int dt = in.readInt(), nsteps = in.readInt(), nequil = in.readInt(), ntries = in.readInt();
+		long seed = in.readLong();
+		double radius = in.readDouble();
+		return new SimulationParameters(Lx, Ly, Lz, alpha, ngrid, gamma, costhetaA, costhetaP, dz, dphi, dt, nsteps, nequil, ntries, seed, radius);
+	}
+
+	/**
+	 * Getters
+	 */
+	public SimulationParameters getParameters() {
+		try(DataInputStream in = this.open()) {
+			return readParameters(in);
+		}
+		catch(IOException e) { throw new IllegalStateException(e); }
+	}
+	public long getStep() {
+		try(DataInputStream in = this.open()) {
+			readParameters(in);
+			return in.readLong();
+		}
+		catch(IOException e) { throw new IllegalStateException(e); }
+	}
+	public long getOutput() {
+		try(DataInputStream in = this.open()) {
+			readParameters(in);
+			in.readLong();
+			return in.readLong();
+		}
+		catch(IOException e) { throw new IllegalStateException(e); }
+	}
+
+	/**
+	 * Create an ellipsoid in the saved state, including its random numbers
+	 */
+	public JanusEllipsoid restoreEllipsoid() {
+		try(DataInputStream in = this.open()) {
+			SimulationParameters p = readParameters(in);
+			in.readLong();
+			in.readLong();
+			JanusEllipsoid je = p.createEllipsoid();
+			for(int i=0; i<JanusEllipsoid.DIM; i++) je.center.a[i] = in.readDouble();
+			je.rot.re = in.readDouble();
+			for(int i=0; i<JanusEllipsoid.DIM; i++) je.rot.im.a[i] = in.readDouble();
+			je.time = in.readDouble();
+			double[] areas = new double[JanusEllipsoid.NAREAS];
+			for(int k=0; k<JanusEllipsoid.NAREAS; k++) areas[k] = in.readDouble();
+			je.setAreas(areas);
+			long[] state = new long[4];
+			for(int i=0; i<4; i++) state[i] = in.readLong();
+			je.getRandom().setState(state);
+			return je;
+		}
+		catch(IOException e) { throw new IllegalStateException(e); }
+	}
+
+	/**
+	 * Get the saved statistics, or null if there were none
+	 */
+	public SimulationStatistics restoreStatistics() {
+		try(DataInputStream in = this.open()) {
+			return readStatistics(in);
+		}
+		catch(IOException e) { throw new IllegalStateException(e); }
+	}
+
+	/**
+	 * Get the saved monitor of the equilibration, or null if there was none
+	 */
+	public EquilibrationMonitor restoreMonitor() {
+		try(DataInputStream in = this.open()) {
+			readStatistics(in);
+			return in.readBoolean() ? EquilibrationMonitor.read(in) : null;
+		}
+		catch(IOException e) { throw new IllegalStateException(e); }
+	}
+
+	/**
+	 * Skip the parameters and the ellipsoid and read the statistics
+	 */
+	private static SimulationStatistics readStatistics(DataInputStream in) throws IOException {
+		readParameters(in);
+		in.readLong();
+		in.readLong();
+		in.skipBytes(8*(2*JanusEllipsoid.DIM + 2 + JanusEllipsoid.NAREAS + 4));
+		return in.readBoolean() ? SimulationStatistics.read(in) : null;
+	}
+
+	// INPUT AND OUTPUT
+
+	/**
+	 * Write the checkpoint to a file, atomically replacing the previous one
+	 *
+	 * @param filename	name of the file
+	 */
+	public void write(String filename) throws IOException {
+		Path file = Paths.get(filename).toAbsolutePath();
+		Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			Files.write(tmp, this.data);
+			try {
+				Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Write the checkpoint to a file in another thread
+	 *
+	 * @param filename	name of the file
+	 * @param writer	thread where to write; a single thread keeps the checkpoints in order
+	 * @return the pending write
+	 */
+	public Future<?> writeAsync(String filename, ExecutorService writer) {
+		return writer.submit(() -> {
+			try { this.write(filename); }
+			catch(IOException e) { System.err.println("# Error writing checkpoint: " + e.getMessage()); }
+		});
+	}
+
+	/**
+	 * Read a checkpoint from a file
+	 *
+	 * @param filename	name of the file
+	 */
+	public static Checkpoint read(String filename) throws IOException {
+		return new Checkpoint(Files.readAllBytes(Paths.get(filename)));
+	}
+
+}
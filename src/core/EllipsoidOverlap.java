@@ -0,0 +1,92 @@
+/**
+ * Overlap of two ellipsoids, with the contact function of Perram and Wertheim (J. Comput. Phys. 58, 409, 1985):
+ * for ellipsoids with shape matrices A and B, whose centers are separated by r,
+ *
+ *   F(lambda) = lambda (1-lambda) r^T [ (1-lambda) A^-1 + lambda B^-1 ]^-1 r,   0 <= lambda <= 1
+ *
+ * is concave, and the ellipsoids overlap if and only if its maximum is smaller than 1.
+ * The inverse shape matrix of an ellipsoid with half axis l and orientation R is R diag(l^2) R^T;
+ * it is symmetric, and stored as its 6 elements xx, xy, xz, yy, yz, zz.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class EllipsoidOverlap {
+
+	/**
+	 * constants
+	 */
+	public static final int NSHAPE = 6;	// elements of a shape matrix
+	private static final int MAXITER = 60;	// bisections of lambda
+
+	/**
+	 * Inverse shape matrix of an ellipsoid
+	 *
+	 * @param l		half axis of the ellipsoid
+	 * @param q		orientation, as re, im_x, im_y, im_z starting at q[offset]
+	 * @param offset	index of the orientation in q
+	 * @param out		array where to store the 6 elements, starting at out[outOffset]
+	 * @param outOffset	index of the matrix in out
+	 */
+	public static void shape(Vector3d l, double[] q, int offset, double[] out, int outOffset) {
+		double w = q[offset], x = q[offset+1], y = q[offset+2], z = q[offset+3];
+		// columns of the rotation matrix, i.e. the axes of the ellipsoid, scaled by the half axis
+		double r00 = w*w + x*x - y*y - z*z, r01 = 2.*(x*y - w*z),     r02 = 2.*(x*z + w*y);
+		double r10 = 2.*(x*y + w*z),     r11 = w*w - x*x + y*y - z*z, r12 = 2.*(y*z - w*x);
+		double r20 = 2.*(x*z - w*y),     r21 = 2.*(y*z + w*x),     r22 = w*w - x*x - y*y + z*z;
+		double a = l.a[0]*l.a[0], b = l.a[1]*l.a[1], c = l.a[2]*l.a[2];
+		out[outOffset]   = a*r00*r00 + b*r01*r01 + c*r02*r02;
+		out[outOffset+1] = a*r00*r10 + b*r01*r11 + c*r02*r12;
+		out[outOffset+2] = a*r00*r20 + b*r01*r21 + c*r02*r22;
+		out[outOffset+3] = a*r10*r10 + b*r11*r11 + c*r12*r12;
+		out[outOffset+4] = a*r10*r20 + b*r11*r21 + c*r12*r22;
+		out[outOffset+5] = a*r20*r20 + b*r21*r21 + c*r22*r22;
+	}
+
+	/**
+	 * Whether two ellipsoids overlap. The maximum of the contact function is found by bisection on its derivative;
+	 * the search stops as soon as a value above 1 is found, or when the tangent at the current lambda bounds
+	 * the maximum below 1, so that pairs far from contact cost a few iterations.
+	 *
+	 * @param a		inverse shape matrix of the first ellipsoid, starting at a[ia]
+	 * @param ia	index of the first matrix
+	 * @param b		inverse shape matrix of the second ellipsoid, starting at b[ib]
+	 * @param ib	index of the second matrix
+	 * @param rx	separation of the centers
+	 * @param ry
+	 * @param rz
+	 * @return true if they overlap
+	 */
+	public static boolean overlap(double[] a, int ia, double[] b, int ib, double rx, double ry, double rz) {
+		double lo = 0., hi = 1.;
+		for(int iter=0; iter<MAXITER; iter++) {
+			double lambda = 0.5*(lo+hi), mu = 1.-lambda;
+			// C = (1-lambda) A^-1 + lambda B^-1
+			double xx = mu*a[ia]   + lambda*b[ib];
+			double xy = mu*a[ia+1] + lambda*b[ib+1];
+			double xz = mu*a[ia+2] + lambda*b[ib+2];
+			double yy = mu*a[ia+3] + lambda*b[ib+3];
+			double yz = mu*a[ia+4] + lambda*b[ib+4];
+			double zz = mu*a[ia+5] + lambda*b[ib+5];
+			// x = C^-1 r, from the cofactors
+			double c00 = yy*zz - yz*yz, c01 = xz*yz - xy*zz, c02 = xy*yz - xz*yy;
+			double c11 = xx*zz - xz*xz, c12 = xy*xz - xx*yz, c22 = xx*yy - xy*xy;
+			double det = xx*c00 + xy*c01 + xz*c02;
+			double vx = (c00*rx + c01*ry + c02*rz)/det;
+			double vy = (c01*rx + c11*ry + c12*rz)/det;
+			double vz = (c02*rx + c12*ry + c22*rz)/det;
+			double s = rx*vx + ry*vy + rz*vz;
+			double f = lambda*mu*s;
+			if(f>=1.) return false;
+			// dF/dlambda = (1-2 lambda) r^T C^-1 r - lambda (1-lambda) x^T (B^-1 - A^-1) x
+			double dxx = b[ib]-a[ia], dxy = b[ib+1]-a[ia+1], dxz = b[ib+2]-a[ia+2], dyy = b[ib+3]-a[ia+3], dyz = b[ib+4]-a[ia+4], dzz = b[ib+5]-a[ia+5];
+			double xdx = dxx*vx*vx + dyy*vy*vy + dzz*vz*vz + 2.*(dxy*vx*vy + dxz*vx*vz + dyz*vy*vz);
+			double df = (1.-2.*lambda)*s - lambda*mu*xdx;
+			if(f + Math.abs(df)*(hi-lo) < 1.) return true;	// F is concave, so its maximum is below the tangent
+			if(df>0.) lo = lambda;
+			else      hi = lambda;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,316 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Deterministic scan of the free energy landscape E(z, theta, phi) of a Janus ellipsoid.
+ * theta is the tilt of the polar axis of the particle with respect to the normal to the interface,
+ * phi the rotation of the particle around its own polar axis; the energy does not depend on
+ * rotations around the normal to the interface, which are integrated out.
+ * From the landscape we get the partition function and the exact equilibrium averages
+ * and marginal distributions, within the resolution of the grid.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class EnergyLandscape {
+
+	// STATE
+
+	/**
+	 * Magic number at the beginning of the binary files
+	 */
+	public static final int MAGIC = 0x4A454C53;	// "JELS"
+
+	/**
+	 * The ellipsoid providing the geometry and the surface tensions
+	 */
+	private JanusEllipsoid je;
+
+	/**
+	 * The grid of the scan
+	 */
+	private double zmin, zmax;	// range of z
+	private int nz, ntheta, nphi;	// number of points along each direction
+	private double[] energy;	// energies, index (iz*ntheta + itheta)*nphi + iphi
+
+	/**
+	 * Results of the Boltzmann averaging
+	 */
+	private double emin = 0.;	// minimum energy
+	private double lnZ = 0.;	// log of the partition function, relative to emin
+	private double[] pz, ptheta, pphi;	// marginal distributions
+	private double avgz = 0., avgtheta = 0., avgcostheta = 0., avgcos2theta = 0., avgenergy = 0.;	// averages
+
+	// CONSTRUCTORS
+
+	/**
+	 * Standard constructor
+	 *
+	 * @param je		ellipsoid to scan, with its surface tension parameters
+	 * @param zmin		minimum z of the center
+	 * @param zmax		maximum z of the center
+	 * @param nz		number of values of z
+	 * @param ntheta	number of values of the tilt angle in [0,pi]
+	 * @param nphi		number of values of the rotation around the polar axis in [0,2pi]
+	 */
+	public EnergyLandscape(JanusEllipsoid je, double zmin, double zmax, int nz, int ntheta, int nphi) {
+		this.je = je;
+		this.zmin = zmin;
+		this.zmax = zmax;
+		this.nz = nz;
+		this.ntheta = ntheta;
+		this.nphi = nphi;
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Values of the coordinates on the grid; theta and phi are taken at the midpoints of their bins
+	 */
+	public double getZ(int iz)             { return (this.nz>1) ? this.zmin + (this.zmax-this.zmin)*iz/(this.nz-1) : this.zmin; }
+	public double getTheta(int itheta)     { return Math.PI*(itheta+0.5)/this.ntheta; }
+	public double getPhi(int iphi)         { return 2.*Math.PI*(iphi+0.5)/this.nphi; }
+	public double getEnergy(int iz, int itheta, int iphi) { return this.energy[(iz*this.ntheta + itheta)*this.nphi + iphi]; }
+
+	/**
+	 * Getters of the results of the Boltzmann averaging
+	 */
+	public double getMinimumEnergy()   { return this.emin; }
+	public double getFreeEnergy()      { return this.emin - this.lnZ; }
+	public double[] getPz()            { return this.pz; }
+	public double[] getPtheta()        { return this.ptheta; }
+	public double[] getPphi()          { return this.pphi; }
+	public double getAverageZ()        { return this.avgz; }
+	public double getAverageTheta()    { return this.avgtheta; }
+	public double getAverageCostheta() { return this.avgcostheta; }
+	public double getAverageCos2theta(){ return this.avgcos2theta; }
+	public double getAverageEnergy()   { return this.avgenergy; }
+
+	/**
+	 * Orientation corresponding to a tilt theta of the polar axis and a rotation phi around it:
+	 * first rotate by phi around the z axis, then by theta around the x axis
+	 *
+	 * @param theta	tilt angle
+	 * @param phi	rotation around the polar axis
+	 * @return the quaternion of the rotation
+	 */
+	public static Quaternion orientation(double theta, double phi) {
+		Quaternion tilt = new Quaternion(Math.cos(0.5*theta), new Vector3d(Math.sin(0.5*theta), 0., 0.));
+		Quaternion spin = new Quaternion(Math.cos(0.5*phi),   new Vector3d(0., 0., Math.sin(0.5*phi)));
+		return Quaternion.prod(tilt, spin);
+	}
+
+	// COMPUTES
+
+	/**
+	 * Compute the energy on the whole grid, with the planes at different z scanned in parallel;
+	 * all the orientations of a plane are evaluated in one pass over the surface grid
+	 */
+	public void scan() {
+		int norient = this.ntheta*this.nphi;
+		double[] quaternions = new double[4*norient];
+		for(int it=0; it<this.ntheta; it++) {
+			for(int ip=0; ip<this.nphi; ip++) {
+				Quaternion q = orientation(this.getTheta(it), this.getPhi(ip));
+				int c = it*this.nphi + ip;
+				quaternions[4*c]   = q.re;
+				quaternions[4*c+1] = q.im.a[0];
+				quaternions[4*c+2] = q.im.a[1];
+				quaternions[4*c+3] = q.im.a[2];
+			}
+		}
+		this.energy = new double[this.nz*norient];
+		IntStream.range(0, this.nz).parallel().forEach(iz -> {
+			double[] z = new double[norient];
+			double[] areas = new double[JanusEllipsoid.NAREAS*norient];
+			double[] a = new double[JanusEllipsoid.NAREAS];
+			Arrays.fill(z, this.getZ(iz));
+			this.je.computeAreas(z, quaternions, norient, areas);
+			for(int c=0; c<norient; c++) {
+				System.arraycopy(areas, JanusEllipsoid.NAREAS*c, a, 0, JanusEllipsoid.NAREAS);
+				this.energy[iz*norient + c] = this.je.energy(a);
+			}
+		});
+		this.average();
+	}
+
+	/**
+	 * Compute partition function, marginals and averages from the energies on the grid.
+	 * The invariant measure on the orientations is sin(theta) dtheta dphi.
+	 */
+	private void average() {
+		this.emin = Double.MAX_VALUE;
+		for(int k=0; k<this.energy.length; k++) if(this.energy[k]<this.emin) this.emin = this.energy[k];
+		this.pz = new double[this.nz];
+		this.ptheta = new double[this.ntheta];
+		this.pphi = new double[this.nphi];
+		double zsum = 0., w, theta;
+		this.avgz = this.avgtheta = this.avgcostheta = this.avgcos2theta = this.avgenergy = 0.;
+		for(int iz=0; iz<this.nz; iz++) {
+			for(int it=0; it<this.ntheta; it++) {
+				theta = this.getTheta(it);
+				for(int ip=0; ip<this.nphi; ip++) {
+					w = Math.sin(theta)*Math.exp(-(this.getEnergy(iz,it,ip)-this.emin));
+					zsum += w;
+					this.pz[iz] += w;
+					this.ptheta[it] += w;
+					this.pphi[ip] += w;
+					this.avgz += w*this.getZ(iz);
+					this.avgtheta += w*theta;
+					this.avgcostheta += w*Math.cos(theta);
+					this.avgcos2theta += w*Math.cos(theta)*Math.cos(theta);
+					this.avgenergy += w*this.getEnergy(iz,it,ip);
+				}
+			}
+		}
+		for(int iz=0; iz<this.nz; iz++) this.pz[iz] /= zsum;
+		for(int it=0; it<this.ntheta; it++) this.ptheta[it] /= zsum;
+		for(int ip=0; ip<this.nphi; ip++) this.pphi[ip] /= zsum;
+		this.avgz /= zsum;
+		this.avgtheta /= zsum;
+		this.avgcostheta /= zsum;
+		this.avgcos2theta /= zsum;
+		this.avgenergy /= zsum;
+		// volume element of the grid, so that the free energy does not depend on the resolution
+		double dz = (this.nz>1) ? (this.zmax-this.zmin)/(this.nz-1) : 1.;
+		this.lnZ = Math.log(zsum * dz * Math.PI/this.ntheta * 2.*Math.PI/this.nphi);
+	}
+
+	// OUTPUT
+
+	/**
+	 * Write the landscape as text, one line per grid point
+	 *
+	 * @param filename	name of the file
+	 */
+	public void writeCSV(String filename) throws IOException {
+		try(PrintWriter out = new PrintWriter(filename)) {
+			out.println("z,theta,phi,energy");
+			for(int iz=0; iz<this.nz; iz++)
+				for(int it=0; it<this.ntheta; it++)
+					for(int ip=0; ip<this.nphi; ip++)
+						out.printf(Locale.ROOT, "%f,%f,%f,%f\n", this.getZ(iz), this.getTheta(it), this.getPhi(ip), this.getEnergy(iz,it,ip));
+		}
+	}
+
+	/**
+	 * Write the landscape in binary form: a header with MAGIC, nz, ntheta, nphi (int), zmin, zmax (double),
+	 * followed by the energies (float), with phi running fastest and z slowest
+	 *
+	 * @param filename	name of the file
+	 */
+	public void writeBinary(String filename) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(this.nz);
+			out.writeInt(this.ntheta);
+			out.writeInt(this.nphi);
+			out.writeDouble(this.zmin);
+			out.writeDouble(this.zmax);
+			for(int k=0; k<this.energy.length; k++) out.writeFloat((float)this.energy[k]);
+		}
+	}
+
+	//   MAIN METHOD
+
+	/**
+	 * Main method
+	 */
+	public static void main(String args[]) {
+
+		// set up initial parameters as in BslA
+		double Lx = 1.4;
+		double Ly = 1.4;
+		double Lz = 2.6;
+		double alpha = 50.4;	// angle fo the patch
+		double gamma = 12.;	// water oil surface tension in kT
+		double costhetaA =-0.2;	// apolar side
+		double costhetaP = 0.5;	// polar side
+		int ngrid = JanusEllipsoid.DEFAULTNGRID;
+		double zmin = Double.NaN, zmax = Double.NaN;	// by default the maximum half axis
+		int nz = 101, ntheta = 90, nphi = 1;
+		String csv = null, bin = null;
+
+		// parse command line arguments
+		System.out.println("# Usage: java EnergyLandscape [-LxLy val] [-Lz val] [-alpha val] [-gamma val] [-costhetaA val] [-costhetaP val] [-ngrid val] [-zmin val] [-zmax val] [-nz val] [-ntheta val] [-nphi val] [-csv file] [-bin file]");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-LxLy") )      Lx = Ly = Double.valueOf(args[i+1]);
+				if( args[i].equals("-Lz") )        Lz = Double.valueOf(args[i+1]);
+				if( args[i].equals("-alpha") )     alpha = Double.valueOf(args[i+1]);
+				if( args[i].equals("-gamma") )     gamma = Double.valueOf(args[i+1]);
+				if( args[i].equals("-costhetaA") ) costhetaA = Double.valueOf(args[i+1]);
+				if( args[i].equals("-costhetaP") ) costhetaP = Double.valueOf(args[i+1]);
+				if( args[i].equals("-ngrid") )     ngrid = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-zmin") )      zmin = Double.valueOf(args[i+1]);
+				if( args[i].equals("-zmax") )      zmax = Double.valueOf(args[i+1]);
+				if( args[i].equals("-nz") )        nz = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-ntheta") )    ntheta = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-nphi") )      nphi = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-csv") )       csv = args[i+1];
+				if( args[i].equals("-bin") )       bin = args[i+1];
+			}
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+
+		JanusEllipsoid janus = new JanusEllipsoid(new Vector3d(Lx,Ly,Lz), Math.PI*alpha/180., ngrid, gamma, costhetaA, costhetaP);
+		if(Double.isNaN(zmin)) zmin = -0.5*janus.getMaximumLength();
+		if(Double.isNaN(zmax)) zmax =  0.5*janus.getMaximumLength();
+		System.out.print("# Generated by: java EnergyLandscape");
+		for(int i=0; i<args.length; i++) System.out.print( " " + args[i] );
+		System.out.println("");
+		System.out.println("# Lx = "          + janus.getAxis().a[0] );
+		System.out.println("# Ly = "          + janus.getAxis().a[1] );
+		System.out.println("# Lz = "          + janus.getAxis().a[2] );
+		System.out.println("# alpha = "       + 180.*janus.getAlpha()/Math.PI );
+		System.out.println("# gamma = "       + janus.gamma );
+		System.out.println("# cos(thetaA) = " + janus.costhetaA );
+		System.out.println("# cos(thetaP) = " + janus.costhetaP );
+		System.out.println("# z = "           + zmin + " ... " + zmax + " (" + nz + " points)" );
+		System.out.println("# theta points = " + ntheta );
+		System.out.println("# phi points = "   + nphi );
+
+		EnergyLandscape landscape = new EnergyLandscape(janus, zmin, zmax, nz, ntheta, nphi);
+		long startTime = System.currentTimeMillis();
+		landscape.scan();
+		long endTime = System.currentTimeMillis();
+		System.out.println("# scan time (ms) = "  + (endTime - startTime) );
+		System.out.println("# minimum energy = "  + landscape.getMinimumEnergy() );
+		System.out.println("# free energy = "     + landscape.getFreeEnergy() );
+		System.out.println("# <z> = "             + landscape.getAverageZ() );
+		System.out.println("# <theta> = "         + landscape.getAverageTheta() );
+		System.out.println("# <cos(theta)> = "    + landscape.getAverageCostheta() );
+		System.out.println("# <cos^2(theta)> = "  + landscape.getAverageCos2theta() );
+		System.out.println("# <energy> = "        + landscape.getAverageEnergy() );
+
+		// marginal distributions, with the free energy profile of the tilt angle
+		System.out.println("# theta(rad) P(theta) F(theta)(kT)");
+		for(int it=0; it<ntheta; it++) {
+			double p = landscape.getPtheta()[it];
+			System.out.printf(Locale.ROOT, "%f\t%e\t%f\n", landscape.getTheta(it), p, (p>0.) ? -Math.log(p) : Double.POSITIVE_INFINITY);
+		}
+		System.out.println("");
+		System.out.println("");
+		System.out.println("# z(nm) P(z)");
+		for(int iz=0; iz<nz; iz++) System.out.printf(Locale.ROOT, "%f\t%e\n", landscape.getZ(iz), landscape.getPz()[iz]);
+		if(nphi>1) {
+			System.out.println("");
+			System.out.println("");
+			System.out.println("# phi(rad) P(phi)");
+			for(int ip=0; ip<nphi; ip++) System.out.printf(Locale.ROOT, "%f\t%e\n", landscape.getPhi(ip), landscape.getPphi()[ip]);
+		}
+
+		try {
+			if(csv!=null) landscape.writeCSV(csv);
+			if(bin!=null) landscape.writeBinary(bin);
+		}
+		catch(IOException e) { System.out.println("# Error writing output: " + e.getMessage()); System.exit(-1); }
+
+	}
+}
@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ensemble of independent walkers of a Janus ellipsoid with the same parameters, started from random poses
+ * and run concurrently. Each walker has its own random numbers and private accumulators; every FLUSH samples
+ * they are added to the merged statistics, which are striped adders, so the walkers never share a lock
+ * and the merged histogram of theta can be read while they run.
+ * Since the walkers are independent, the error of the means can be estimated both from the pooled
+ * block averages of each walker and from the scatter of the averages of the walkers.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class EnsembleRunner {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final int NOBS = 4;	// z, theta, energy, cos(theta)
+	public static final String[] NAMES = { "z", "theta", "energy", "cos(theta)" };
+	public static final int FLUSH = 64;	// samples between flushes of the private accumulators
+
+	private final SimulationParameters params;	// parameters of the walkers, with the seed of the ensemble
+	private final int nwalkers;	// number of walkers
+
+	/**
+	 * Merged statistics of all the walkers
+	 */
+	private final LongAdder count = new LongAdder();
+	private final DoubleAdder[] sum = new DoubleAdder[NOBS];
+	private final LongAdder[] histogram = new LongAdder[SimulationStatistics.NBINS];
+
+	/**
+	 * Statistics of each walker, available when it has finished
+	 */
+	private final SimulationStatistics[] walkers;
+
+	// CONSTRUCTORS
+
+	/**
+	 * Create an ensemble
+	 *
+	 * @param params	parameters of the walkers; walker w has seed params.getSeed()+w
+	 * @param nwalkers	number of walkers
+	 */
+	public EnsembleRunner(SimulationParameters params, int nwalkers) {
+		this.params = params;
+		this.nwalkers = nwalkers;
+		this.walkers = new SimulationStatistics[nwalkers];
+		for(int k=0; k<NOBS; k++) this.sum[k] = new DoubleAdder();
+		for(int b=0; b<SimulationStatistics.NBINS; b++) this.histogram[b] = new LongAdder();
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Getters of the merged statistics, which can be called while the walkers run
+	 */
+	public int getNumberOfWalkers() { return this.nwalkers; }
+	public long getCount()          { return this.count.sum(); }
+	public double getMean(int k)    { return this.sum[k].sum()/this.count.sum(); }
+	public long[] getHistogram() {
+		long[] h = new long[SimulationStatistics.NBINS];
+		for(int b=0; b<h.length; b++) h[b] = this.histogram[b].sum();
+		return h;
+	}
+
+	/**
+	 * Statistics of a walker, or null if it has not finished
+	 */
+	public SimulationStatistics getWalker(int w) {
+		synchronized(this.walkers) { return this.walkers[w]; }
+	}
+
+	/**
+	 * Mean of an observable in a walker
+	 */
+	private static double walkerMean(SimulationStatistics s, int k) {
+		return (k<SimulationStatistics.NOBS) ? s.getMean(k) : s.getMeanCostheta();
+	}
+
+	/**
+	 * Error of the mean from the block averages of each walker, combined as independent estimates
+	 */
+	public double getPooledError(int k) {
+		double var = 0.;
+		for(int w=0; w<this.nwalkers; w++) {
+			SimulationStatistics s = this.getWalker(w);
+			double e = (k<SimulationStatistics.NOBS) ? s.getError(k) : s.getErrorCostheta();
+			var += e*e;
+		}
+		return Math.sqrt(var)/this.nwalkers;
+	}
+
+	/**
+	 * Error of the mean from the scatter of the averages of the walkers; unlike the pooled error,
+	 * it also accounts for walkers stuck in different basins
+	 */
+	public double getBetweenError(int k) {
+		double mean = 0., var = 0.;
+		for(int w=0; w<this.nwalkers; w++) mean += walkerMean(this.getWalker(w), k)/this.nwalkers;
+		for(int w=0; w<this.nwalkers; w++) {
+			double d = walkerMean(this.getWalker(w), k) - mean;
+			var += d*d;
+		}
+		return Math.sqrt(var/(this.nwalkers-1)/this.nwalkers);
+	}
+
+	// COMPUTES
+
+	/**
+	 * Create walker w, with its own seed and a random pose: orientation uniform on the sphere,
+	 * and the interface crossing the particle
+	 */
+	public JanusEllipsoid createWalker(int w) {
+		JanusEllipsoid je = this.params.withSeed(this.params.getSeed()+w).createEllipsoid();
+		RandomStream random = je.getRandom();
+		double theta = Math.acos(2.*random.random()-1.), phi = 2.*Math.PI*random.random();
+		// the normal to the interface in the frame of the ellipsoid is (sin(theta) sin(phi), sin(theta) cos(phi), cos(theta))
+		Vector3d axis = je.getAxis();
+		double nx = Math.sin(theta)*Math.sin(phi), ny = Math.sin(theta)*Math.cos(phi), nz = Math.cos(theta);
+		double h = Math.sqrt(nx*nx*axis.a[0]*axis.a[0] + ny*ny*axis.a[1]*axis.a[1] + nz*nz*axis.a[2]*axis.a[2]);
+		je.rot = EnergyLandscape.orientation(theta, phi);
+		je.center.a[2] = h*(2.*random.random()-1.);
+		je.updateAreas();
+		return je;
+	}
+
+	/**
+	 * Run walker w: equilibration, then sampling into its private accumulators
+	 */
+	private void runWalker(int w) {
+		JanusEllipsoid je = this.createWalker(w);
+		SimulationMetrics metrics = SimulationMetrics.register("Replica", "walker " + w);
+		je.setMetrics(metrics);
+		SimulationStatistics stats = new SimulationStatistics();
+		double[] local = new double[NOBS];
+		long[] hist = new long[SimulationStatistics.NBINS];
+		int pending = 0;
+		for(int i=0; i<this.params.getNequil(); i++) SimulationStatistics.iterate(je, this.params);
+		for(int i=0; i<this.params.getNsteps(); i++) {
+			SimulationStatistics.iterate(je, this.params);
+			double z = je.center.a[2], theta = je.getTheta(), energy = je.energy();
+			stats.add(z, theta, energy);
+			local[0] += z;
+			local[1] += theta;
+			local[2] += energy;
+			local[3] += Math.cos(theta);
+			hist[Math.max(0, Math.min(SimulationStatistics.NBINS-1, (int)(SimulationStatistics.NBINS*theta/Math.PI)))]++;
+			if(++pending==FLUSH || i==this.params.getNsteps()-1) {
+				for(int k=0; k<NOBS; k++) {
+					this.sum[k].add(local[k]);
+					local[k] = 0.;
+				}
+				for(int b=0; b<hist.length; b++) {
+					if(hist[b]>0) this.histogram[b].add(hist[b]);
+					hist[b] = 0;
+				}
+				this.count.add(pending);
+				pending = 0;
+			}
+		}
+		if(metrics!=null) metrics.close();
+		synchronized(this.walkers) { this.walkers[w] = stats; }
+	}
+
+	/**
+	 * Start all the walkers
+	 *
+	 * @param pool	threads running the walkers
+	 * @return the pending walkers
+	 */
+	public List<Future<?>> start(ExecutorService pool) {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for(int w=0; w<this.nwalkers; w++) {
+			final int ww = w;
+			futures.add(pool.submit(() -> this.runWalker(ww)));
+		}
+		return futures;
+	}
+
+	/**
+	 * Run all the walkers and wait for them
+	 *
+	 * @param pool	threads running the walkers
+	 */
+	public void run(ExecutorService pool) throws Exception {
+		for(Future<?> f : this.start(pool)) f.get();
+	}
+
+	//   MAIN METHOD
+
+	/**
+	 * Main method
+	 */
+	public static void main(String args[]) {
+
+		int nwalkers = 64;
+		int nthreads = Runtime.getRuntime().availableProcessors();
+		double progress = 10.;	// seconds between progress reports
+		// short walkers by default
+		SimulationParameters params = new SimulationParameters().with("nsteps", 1000).with("nequil", 100).withSeed(System.nanoTime());
+
+		// parse command line arguments; the simulation parameters are the same as for JanusEllipsoid
+		System.out.println("# Usage: java EnsembleRunner [-walkers val] [-threads val] [-progress seconds] [simulation parameters as in JanusEllipsoid, and -nequil val]");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-walkers") )  nwalkers = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-threads") )  nthreads = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-progress") ) progress = Double.valueOf(args[i+1]);
+			}
+			params = params.with(args);
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+		if(nwalkers<2) { System.out.println("# At least 2 walkers are needed"); System.exit(-1); }
+
+		System.out.print("# Generated by: java EnsembleRunner");
+		for(int i=0; i<args.length; i++) System.out.print( " " + args[i] );
+		System.out.println("");
+		System.out.println("# parameters: " + params );
+		System.out.println("# walkers = " + nwalkers );
+		System.out.println("# threads = " + nthreads );
+
+		EnsembleRunner ensemble = new EnsembleRunner(params, nwalkers);
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		long startTime = System.currentTimeMillis();
+		try {
+			for(Future<?> f : ensemble.start(pool)) {	// report the merged statistics while waiting
+				while(true) {
+					try { f.get((long)(1000*progress), TimeUnit.MILLISECONDS); break; }
+					catch(TimeoutException e) {
+						long n = ensemble.getCount();
+						if(n>0) System.out.println("# progress: " + n + " samples, <cos(theta)> = " + ensemble.getMean(3));
+					}
+				}
+			}
+		}
+		catch(Exception e) { System.out.println("# Error: " + e); System.exit(-1); }
+		finally { pool.shutdown(); }
+		long endTime = System.currentTimeMillis();
+
+		System.out.println("# samples = " + ensemble.getCount() + " in " + (endTime - startTime) + " ms, " + 1000.*ensemble.getCount()*params.getDt()/(endTime - startTime) + " MC steps/s");
+		System.out.println("# walker seed <z> <theta> <energy> <cos(theta)>");
+		for(int w=0; w<nwalkers; w++) {
+			SimulationStatistics s = ensemble.getWalker(w);
+			System.out.printf("%d\t%d\t%f\t%f\t%f\t%f\n", w, params.getSeed()+w, s.getMeanZ(), s.getMeanTheta(), s.getMeanEnergy(), s.getMeanCostheta());
+		}
+		for(int k=0; k<NOBS; k++) {
+			System.out.println("# <" + NAMES[k] + "> = " + ensemble.getMean(k) + " +- " + ensemble.getPooledError(k) + " (pooled) +- " + ensemble.getBetweenError(k) + " (between walkers)");
+		}
+		System.out.println("");
+		System.out.println("");
+		System.out.println("# theta(rad) p(theta)");
+		long[] h = ensemble.getHistogram();
+		double dtheta = Math.PI/h.length;
+		for(int b=0; b<h.length; b++) System.out.printf("%f\t%f\n", (b+0.5)*dtheta, h[b]/(ensemble.getCount()*dtheta));
+
+	}
+}
@@ -0,0 +1,395 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Online monitor of the convergence of a simulation of a Janus ellipsoid, for z, theta and energy.
+ * The equilibration point is found with the MSER-5 rule (White, Simulation 69, 323, 1997): the samples are
+ * grouped in batches of 5, and the number of initial batches to discard is the one that minimises the
+ * marginal standard error of the remaining ones, as long as it falls in the first half of the run.
+ * The memory before the equilibration is bounded: when there are MAXBATCHES batches the pairs are merged,
+ * doubling the samples per batch, and only the last MAXSAMPLES samples are kept, so in a long run the analysis
+ * after the equilibration may start later than the equilibration point, at the first sample still kept.
+ * After equilibration the samples are fed to a streaming blocking analysis (Flyvbjerg and Petersen,
+ * J. Chem. Phys. 91, 461, 1989), which needs O(log n) memory and gives the statistical error of the means
+ * and the effective sample size, while multi-tau correlators give the integrated autocorrelation times.
+ * The run can stop as soon as the errors are below the requested ones, and the state can be saved in a checkpoint.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class EquilibrationMonitor {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final int NOBS = SimulationStatistics.NOBS;	// z, theta, energy
+	public static final String[] NAMES = { "z", "theta", "energy" };
+	public static final int BATCH = 5;	// samples per batch of MSER-5
+	public static final int CHECK = 20;	// batches between attempts to detect the equilibration
+	public static final int MINBLOCKS = 32;	// minimum number of blocks for an error estimate
+	public static final int MAXBATCHES = 1000;	// batches kept before the equilibration, a multiple of 2*CHECK
+	public static final int MAXSAMPLES = BATCH*MAXBATCHES;	// samples kept before the equilibration
+
+	/**
+	 * Last samples before the equilibration, sample i at i%MAXSAMPLES, and the batch averages
+	 */
+	private long n = 0;	// number of samples
+	private double[][] samples = new double[NOBS][BATCH*CHECK];
+	private double[][] batches = new double[NOBS][CHECK];
+	private int nbatches = 0;
+	private long batchsize = BATCH;	// samples per batch
+	private long fill = 0;	// samples in the batch being filled
+	private double[] batchsum = new double[NOBS];	// sums of the batch being filled
+
+	/**
+	 * Index of the first equilibrated sample, -1 before the equilibration is detected
+	 */
+	private long equilibrated = -1;
+
+	/**
+	 * Streaming blocking analysis of the equilibrated samples, one per observable
+	 */
+	private final Blocking[] blocking = new Blocking[NOBS];
+
+	/**
+	 * Streaming autocorrelation of the equilibrated samples, one per observable
+	 */
+	private final MultiTauCorrelator[] correlator = new MultiTauCorrelator[NOBS];
+
+	// CONSTRUCTORS
+
+	public EquilibrationMonitor() {
+		for(int k=0; k<NOBS; k++) {
+			this.blocking[k] = new Blocking();
+			this.correlator[k] = new MultiTauCorrelator();
+		}
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Add a sample
+	 *
+	 * @param z		z coordinate of the center
+	 * @param theta	tilt angle of the polar axis
+	 * @param energy	energy
+	 */
+	public void add(double z, double theta, double energy) {
+		double[] x = { z, theta, energy };
+		if(this.equilibrated>=0) {
+			for(int k=0; k<NOBS; k++) {
+				this.blocking[k].add(x[k]);
+				this.correlator[k].add(x[k]);
+			}
+			this.n++;
+			return;
+		}
+		if(this.n<MAXSAMPLES && this.n==this.samples[0].length) {
+			for(int k=0; k<NOBS; k++) this.samples[k] = Arrays.copyOf(this.samples[k], (int)Math.min(2*this.n, MAXSAMPLES));
+		}
+		for(int k=0; k<NOBS; k++) {
+			this.samples[k][(int)(this.n%MAXSAMPLES)] = x[k];
+			this.batchsum[k] += x[k];
+		}
+		this.n++;
+		if(++this.fill<this.batchsize) return;
+		if(this.nbatches==this.batches[0].length) {
+			for(int k=0; k<NOBS; k++) this.batches[k] = Arrays.copyOf(this.batches[k], 2*this.nbatches);
+		}
+		for(int k=0; k<NOBS; k++) {
+			this.batches[k][this.nbatches] = this.batchsum[k]/this.batchsize;
+			this.batchsum[k] = 0.;
+		}
+		this.fill = 0;
+		this.nbatches++;
+		if(this.nbatches%CHECK==0) this.detect();
+		if(this.equilibrated<0 && this.nbatches==MAXBATCHES) this.merge();
+	}
+
+	/**
+	 * Merge the pairs of batches, doubling the samples per batch
+	 */
+	private void merge() {
+		for(int k=0; k<NOBS; k++) {
+			for(int b=0; b<MAXBATCHES/2; b++) this.batches[k][b] = 0.5*(this.batches[k][2*b] + this.batches[k][2*b+1]);
+		}
+		this.nbatches = MAXBATCHES/2;
+		this.batchsize *= 2;
+	}
+
+	/**
+	 * Add the current state of an ellipsoid
+	 */
+	public void add(JanusEllipsoid je) {
+		this.add(je.center.a[2], je.getTheta(), je.energy());
+	}
+
+	/**
+	 * Try to detect the equilibration with the MSER-5 rule; when it is found, the equilibrated samples
+	 * that are still kept are passed to the blocking analysis and the buffers are released
+	 */
+	private void detect() {
+		int d = 0;
+		for(int k=0; k<NOBS; k++) {
+			int dk = mser(this.batches[k], this.nbatches);
+			if(dk<0) return;	// not equilibrated yet
+			d = Math.max(d, dk);
+		}
+		this.equilibrated = d*this.batchsize;
+		for(long i=Math.max(this.equilibrated, this.n-MAXSAMPLES); i<this.n; i++) {
+			for(int k=0; k<NOBS; k++) {
+				this.blocking[k].add(this.samples[k][(int)(i%MAXSAMPLES)]);
+				this.correlator[k].add(this.samples[k][(int)(i%MAXSAMPLES)]);
+			}
+		}
+		this.samples = null;
+		this.batches = null;
+		this.batchsum = null;
+	}
+
+	/**
+	 * Truncation point of the MSER rule: the d that minimises sum_{i>=d} (x_i - <x>_d)^2 / (m-d)^2
+	 *
+	 * @param x	batch averages
+	 * @param m	number of batches
+	 * @return the number of batches to discard, or -1 if the minimum is not in the first half
+	 */
+	private static int mser(double[] x, int m) {
+		double s = 0., s2 = 0., best = Double.POSITIVE_INFINITY;
+		int dbest = -1;
+		for(int d=m-1; d>=0; d--) {	// suffix sums
+			s += x[d];
+			s2 += x[d]*x[d];
+			int r = m-d;
+			if(r<2 || d>m/2) continue;
+			double mser = (s2 - s*s/r)/((double)r*r);
+			if(mser<=best) {
+				best = mser;
+				dbest = d;
+			}
+		}
+		return (dbest>=0 && dbest<m/2) ? dbest : -1;
+	}
+
+	/**
+	 * Getters; observables are indexed as in <code>SimulationStatistics</code>: 0 z, 1 theta, 2 energy
+	 */
+	public long getCount()                 { return this.n; }
+	public boolean isEquilibrated()        { return this.equilibrated>=0; }
+	public long getEquilibration()         { return this.equilibrated; }
+	public long getEquilibratedCount()     { return this.blocking[0].count(); }
+	public double getMean(int k)           { return this.blocking[k].mean(); }
+	public double getError(int k)          { return this.blocking[k].error(); }
+	public boolean isErrorConverged(int k) { return this.blocking[k].converged(); }
+	public double getIntegratedTime(int k) { return this.correlator[k].getIntegratedTime(); }
+	public MultiTauCorrelator getCorrelator(int k) { return this.correlator[k]; }
+
+	/**
+	 * Effective number of independent samples, variance / error^2
+	 */
+	public double getEffectiveSamples(int k) {
+		double e = this.getError(k);
+		return this.blocking[k].variance()/(e*e);
+	}
+
+	/**
+	 * Whether the run is equilibrated and the errors of the means are reliable and below the target ones
+	 *
+	 * @param target	target errors of z, theta and energy; NaN if there is no target for an observable
+	 * @return false if there are no targets at all
+	 */
+	public boolean isConverged(double[] target) {
+		if(!this.isEquilibrated()) return false;
+		boolean any = false;	// whether there is at least one target
+		for(int k=0; k<NOBS; k++) {
+			if(Double.isNaN(target[k])) continue;
+			if(!this.isErrorConverged(k) || !(this.getError(k)<=target[k])) return false;
+			any = true;
+		}
+		return any;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		if(!this.isEquilibrated()) return "not equilibrated after " + this.n + " samples";
+		s.append("equilibrated at sample ").append(this.equilibrated).append(", ").append(this.getEquilibratedCount()).append(" samples after equilibration");
+		for(int k=0; k<NOBS; k++) {
+			s.append("\n<").append(NAMES[k]).append("> = ").append(this.getMean(k)).append(" +- ").append(this.getError(k))
+			 .append(" (ESS = ").append(Math.round(this.getEffectiveSamples(k))).append(this.isErrorConverged(k) ? ")" : ", error not converged)");
+		}
+		for(int k=0; k<NOBS; k++) {
+			MultiTauCorrelator c = this.correlator[k];
+			s.append("\ntau_int(").append(NAMES[k]).append(") = ").append(c.getIntegratedTime()).append(" samples, ESS = ").append(Math.round(c.getEffectiveSamples()));
+		}
+		return s.toString();
+	}
+
+	// INPUT AND OUTPUT
+
+	/**
+	 * Write the full state of the monitor, to be restored exactly by read:
+	 * before the equilibration the batches and the samples kept, after it the blocking analysis and the correlators;
+	 * its size is bounded by MAXSAMPLES and MAXBATCHES
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeLong(this.n);
+		out.writeLong(this.equilibrated);
+		if(this.equilibrated<0) {
+			out.writeInt(this.nbatches);
+			out.writeLong(this.batchsize);
+			out.writeLong(this.fill);
+			for(int k=0; k<NOBS; k++) {
+				for(long i=Math.max(0, this.n-MAXSAMPLES); i<this.n; i++) out.writeDouble(this.samples[k][(int)(i%MAXSAMPLES)]);
+				for(int b=0; b<this.nbatches; b++) out.writeDouble(this.batches[k][b]);
+				out.writeDouble(this.batchsum[k]);
+			}
+		}
+		for(int k=0; k<NOBS; k++) {
+			this.blocking[k].write(out);
+			this.correlator[k].write(out);
+		}
+	}
+
+	/**
+	 * Read the state of a monitor written by write
+	 */
+	public static EquilibrationMonitor read(DataInputStream in) throws IOException {
+		EquilibrationMonitor m = new EquilibrationMonitor();
+		m.n = in.readLong();
+		m.equilibrated = in.readLong();
+		if(m.equilibrated<0) {
+			m.nbatches = in.readInt();
+			m.batchsize = in.readLong();
+			m.fill = in.readLong();
+			if(m.n<0 || m.nbatches<0 || m.nbatches>=MAXBATCHES || m.batchsize<BATCH || m.fill<0 || m.fill>=m.batchsize) throw new IOException("corrupted monitor");
+			m.samples = new double[NOBS][(int)Math.min(MAXSAMPLES, Math.max(BATCH*CHECK, m.n))];
+			m.batches = new double[NOBS][Math.max(CHECK, m.nbatches)];
+			for(int k=0; k<NOBS; k++) {
+				for(long i=Math.max(0, m.n-MAXSAMPLES); i<m.n; i++) m.samples[k][(int)(i%MAXSAMPLES)] = in.readDouble();
+				for(int b=0; b<m.nbatches; b++) m.batches[k][b] = in.readDouble();
+				m.batchsum[k] = in.readDouble();
+			}
+		}
+		else {
+			m.samples = null;
+			m.batches = null;
+			m.batchsum = null;
+		}
+		for(int k=0; k<NOBS; k++) {
+			m.blocking[k] = Blocking.read(in);
+			m.correlator[k] = MultiTauCorrelator.read(in);
+		}
+		return m;
+	}
+
+	// BLOCKING ANALYSIS
+
+	/**
+	 * Streaming blocking analysis of a time series: level l holds the averages of blocks of 2^l samples,
+	 * and each level keeps only running sums and the first sample of the next pair
+	 */
+	private static class Blocking {
+
+		private long[] count = new long[1];
+		private double[] sum = new double[1];
+		private double[] sum2 = new double[1];
+		private double[] pending = new double[1];	// first sample of an incomplete pair
+
+		void add(double x) {
+			for(int l=0; ; l++) {
+				if(l==this.count.length) {
+					this.count = Arrays.copyOf(this.count, l+1);
+					this.sum = Arrays.copyOf(this.sum, l+1);
+					this.sum2 = Arrays.copyOf(this.sum2, l+1);
+					this.pending = Arrays.copyOf(this.pending, l+1);
+				}
+				this.count[l]++;
+				this.sum[l] += x;
+				this.sum2[l] += x*x;
+				if(this.count[l]%2==1) {
+					this.pending[l] = x;
+					return;
+				}
+				x = 0.5*(this.pending[l]+x);
+			}
+		}
+
+		long count() { return this.count[0]; }
+
+		double mean() { return this.sum[0]/this.count[0]; }
+
+		double variance() { return this.variance(0); }
+
+		private double variance(int l) {
+			double m = this.sum[l]/this.count[l];
+			return Math.max(0., this.sum2[l]/this.count[l] - m*m);
+		}
+
+		/**
+		 * Error of the mean from the blocks at level l, assuming they are independent
+		 */
+		private double error(int l) {
+			return Math.sqrt(this.variance(l)/(this.count[l]-1));
+		}
+
+		/**
+		 * Level where the error reaches a plateau: the first whose error agrees with
+		 * the next one within the uncertainty of the estimate, or -1 if there is none yet
+		 */
+		private int plateau() {
+			for(int l=0; l+1<this.count.length && this.count[l+1]>=MINBLOCKS; l++) {
+				double e = this.error(l), uncertainty = e/Math.sqrt(2.*(this.count[l]-1));
+				if(this.error(l+1)-e<uncertainty) return l;
+			}
+			return -1;
+		}
+
+		boolean converged() { return this.plateau()>=0; }
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(this.count.length);
+			for(int l=0; l<this.count.length; l++) {
+				out.writeLong(this.count[l]);
+				out.writeDouble(this.sum[l]);
+				out.writeDouble(this.sum2[l]);
+				out.writeDouble(this.pending[l]);
+			}
+		}
+
+		static Blocking read(DataInputStream in) throws IOException {
+			Blocking b = new Blocking();
+			int levels = in.readInt();
+			if(levels<1 || levels>Long.SIZE) throw new IOException("corrupted blocking analysis");
+			b.count = new long[levels];
+			b.sum = new double[levels];
+			b.sum2 = new double[levels];
+			b.pending = new double[levels];
+			for(int l=0; l<levels; l++) {
+				b.count[l] = in.readLong();
+				b.sum[l] = in.readDouble();
+				b.sum2[l] = in.readDouble();
+				b.pending[l] = in.readDouble();
+			}
+			return b;
+		}
+
+		/**
+		 * Error of the mean: at the plateau if there is one, otherwise the largest of the reliable levels
+		 */
+		double error() {
+			if(this.count[0]<2) return Double.NaN;
+			int l = this.plateau();
+			if(l>=0) return this.error(l);
+			double e = this.error(0);
+			for(l=1; l<this.count.length && this.count[l]>=MINBLOCKS; l++) e = Math.max(e, this.error(l));
+			return e;
+		}
+
+	}
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Geometry of the interface between water and oil, which decides which points of the surface
+ * of an ellipsoid are in oil and how much interface the ellipsoid removes.
+ * Positions are in the frame of the box; the orientation of an ellipsoid is given by its rotation
+ * matrix R, stored row by row, whose rows are the x, y, z axes of the box in the frame of the ellipsoid.
+ * Implementations are immutable, so that they can be shared by ellipsoids and threads.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public interface InterfaceGeometry {
+
+	/**
+	 * constants
+	 */
+	public static final int NCLASSIFIER = 5;	// coefficients of the classifier of the points
+
+	/**
+	 * Whether a point is in oil
+	 *
+	 * @param x		position of the point
+	 * @param y
+	 * @param z
+	 */
+	boolean inOil(double x, double y, double z);
+
+	/**
+	 * Coefficients of the classifier of the points g of the surface of an ellipsoid, in the frame of the ellipsoid:
+	 * g is in oil if c[0] g_x + c[1] g_y + c[2] g_z + c[3] + c[4] |g|^2 > 0
+	 *
+	 * @param cx	center of the ellipsoid
+	 * @param cy
+	 * @param cz
+	 * @param rot	rotation matrix of the ellipsoid, row by row
+	 * @param c		array where to store the NCLASSIFIER coefficients
+	 */
+	void classifier(double cx, double cy, double cz, double[] rot, double[] c);
+
+	/**
+	 * Area of the interface inside an ellipsoid
+	 *
+	 * @param cx	center of the ellipsoid
+	 * @param cy
+	 * @param cz
+	 * @param rot	rotation matrix of the ellipsoid, row by row
+	 * @param axis	half axis of the ellipsoid
+	 * @return the area
+	 */
+	double excludedArea(double cx, double cy, double cz, double[] rot, Vector3d axis);
+
+}
@@ -0,0 +1,51 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a batch of MC steps of a Janus ellipsoid, committed by
+ * <code>JanusEllipsoid.iterate</code> and <code>iterateMTM</code>. Without a recording the event is disabled
+ * and costs a check per batch; without a flight recorder it is not even created, since loading an event class
+ * initializes the recorder, which would take most of the start-up time of a short run. Record it with
+ *
+ *   java -XX:StartFlightRecording:filename=run.jfr JanusEllipsoid ...
+ *   jfr print --events JanusEllipsoid.Iterate run.jfr
+ *
+ * @author Giovanni Brandani
+ *
+ */
+@Name("JanusEllipsoid.Iterate")
+@Label("MC Steps")
+@Category({"Janus Ellipsoid"})
+@Description("A batch of Monte Carlo steps of a Janus ellipsoid")
+@StackTrace(false)
+public class IterateEvent extends Event {
+
+	@Label("Steps")
+	public int steps;
+
+	@Label("Trial Moves")
+	@Description("Trial moves per step, more than 1 for multiple-try Metropolis")
+	public int ntries;
+
+	@Label("Accepted")
+	public long accepted;
+
+	@Label("Area Time")
+	@Description("Time spent computing the areas")
+	@Timespan(Timespan.NANOSECONDS)
+	public long areaNanos;
+
+	@Label("Energy")
+	@Description("Energy in kT at the end of the batch")
+	public double energy;
+
+	@Label("Z")
+	@Description("z coordinate of the center at the end of the batch, in nm")
+	public double z;
+
+}
@@ -0,0 +1,987 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * 
+ * Representation and dynamics of a Janus ellipsoidal particle
+ * located at an interface between water and oil.
+ * 
+ * @author Giovanni Brandani
+ *
+ */
+
+public class JanusEllipsoid {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final String VERSION = "1.1";	// version of the model and of the dynamics, to be changed when results change
+	public static final int DIM = 3;	// dimensionality
+	public static final int DEFAULTNGRID = 100;	// default ngrid
+	public static final double ZINTER = 0.0;	// Z coordinate of the interface
+	public static final int NAREAS = 5;	// number of areas: Sao, Spo, Saw, Spw, Si
+	private static final int BLOCK = 512;	// number of grid points per block in the batched area computation
+
+	/**
+	 * Fields for the state of our system
+	 * and the interaction with the interface
+	 * the quaternion is initialised as a rotation of 0 degrees
+	 */
+	private Vector3d axis = new Vector3d(0.,0.,0.);	// a,b,c half axis of the ellipsoid
+	private double alpha = 0.;	// angle that defines the position of the apolar cap
+	private Vector3d[] grid;	// grid of points on the surface of the ellipse
+	private double[] dAgrid;	// elements of area corresponding to each point on the surface
+	private int[]  typegrid;	// type of the point on the grid: apolar 0 or polar 1
+	private double[] gridx, gridy, gridz;	// packed coordinates of the grid, for the batched area computation
+	private double[] dAapolar, dApolar;	// packed elements of area of the apolar and polar points
+	private double[] gridr2;	// packed squared distances of the grid from the center, for curved interfaces
+	private InterfaceGeometry surface = new PlanarInterface(ZINTER);	// interface between water and oil
+	public Vector3d center = new Vector3d(0.,0.,0.);	// center of the ellipsoid
+	public Quaternion rot  = new Quaternion(1., new Vector3d(0.,0.,0.));	// rotation of the ellipsoid wrt the x,y,z axis
+	public double gamma = 0.;	// gammaOW; oil-water surface tension in units of kT
+	public double costhetaP = 0.;	// gammaOW cos(thetaP) = gammaPO - gammaPW; polar-oil,  polar-water  surface tensions
+	public double costhetaA = 0.;	// gammaOW cos(thetaA) = gammaPO - gammaPW; apolar-oil, apolar-water surface tensions
+	public double time = 0.;	// current time
+	private double Sao=0., Spo=0., Saw=0., Spw=0., Si=0.;	// areas of each side of the particle in contact with each solvent
+	private RandomStream random = new RandomStream(System.nanoTime());	// random numbers for the dynamics
+	private long accepted = 0;	// number of accepted moves
+	private SimulationMetrics metrics = null;	// live counters of the simulation, or null
+
+	// CONSTRUCTORS
+
+	/**
+	 * Basic constructor
+	 * 
+	 * @param NONE
+	 */
+//	public JanusEllipsoid() {
+		// nothing to do
+//	}
+
+	/**
+	 * Standard constructor
+	 * 
+	 * @param axis		half axis lengths
+	 * @param alpha		angle that defines the patch
+	 * @param ngrid		resolution of the surface points
+	 */
+	public JanusEllipsoid(Vector3d axis, double alpha, int ngrid) {
+		this.axis  = new Vector3d(axis);
+		this.alpha = alpha;
+		this.setupGrid(ngrid);
+		this.updateAreas();
+	}
+
+	/**
+	 * Complete constructor
+	 * 
+	 * @param axis		half axis lengths
+	 * @param alpha		angle that defines the patch
+	 * @param ngrid		resolution of the surface points
+	 */
+	public JanusEllipsoid(Vector3d axis, double alpha, int ngrid, double gamma, double costhetaA, double costhetaP) {
+		this.axis  = new Vector3d(axis);
+		this.alpha = alpha;
+		this.setupGrid(ngrid);
+		this.updateAreas();
+		this.gamma = gamma;
+		this.costhetaA = costhetaA;
+		this.costhetaP = costhetaP;
+	}
+
+	/**
+	 * Copy constructor
+	 * 
+	 * @param je	Janus ellipsoid to be copied
+	 */
+	public JanusEllipsoid(JanusEllipsoid je) {
+		this.axis = new Vector3d(je.getAxis());
+		this.alpha = je.getAlpha();
+		this.grid = new Vector3d[je.getGrid().length];
+		this.dAgrid = new double[je.getGrid().length];
+		this.typegrid =  new int[je.getGrid().length];
+		for(int k=0; k<je.getGrid().length; k++) {
+			this.grid[k] = new Vector3d(je.getGrid()[k]);
+			this.dAgrid[k] = je.getdAgrid()[k];
+			this.typegrid[k] = je.getTypegrid()[k];
+		}
+		this.packGrid();
+		this.surface = je.surface;
+		this.center = new Vector3d(je.center);
+		this.rot    = new Quaternion(je.rot);
+		this.gamma     = je.gamma;
+		this.costhetaP = je.costhetaP;
+		this.costhetaA = je.costhetaA;
+		this.time      = je.time;
+		this.random    = new RandomStream(je.random);
+		this.updateAreas();
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Set the grid of points on the surface of the ellipse
+	 *
+	 * @param ngrid
+	 */
+	public void setupGrid(int ngrid) {
+		int i,j;
+		double theta,phi;
+		Vector3d v1 = new Vector3d();	// = d r(theta,phi) / d theta
+		Vector3d v2 = new Vector3d();	// = d r(theta,phi) / d phi
+		this.grid = new Vector3d[ngrid*ngrid];
+		this.dAgrid = new double[this.grid.length];
+		this.typegrid =  new int[this.grid.length];
+		for(int k=0; k<this.grid.length; k++) {
+			i = k/ngrid;
+			j = k%ngrid;
+			theta =  Math.PI*(i+0.5)/ngrid;
+			phi = 2.*Math.PI*j/ngrid;
+			this.grid[k] = new Vector3d();
+			this.grid[k].a[0] = this.axis.a[0]*Math.sin(theta)*Math.cos(phi);
+			this.grid[k].a[1] = this.axis.a[1]*Math.sin(theta)*Math.sin(phi);
+			this.grid[k].a[2] = this.axis.a[2]*Math.cos(theta);
+			v1.a[0] = this.axis.a[0]*Math.cos(theta)*Math.cos(phi);
+			v1.a[1] = this.axis.a[1]*Math.cos(theta)*Math.sin(phi);
+			v1.a[2] =-this.axis.a[2]*Math.sin(theta);
+			v2.a[0] =-this.axis.a[0]*Math.sin(theta)*Math.sin(phi);
+			v2.a[1] = this.axis.a[1]*Math.sin(theta)*Math.cos(phi);
+			v2.a[2] = 0.;
+			this.dAgrid[k] = Vector3d.cross(v1,v2).norm() * 2.*Math.PI*Math.PI/ngrid/ngrid;
+			if(theta<this.alpha) this.typegrid[k] = 0;	// apolar point
+			else                 this.typegrid[k] = 1;	// polar  point
+		}
+		this.packGrid();
+	}
+
+	/**
+	 * Store the grid as flat arrays, with the elements of area split by type,
+	 * so that the batched area computation can stream them without branches
+	 */
+	private void packGrid() {
+		this.gridx = new double[this.grid.length];
+		this.gridy = new double[this.grid.length];
+		this.gridz = new double[this.grid.length];
+		this.dAapolar = new double[this.grid.length];
+		this.dApolar  = new double[this.grid.length];
+		this.gridr2   = new double[this.grid.length];
+		for(int k=0; k<this.grid.length; k++) {
+			this.gridx[k] = this.grid[k].a[0];
+			this.gridy[k] = this.grid[k].a[1];
+			this.gridz[k] = this.grid[k].a[2];
+			this.gridr2[k] = this.gridx[k]*this.gridx[k] + this.gridy[k]*this.gridy[k] + this.gridz[k]*this.gridz[k];
+			if(this.typegrid[k]==0) this.dAapolar[k] = this.dAgrid[k];
+			else                    this.dApolar[k]  = this.dAgrid[k];
+		}
+	}
+
+	/**
+	 * Getters
+	 *
+	 */
+	public Vector3d getAxis()   { return new Vector3d(this.axis); }
+	public double getAlpha()    { return this.alpha; }
+	public Vector3d[] getGrid() { return this.grid; }
+	public double[] getdAgrid() { return this.dAgrid; }
+	public int[] getTypegrid()  { return this.typegrid; }
+	public double getSao()      { return this.Sao; }
+	public double getSpo()      { return this.Spo; }
+	public double getSaw()      { return this.Saw; }
+	public double getSpw()      { return this.Spw; }
+	public double getSi()       { return this.Si;  }
+	public RandomStream getRandom() { return this.random; }
+	public int getNgrid()       { return (int)Math.round(Math.sqrt(this.grid.length)); }
+
+	/**
+	 * Get the current areas, as computed by the dynamics
+	 *
+	 * @param out	array where to store Sao, Spo, Saw, Spw, Si
+	 */
+	public void getAreas(double[] out) {
+		out[0] = this.Sao;
+		out[1] = this.Spo;
+		out[2] = this.Saw;
+		out[3] = this.Spw;
+		out[4] = this.Si;
+	}
+
+	/**
+	 * Set the areas, when restoring a saved state, so that the energy is exactly the one
+	 * that was saved, even if the center and the orientation changed by roundoff since
+	 * the areas were last computed
+	 *
+	 * @param areas	Sao, Spo, Saw, Spw, Si
+	 */
+	public void setAreas(double[] areas) {
+		this.Sao = areas[0];
+		this.Spo = areas[1];
+		this.Saw = areas[2];
+		this.Spw = areas[3];
+		this.Si  = areas[4];
+	}
+
+	/**
+	 * Setters
+	 * 
+	 * @param axis: half axis lengths
+	 * @param alpha: angle that defines the patch
+	 * @param ngrid		resolution of the surface points
+	 */
+	public void resetEllipsoid(Vector3d axis, double alpha, int ngrid) {
+		this.axis  = new Vector3d(axis);
+		this.alpha = alpha;
+		this.setupGrid(ngrid);
+		this.updateAreas();
+	}
+
+	/**
+	 * Take the axis, alpha and grid of another ellipsoid, keeping position, orientation and surface tensions.
+	 * The grid is shared, not copied: grids are never modified, only replaced by setupGrid
+	 *
+	 * @param je	ellipsoid with the geometry to take
+	 */
+	public void setGeometry(JanusEllipsoid je) {
+		this.axis     = new Vector3d(je.axis);
+		this.alpha    = je.alpha;
+		this.grid     = je.grid;
+		this.dAgrid   = je.dAgrid;
+		this.typegrid = je.typegrid;
+		this.gridx    = je.gridx;
+		this.gridy    = je.gridy;
+		this.gridz    = je.gridz;
+		this.dAapolar = je.dAapolar;
+		this.dApolar  = je.dApolar;
+		this.gridr2   = je.gridr2;
+		this.updateAreas();
+	}
+
+	/**
+	 * Set the geometry of the interface between water and oil, by default the plane z = ZINTER
+	 *
+	 * @param surface	the interface
+	 */
+	public void setInterface(InterfaceGeometry surface) {
+		this.surface = surface;
+		this.updateAreas();
+	}
+	public InterfaceGeometry getInterface() { return this.surface; }
+
+	/**
+	 * Seed the random numbers of the dynamics, so that the trajectory is reproducible
+	 *
+	 * @param seed	seed of the random numbers
+	 */
+	public void setSeed(long seed) {
+		this.random.setSeed(seed);
+	}
+
+	/**
+	 * Number of accepted moves since the creation of the ellipsoid
+	 */
+	public long getAccepted() { return this.accepted; }
+
+	/**
+	 * Report each batch of steps to some metrics
+	 *
+	 * @param metrics	the metrics, or null to stop reporting
+	 */
+	public void setMetrics(SimulationMetrics metrics) { this.metrics = metrics; }
+	public SimulationMetrics getMetrics()             { return this.metrics; }
+
+	/**
+	 * Get twice the maximum of the axis, for the visualisation
+	 * 
+	 * @return twice the maximum axis of the ellipsoid
+	 */
+	public double getMaximumLength() {
+		double max = 0.;
+		for(int i=0; i<this.DIM; i++) if(2.*this.axis.a[i]>max) max=2.*this.axis.a[i];
+		return max;
+	}
+
+	/**
+	 * Get the tilt angle of the polar axis of the ellipsoid with respect to the normal to the interface
+	 *
+	 * @return the angle theta in [0,pi]
+	 */
+	public double getTheta() {
+		Vector3d zrotated = this.rot.rotate(new Vector3d(0.,0.,1.));
+		return Math.acos(Math.max(-1., Math.min(1., zrotated.a[2])));
+	}
+
+	// COMPUTES
+
+	/**
+	 * Compute the free energy of the system
+	 * Delta G = gammaOW ( S_AO cos(thetaA) + S_PO cos(thetaP) - A_I )
+	 */
+	public double energy() {
+		double ener = this.gamma*( this.Sao*this.costhetaA + this.Spo*this.costhetaP - this.Si );	// total energy
+		return ener;
+	}
+
+	/**
+	 * Get area of each side of the particle in each environment
+	 *
+	 */
+	public void updateAreas() {
+		this.Sao = 0.;	// S_AO  apolar side in oil
+		this.Spo = 0.;	// S_PO  polar  side in oil
+		this.Saw = 0.;	// S_AW  apolar side in water
+		this.Spw = 0.;	// S_PW  polar  side in water
+		this.Si  = 0.;	// S_I   area occupied by the protein instead of the interface
+		Vector3d r = new Vector3d();	// point on the surface
+		// compute S_ao,po,aw,pw
+		for(int i=0; i<this.grid.length; i++) {
+			r = this.rot.rotate(this.grid[i]);
+			if(this.surface.inOil(r.a[0]+this.center.a[0], r.a[1]+this.center.a[1], r.a[2]+this.center.a[2])) {	// the point is in oil
+				if(this.typegrid[i]==0) Sao += this.dAgrid[i];	// the point is in the apolar side
+				else                    Spo += this.dAgrid[i];	// the point is in the polar  side
+			}
+			else {				// the point is in water
+				if(this.typegrid[i]==0) Saw += this.dAgrid[i];	// the point is in the apolar side
+				else                    Spw += this.dAgrid[i];	// the point is in the polar  side
+			}
+		}
+		// compute Si
+		// the rows of the rotation matrix are the x,y,z axis in the reference frame of the rotated ellipsoid
+		Quaternion inverse = this.rot.inverse();
+		double[] rows = new double[9];
+		for(int j=0; j<DIM; j++) {
+			Vector3d e = new Vector3d(0.,0.,0.);
+			e.a[j] = 1.;
+			e = inverse.rotate(e);
+			for(int k=0; k<DIM; k++) rows[DIM*j+k] = e.a[k];
+		}
+		this.Si = this.surface.excludedArea(this.center.a[0], this.center.a[1], this.center.a[2], rows, this.axis);
+	}
+
+	/**
+	 * Compute the areas of a trial position and orientation, without modifying the state;
+	 * this only reads the grid, so it can be called concurrently from several threads
+	 *
+	 * @param z		z coordinate of the center
+	 * @param q		orientation of the ellipsoid
+	 * @param out	array where to store Sao, Spo, Saw, Spw, Si
+	 */
+	public void computeAreas(double z, Quaternion q, double[] out) {
+		double[] zs = { z };
+		double[] qs = { q.re, q.im.a[0], q.im.a[1], q.im.a[2] };
+		this.computeAreas(zs, qs, 0, 1, out);
+	}
+
+	/**
+	 * Compute the areas of many trial positions and orientations in one pass over the grid,
+	 * without modifying the state. The grid is processed in blocks small enough to stay in
+	 * cache, and each block is tested against all the orientations before moving to the next,
+	 * so the cost is dominated by arithmetic rather than by memory traffic.
+	 * Each point is classified by the linear, or for curved interfaces quadratic, function
+	 * given by InterfaceGeometry.classifier; the centers have the x and y of this ellipsoid.
+	 *
+	 * @param z				z coordinates of the centers
+	 * @param quaternions	orientations, stored as re, im_x, im_y, im_z for each state
+	 * @param count			number of states
+	 * @param out			array of size NAREAS*count where to store Sao, Spo, Saw, Spw, Si of each state
+	 */
+	public void computeAreas(double[] z, double[] quaternions, int count, double[] out) {
+		this.computeAreas(z, quaternions, 0, count, out);
+	}
+
+	/**
+	 * Batched area computation over the states from, ..., to-1
+	 */
+	private void computeAreas(double[] z, double[] quaternions, int from, int to, double[] out) {
+		int count = to-from;
+		final int NC = InterfaceGeometry.NCLASSIFIER;
+		double[] rows = new double[9*count];	// rotation matrices
+		double[] cls = new double[NC*count];	// classifiers of the points
+		double[] sao = new double[count], spo = new double[count], saw = new double[count], spw = new double[count];
+		double[] r = new double[9], cl = new double[NC];
+		double cx = this.center.a[0], cy = this.center.a[1];
+		double w, x, y, zq, rx, ry, rz, zc, k2, oa, op, ta, tp;
+		for(int c=0; c<count; c++) {
+			w  = quaternions[4*(from+c)];
+			x  = quaternions[4*(from+c)+1];
+			y  = quaternions[4*(from+c)+2];
+			zq = quaternions[4*(from+c)+3];
+			rows[9*c]   = w*w + x*x - y*y - zq*zq;
+			rows[9*c+1] = 2.*(x*y - w*zq);
+			rows[9*c+2] = 2.*(x*zq + w*y);
+			rows[9*c+3] = 2.*(x*y + w*zq);
+			rows[9*c+4] = w*w - x*x + y*y - zq*zq;
+			rows[9*c+5] = 2.*(y*zq - w*x);
+			rows[9*c+6] = 2.*(x*zq - w*y);
+			rows[9*c+7] = 2.*(y*zq + w*x);
+			rows[9*c+8] = w*w - x*x - y*y + zq*zq;
+			System.arraycopy(rows, 9*c, r, 0, 9);
+			this.surface.classifier(cx, cy, z[from+c], r, cl);
+			System.arraycopy(cl, 0, cls, NC*c, NC);
+		}
+		for(int b=0; b<this.gridx.length; b+=BLOCK) {
+			int e = Math.min(b+BLOCK, this.gridx.length);
+			for(int c=0; c<count; c++) {
+				rx = cls[NC*c]; ry = cls[NC*c+1]; rz = cls[NC*c+2]; zc = cls[NC*c+3]; k2 = cls[NC*c+4];
+				oa = 0.; op = 0.; ta = 0.; tp = 0.;
+				if(k2==0.) {	// planar, the rotated z coordinate of the points
+					for(int i=b; i<e; i++) {
+						if(rx*this.gridx[i] + ry*this.gridy[i] + rz*this.gridz[i] + zc > 0.) {	// the point is in oil
+							oa += this.dAapolar[i];
+							op += this.dApolar[i];
+						}
+						ta += this.dAapolar[i];
+						tp += this.dApolar[i];
+					}
+				}
+				else {
+					for(int i=b; i<e; i++) {
+						if(rx*this.gridx[i] + ry*this.gridy[i] + rz*this.gridz[i] + zc + k2*this.gridr2[i] > 0.) {	// the point is in oil
+							oa += this.dAapolar[i];
+							op += this.dApolar[i];
+						}
+						ta += this.dAapolar[i];
+						tp += this.dApolar[i];
+					}
+				}
+				sao[c] += oa;
+				spo[c] += op;
+				saw[c] += ta-oa;
+				spw[c] += tp-op;
+			}
+		}
+		for(int c=0; c<count; c++) {
+			System.arraycopy(rows, 9*c, r, 0, 9);
+			out[NAREAS*(from+c)]   = sao[c];
+			out[NAREAS*(from+c)+1] = spo[c];
+			out[NAREAS*(from+c)+2] = saw[c];
+			out[NAREAS*(from+c)+3] = spw[c];
+			out[NAREAS*(from+c)+4] = this.surface.excludedArea(cx, cy, z[from+c], r, this.axis);
+		}
+	}
+
+	/**
+	 * Compute the free energy corresponding to a set of areas
+	 *
+	 * @param areas	Sao, Spo, Saw, Spw, Si, as returned by computeAreas
+	 */
+	public double energy(double[] areas) {
+		return this.gamma*( areas[0]*this.costhetaA + areas[1]*this.costhetaP - areas[4] );
+	}
+
+	// DYNAMICS
+
+	/**
+	 * Perform n timesteps, each of length h, of the integration algorithm.
+	 * A rotation of phi around an axis v is given by the quaternion:
+	 * q = cos(phi/2) + sin(phi/2) v
+	 * 
+	 * @param n          number of timesteps to iterate
+	 * @param sigmadz    sigma of the infinitesimal dispacement along z
+	 * @param sigmadphi  sigma of the infinitesimal angle of rotation
+	 */
+	public void iterate(int n, double sigmadz, double sigmadphi) {
+		double en0, en1;	// initial and final energies
+		double dz;		// infinitesimal dispacement along z
+		double dphi, cosdphihalf, sindphihalf;	// infinitesimal angle of rotation
+		double axcostheta, axsintheta, axphi;	// for the axis of rotation
+		Quaternion drot = new Quaternion();	// infinitesimal quaternion rotation
+		Vector3d drotim = new Vector3d();	// imaginary part of the quaternion rotation
+		double oldSao, oldSpo, oldSaw, oldSpw, oldSi;	// old areas
+		IterateEvent event = FlightRecorder.isInitialized() ? new IterateEvent() : null;	// instrumentation, timed only if somebody is listening
+		boolean timed = (this.metrics!=null || (event!=null && event.isEnabled()));
+		long start = timed ? System.nanoTime() : 0L, areaNanos = 0L, t = 0L, accepted0 = this.accepted;
+		if(event!=null) event.begin();
+		this.updateAreas();	// so that you can compute the energy in the first step
+		oldSao = this.Sao;
+		oldSpo = this.Spo;
+		oldSaw = this.Saw;
+		oldSpw = this.Spw;
+		oldSi  = this.Si;
+		for(int step=0; step<n; step++) {
+			// Here you can do stuff as long as you dont update the state
+			en0 = energy();		// compute the initial energy
+			// generate a random dispacement and rotation
+			dz   = this.random.gaussrand()*sigmadz;
+			dphi = this.random.gaussrand()*sigmadphi;
+			cosdphihalf = Math.cos(0.5*dphi);
+			sindphihalf = Math.sin(0.5*dphi);
+			axcostheta  = 2.*this.random.random()-1.;
+			axsintheta  = Math.sqrt(1.-axcostheta*axcostheta);
+			axphi       = 2.*Math.PI*this.random.random();
+			drotim.a[0] = sindphihalf * axsintheta*Math.cos(axphi);
+			drotim.a[1] = sindphihalf * axsintheta*Math.sin(axphi);
+			drotim.a[2] = sindphihalf * axcostheta;
+			drot.re = cosdphihalf;
+			drot.im = drotim;
+			// Here we start updating state, so to make this thread-safe, we need to obtain a lock to continue
+			synchronized(this) {
+				// update the position and the orientation
+				this.center.a[2] += dz;
+				this.rot = Quaternion.prod(drot,rot);
+				if(timed) t = System.nanoTime();
+				this.updateAreas();
+				if(timed) areaNanos += System.nanoTime()-t;
+				en1 = energy();
+				if( this.random.random()>Math.exp(-(en1-en0)) ) {
+					this.center.a[2] += -dz;
+					this.rot = Quaternion.prod(drot.inverse(),rot);
+					this.Sao = oldSao;
+					this.Spo = oldSpo;
+					this.Saw = oldSaw;
+					this.Spw = oldSpw;
+					this.Si  = oldSi;
+				}
+				else this.accepted++;
+				this.rot.correct();	// FIXME: correct for numerical errors, does it work?
+				this.time += 1.;
+				oldSao = this.Sao;
+				oldSpo = this.Spo;
+				oldSaw = this.Saw;
+				oldSpw = this.Spw;
+				oldSi  = this.Si;
+			}
+			// The lock is now released, and other threads are ok to read the state of the system
+		}
+		if(timed) this.instrument(event, n, 1, this.accepted-accepted0, System.nanoTime()-start, areaNanos);
+	}
+
+	/**
+	 * Report a batch of steps to the flight recorder, if it was started, and to the metrics
+	 */
+	private void instrument(IterateEvent event, int n, int ntries, long accepted, long nanos, long areaNanos) {
+		if(event!=null) {
+			event.end();
+			if(event.shouldCommit()) {
+				event.steps = n;
+				event.ntries = ntries;
+				event.accepted = accepted;
+				event.areaNanos = areaNanos;
+				event.energy = this.energy();
+				event.z = this.center.a[2];
+				event.commit();
+			}
+		}
+		if(this.metrics!=null) this.metrics.record(n, accepted, nanos, areaNanos, this.energy(), this.center.a[2]);
+	}
+
+	/**
+	 * Generate a random rotation of angle dphi around a random axis,
+	 * with dphi gaussian distributed with standard deviation sigmadphi
+	 *
+	 * @param sigmadphi  sigma of the infinitesimal angle of rotation
+	 * @return the quaternion of the random rotation
+	 */
+	private Quaternion randomRotation(double sigmadphi) {
+		return randomRotation(this.random, sigmadphi);
+	}
+
+	/**
+	 * Generate a random rotation with the numbers of a given stream, for the moves of other particles
+	 *
+	 * @param random	 the random numbers
+	 * @param sigmadphi  sigma of the infinitesimal angle of rotation
+	 * @return the quaternion of the random rotation
+	 */
+	public static Quaternion randomRotation(RandomStream random, double sigmadphi) {
+		double dphi = random.gaussrand()*sigmadphi;
+		double sindphihalf = Math.sin(0.5*dphi);
+		double axcostheta  = 2.*random.random()-1.;
+		double axsintheta  = Math.sqrt(1.-axcostheta*axcostheta);
+		double axphi       = 2.*Math.PI*random.random();
+		return new Quaternion(Math.cos(0.5*dphi), new Vector3d(sindphihalf*axsintheta*Math.cos(axphi), sindphihalf*axsintheta*Math.sin(axphi), sindphihalf*axcostheta));
+	}
+
+	/**
+	 * Perform n steps of multiple-try Metropolis (Liu, Liang and Wong, JASA 95, 121, 2000).
+	 * At each step ntries trial moves are generated from the current state and their energies
+	 * are evaluated in parallel with the batched area computation; one of them, y, is selected with probability proportional to
+	 * its Boltzmann weight. Then ntries-1 reference moves are generated from y and, together
+	 * with the current state, they are used in the acceptance rule
+	 * min(1, sum_j exp(-E(y_j)) / sum_j exp(-E(x_j))).
+	 * Since the proposal moves are symmetric, this satisfies detailed balance.
+	 * 
+	 * @param n          number of timesteps to iterate
+	 * @param sigmadz    sigma of the infinitesimal dispacement along z
+	 * @param sigmadphi  sigma of the infinitesimal angle of rotation
+	 * @param ntries     number of trial moves per step
+	 */
+	public void iterateMTM(int n, double sigmadz, double sigmadphi, int ntries) {
+		double[] tz = new double[ntries];	// trial positions
+		Quaternion[] trot = new Quaternion[ntries];	// trial orientations
+		double[] tareas = new double[NAREAS*ntries];	// trial areas
+		double[] ten = new double[ntries];	// trial energies
+		double[] rz = new double[ntries];	// reference positions
+		Quaternion[] rrot = new Quaternion[ntries];	// reference orientations
+		double[] rareas = new double[NAREAS*ntries];	// reference areas
+		double[] ren = new double[ntries];	// reference energies
+		double[] selected = new double[NAREAS];	// areas of the selected trial
+		double emin, wsum, wtrial, wref, u;	// weights for the selection and acceptance
+		int sel;	// selected trial
+		IterateEvent event = FlightRecorder.isInitialized() ? new IterateEvent() : null;	// instrumentation, timed only if somebody is listening
+		boolean timed = (this.metrics!=null || (event!=null && event.isEnabled()));
+		long start = timed ? System.nanoTime() : 0L, areaNanos = 0L, t = 0L, accepted0 = this.accepted;
+		if(event!=null) event.begin();
+		this.updateAreas();	// so that you can compute the energy in the first step
+		for(int step=0; step<n; step++) {
+			// generate the trial moves from the current state
+			for(int j=0; j<ntries; j++) {
+				tz[j]   = this.center.a[2] + this.random.gaussrand()*sigmadz;
+				trot[j] = Quaternion.prod(randomRotation(sigmadphi), this.rot);
+			}
+			if(timed) t = System.nanoTime();
+			this.computeEnergies(tz, trot, tareas, ten, ntries);
+			// select one trial with probability proportional to exp(-E)
+			emin = ten[0];
+			for(int j=1; j<ntries; j++) if(ten[j]<emin) emin = ten[j];
+			wtrial = 0.;
+			for(int j=0; j<ntries; j++) wtrial += Math.exp(-(ten[j]-emin));
+			u = this.random.random()*wtrial;
+			sel = ntries-1;
+			wsum = 0.;
+			for(int j=0; j<ntries; j++) {
+				wsum += Math.exp(-(ten[j]-emin));
+				if(u<wsum) { sel = j; break; }
+			}
+			for(int k=0; k<NAREAS; k++) selected[k] = tareas[NAREAS*sel+k];
+			// generate the reference moves from the selected trial, the last one is the current state
+			for(int j=0; j<ntries-1; j++) {
+				rz[j]   = tz[sel] + this.random.gaussrand()*sigmadz;
+				rrot[j] = Quaternion.prod(randomRotation(sigmadphi), trot[sel]);
+			}
+			this.computeEnergies(rz, rrot, rareas, ren, ntries-1);
+			if(timed) areaNanos += System.nanoTime()-t;	// including the selection of the trial, which is cheap
+			ren[ntries-1] = this.energy();
+			wref = 0.;
+			for(int j=0; j<ntries; j++) wref += Math.exp(-(ren[j]-emin));
+			// Here we start updating state, so to make this thread-safe, we need to obtain a lock to continue
+			synchronized(this) {
+				if( this.random.random()*wref < wtrial ) {
+					this.center.a[2] = tz[sel];
+					this.rot = trot[sel];
+					this.Sao = selected[0];
+					this.Spo = selected[1];
+					this.Saw = selected[2];
+					this.Spw = selected[3];
+					this.Si  = selected[4];
+					this.accepted++;
+				}
+				this.rot.correct();
+				this.time += 1.;
+			}
+		}
+		if(timed) this.instrument(event, n, ntries, this.accepted-accepted0, System.nanoTime()-start, areaNanos);
+	}
+
+	/**
+	 * Compute areas and energies of a set of trial states, splitting them in
+	 * chunks that are evaluated in parallel with the batched area computation
+	 *
+	 * @param z		z coordinates of the trial states
+	 * @param q		orientations of the trial states
+	 * @param areas	where to store the areas of each trial state, NAREAS per state
+	 * @param en	where to store the energies of each trial state
+	 * @param count	number of trial states
+	 */
+	private void computeEnergies(double[] z, Quaternion[] q, double[] areas, double[] en, int count) {
+		double[] quaternions = new double[4*count];
+		for(int j=0; j<count; j++) {
+			quaternions[4*j]   = q[j].re;
+			quaternions[4*j+1] = q[j].im.a[0];
+			quaternions[4*j+2] = q[j].im.a[1];
+			quaternions[4*j+3] = q[j].im.a[2];
+		}
+		int nchunks = Math.min(count, Runtime.getRuntime().availableProcessors());
+		if(nchunks<=1) this.computeAreas(z, quaternions, 0, count, areas);
+		else IntStream.range(0, nchunks).parallel().forEach(c -> this.computeAreas(z, quaternions, c*count/nchunks, (c+1)*count/nchunks, areas));
+		double[] a = new double[NAREAS];
+		for(int j=0; j<count; j++) {
+			for(int k=0; k<NAREAS; k++) a[k] = areas[NAREAS*j+k];
+			en[j] = this.energy(a);
+		}
+	}
+
+	//   MAIN METHOD
+
+	/**
+	 * Length in bytes of the trajectory written so far, or -1 if it is written to the standard output
+	 */
+	private static long length(FileOutputStream out) {
+		if(out==null) return -1;
+		try { return out.getChannel().size(); }
+		catch(IOException e) { throw new UncheckedIOException(e); }
+	}
+
+	/**
+	 * Main method
+	 */
+	public static void main(String args[]) {
+
+		// set up initial parameters as in BslA
+		double Lx = 1.4;
+		double Ly = 1.4;
+		double Lz = 2.6;
+		double alpha = 50.4;	// angle fo the patch
+		double gamma = 12.;	// water oil surface tension in kT
+		double costhetaA =-0.2;	// apolar side
+		double costhetaP = 0.5;	// polar side
+		double dz = 0.01;
+		double dphi = 0.01;
+		int dt = 100;
+		int nsteps = 10000;
+		int ntries = 1;	// number of trial moves per step, more than 1 for multiple-try Metropolis
+		long seed = System.nanoTime();	// seed of the random numbers
+		boolean seeded = false;	// whether the seed was given
+		double radius = 0.;	// radius of the droplet, positive for oil and negative for water, 0 for a planar interface
+		String cache = null;	// directory of the store of results
+		String outfile = null;	// file for the trajectory, instead of the standard output
+		String checkpoint = null;	// file for the checkpoints
+		int checkpointevery = 1000;	// samples between checkpoints
+		String restart = null;	// checkpoint to restart from
+		double[] target = { Double.NaN, Double.NaN, Double.NaN };	// errors of z, theta and energy at which to stop, NaN for none
+
+		// parse command line arguments
+		System.out.println("# Usage: java JanusEllipsoid [-LxLy val] [-Lz val] [-alpha val] [-gamma val] [-costhetaA val] [-costhetaP val] [-dz val] [-dphi val] [-dt val] [-nsteps val] [-ntries val] [-seed val] [-radius val] [-cache dir] [-out file] [-checkpoint file] [-checkpointevery val] [-restart file] [-errz val] [-errtheta val] [-errenergy val]");
+		for(int i=0; i<args.length; i++) {
+			if( args[i].equals("-LxLy") ) {
+				try { Lx = Ly = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-Lz") ) {
+				try { Lz = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-alpha") ) {
+				try { alpha = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-gamma") ) {
+				try { gamma = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-costhetaA") ) {
+				try { costhetaA = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-costhetaP") ) {
+				try { costhetaP = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-dz") ) {
+				try { dz = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-dphi") ) {
+				try { dphi = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-dt") ) {
+				try { dt = Integer.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-nsteps") ) {
+				try { nsteps = Integer.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-ntries") ) {
+				try { ntries = Integer.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-seed") ) {
+				try { seed = Long.valueOf(args[i+1]); seeded = true; }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-radius") ) {
+				try { radius = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-cache") ) {
+				try { cache = args[i+1]; }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-out") ) {
+				try { outfile = args[i+1]; }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-checkpoint") ) {
+				try { checkpoint = args[i+1]; }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-checkpointevery") ) {
+				try { checkpointevery = Integer.valueOf(args[i+1]); if(checkpointevery<1) throw new IllegalArgumentException(); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-restart") ) {
+				try { restart = args[i+1]; }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-errz") ) {
+				try { target[0] = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-errtheta") ) {
+				try { target[1] = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+			if( args[i].equals("-errenergy") ) {
+				try { target[2] = Double.valueOf(args[i+1]); }
+				catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+			}
+		}
+
+		// check whether this simulation has already been run; the seed is part of the key, so it cannot be random
+		if(cache!=null && !seeded) seed = new SimulationParameters().getSeed();
+		SimulationParameters params = new SimulationParameters(Lx, Ly, Lz, Math.PI*alpha/180., JanusEllipsoid.DEFAULTNGRID, gamma, costhetaA, costhetaP, dz, dphi, dt, nsteps, 0, ntries, seed, radius);
+		Checkpoint restarted = null;
+		ResultStore store = null;
+		PrintStream out = System.out;
+		FileOutputStream outstream = null;	// file of the trajectory, if it is not the standard output
+		try {
+			if(restart!=null) {	// the parameters are those of the interrupted simulation
+				restarted = Checkpoint.read(restart);
+				params = restarted.getParameters();
+				EquilibrationMonitor m = restarted.restoreMonitor();
+				if(restarted.getStep()>=params.getNsteps() || (m!=null && m.isConverged(target))) {	// the final checkpoint of a finished run
+					System.out.println("# The run is already complete, after " + restarted.getStep() + " samples");
+					return;
+				}
+				dz = params.getDz();
+				dphi = params.getDphi();
+				dt = params.getDt();
+				nsteps = params.getNsteps();
+				ntries = params.getNtries();
+				seed = params.getSeed();
+				radius = params.getRadius();
+			}
+			if(cache!=null) {
+				store = new ResultStore(cache);
+				SimulationSummary cached = store.get(params);
+				if(cached!=null) {
+					System.out.println("# Cached result " + ResultStore.key(params));
+					for(String line : cached.toString().split("\n")) System.out.println("# " + line);
+					if(cached.getTrajectory()!=null) System.out.println("# trajectory = " + cached.getTrajectory());
+					return;
+				}
+			}
+			if(outfile!=null) {
+				outstream = new FileOutputStream(outfile, restarted!=null);
+				long length = (restarted!=null) ? restarted.getOutput() : -1;
+				if(length>=0) {	// drop the samples written after the checkpoint, which are computed again
+					FileChannel channel = outstream.getChannel();
+					if(channel.size()<length) throw new IOException("the trajectory " + outfile + " is shorter than at the checkpoint");
+					channel.truncate(length);
+				}
+				out = new PrintStream(outstream);
+			}
+		}
+		catch(IOException e) { System.out.println("# Error: " + e.getMessage()); System.exit(-1); }
+
+		JanusEllipsoid janus;
+		SimulationStatistics stats = null;	// statistics for the store and the checkpoints, sampled as in SimulationStatistics.run
+		EquilibrationMonitor monitor;	// detects the equilibration and the convergence of the means
+		int start = 0;	// first sample
+		if(restarted!=null) {
+			janus = restarted.restoreEllipsoid();
+			stats = restarted.restoreStatistics();
+			monitor = restarted.restoreMonitor();
+			start = (int)restarted.getStep();
+			out.print("# Restarted at sample " + start + " by: java JanusEllipsoid");
+			for(int i=0; i<args.length; i++) out.print( " " + args[i] );
+			out.println("");
+		}
+		else {
+			janus = params.createEllipsoid();
+			monitor = new EquilibrationMonitor();
+			janus.updateAreas();
+			out.print("# Generated by: java JanusEllipsoid");
+			for(int i=0; i<args.length; i++) out.print( " " + args[i] );
+			out.println("");
+			out.println("# Lx = "          + janus.getAxis().a[0] );
+			out.println("# Ly = "          + janus.getAxis().a[1] );
+			out.println("# Lz = "          + janus.getAxis().a[2] );
+			out.println("# alpha = "       + 180.*janus.getAlpha()/Math.PI );
+			out.println("# gamma = "       + janus.gamma );
+			out.println("# cos(thetaA) = " + janus.costhetaA );
+			out.println("# cos(thetaP) = " + janus.costhetaP );
+			out.println("# Area(cap) = "   + (janus.getSao()+janus.getSaw()) );
+			out.println("# Area(nocap) = " + (janus.getSpo()+janus.getSpw()) );
+			out.println("# dz = "          + dz );
+			out.println("# dphi = "        + dphi );
+			out.println("# dt = "          + dt );
+			out.println("# ntries = "      + ntries );
+			out.println("# seed = "        + seed );
+			if(radius!=0.) out.println("# radius = " + radius );
+		}
+		if(stats==null && (store!=null || checkpoint!=null)) stats = new SimulationStatistics();
+		ExecutorService writer = (checkpoint!=null) ? Executors.newSingleThreadExecutor() : null;	// writes the checkpoints in the background
+
+		double theta = 0.;	// angle to the interface
+		final Vector3d ZAXIS = new Vector3d(0.,0.,1.);
+		Vector3d zrotated = new Vector3d(ZAXIS);
+
+		boolean early = false;	// whether the run stopped before nsteps because the target errors were reached
+
+		SimulationMetrics metrics = SimulationMetrics.register("Simulation", (outfile!=null) ? outfile : "stdout");	// live counters for JConsole
+		janus.setMetrics(metrics);
+		long accepted = janus.getAccepted();
+		long startTime = System.currentTimeMillis();
+		if(restarted==null) out.println("# time z(nm) theta(rad) energy(kT) Sao(nm^2) Spo(nm^2) Si(nm^2) q_re q_x q_y q_z");
+		int last = nsteps;	// index of the sample after the last one
+		for(int i=start; i<nsteps; i++) {
+			if(writer!=null && i>start && i%checkpointevery==0) {	// the trajectory up to here must be on disk before the checkpoint
+				out.flush();
+				new Checkpoint(params, i, length(outstream), janus, stats, monitor).writeAsync(checkpoint, writer);
+			}
+			zrotated = janus.rot.rotate(ZAXIS);
+	                theta = Math.acos(Vector3d.dot(zrotated, ZAXIS));
+			out.printf("%d\t%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f\n", i, janus.center.a[2], theta, janus.energy(), janus.getSao(), janus.getSpo(), janus.getSi(),
+				janus.rot.re, janus.rot.im.a[0], janus.rot.im.a[1], janus.rot.im.a[2]);	// the orientation is last, so that the other columns keep their place
+			if(ntries>1) janus.iterateMTM(dt, dz, dphi, ntries);
+			else         janus.iterate(dt, dz, dphi);
+			if(stats!=null) stats.add(janus);
+			monitor.add(janus);
+			if(monitor.isConverged(target)) {
+				early = (i+1<nsteps);
+				last = i+1;
+				break;
+			}
+		}
+		long endTime = System.currentTimeMillis();
+		if(metrics!=null) metrics.close();
+		long steps = (long)(last-start)*dt;	// MC steps of this run
+		out.println("# Run time = " + 0.001*(endTime-startTime) + " s, MC steps per second = " + 1000.*steps/Math.max(1L, endTime-startTime)
+			+ ", acceptance = " + (double)(janus.getAccepted()-accepted)/steps );
+		if(early) out.println("# Target errors reached after " + last + " samples");
+		for(String line : monitor.toString().split("\n")) out.println("# " + line);
+		if(monitor.isEquilibrated()) {
+			double tau = 0.5;
+			for(int k=0; k<EquilibrationMonitor.NOBS; k++) tau = Math.max(tau, monitor.getIntegratedTime(k));
+			out.println("# dt for independent samples = " + (int)Math.ceil(2.*tau*dt) );
+		}
+		out.flush();
+		long written = length(outstream);
+		if(out!=System.out) out.close();
+		if(writer!=null) {	// the last checkpoint marks the simulation as finished
+			new Checkpoint(params, last, written, janus, stats, monitor).writeAsync(checkpoint, writer);
+			writer.shutdown();
+			try { writer.awaitTermination(1, TimeUnit.MINUTES); }
+			catch(InterruptedException e) { Thread.currentThread().interrupt(); }
+		}
+
+		// save the results for the next time
+		try {
+			if(store!=null && !early) store.put(params, stats.summary().withTrajectory(outfile));	// the parameters do not determine where an early stop happens
+		}
+		catch(IOException e) { System.out.println("# Error: " + e.getMessage()); System.exit(-1); }
+
+	}
+}
@@ -0,0 +1,496 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local server of simulations of a Janus ellipsoid, so that other programs can run them without starting
+ * a JVM for each one. It listens over HTTP on the loopback interface only, and accepts jobs as JSON objects
+ * whose fields are the parameters of <code>SimulationParameters</code>:
+ *
+ *   POST /simulate  {"gamma": 10, "nsteps": 1000, "progress": 100}
+ *   POST /sweep     {"parameter": "alpha", "values": [30, 60, 90], "nsteps": 1000}
+ *   GET  /status
+ *
+ * The answer is streamed as one JSON object per line: optional progress reports every "progress" samples,
+ * then one result per simulation. Connections are served by virtual threads when the JVM has them (Java 21),
+ * otherwise by a cached pool, while the simulations run on a bounded pool of compute threads.
+ * Warm engines are kept between jobs in a <code>SimulatorPool</code>, and results can be kept in a <code>ResultStore</code>.
+ * Every simulation of a job is validated before any is scheduled: the parameters must be accepted by
+ * <code>SimulationParameters.Builder</code>, with at least one sample and limits on ngrid and ntries, otherwise the
+ * answer is 400; a job whose simulations do not all fit in the queue is rejected as a whole with 503.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class JobServer {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final int DEFAULTPORT = 8642;
+	public static final int MAXNGRID = 1000;	// limit of the resolution of the grid, whose memory grows as ngrid^2
+	public static final int MAXNTRIES = 1000;	// limit of the trials of multiple-try Metropolis
+	private static final List<String> INTEGERS = Arrays.asList("ngrid", "dt", "nsteps", "nequil", "ntries");	// parameters that must be integers
+	private static final String END = "";	// marks the end of the lines of a job
+
+	private final HttpServer server;
+	private final ThreadPoolExecutor compute;	// threads running the simulations
+	private final ExecutorService connections;	// threads serving the clients
+	private final ResultStore store;	// store of results, or null
+
+	/**
+	 * Warm engines, by geometry, reused by new simulations
+	 */
+	private final SimulatorPool pool = new SimulatorPool();
+
+	/**
+	 * Counters for the status
+	 */
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong cached = new AtomicLong();
+
+	// CONSTRUCTORS
+
+	/**
+	 * Create a server, not started yet
+	 *
+	 * @param port		port on the loopback interface
+	 * @param nthreads	number of compute threads
+	 * @param queue		maximum number of simulations waiting for a compute thread
+	 * @param store		store of results, or null
+	 */
+	public JobServer(int port, int nthreads, int queue, ResultStore store) throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.compute = new ThreadPoolExecutor(nthreads, nthreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queue));
+		this.connections = connectionExecutor();
+		this.store = store;
+		this.server.setExecutor(this.connections);
+		this.server.createContext("/simulate", exchange -> this.serve(exchange, false));
+		this.server.createContext("/sweep", exchange -> this.serve(exchange, true));
+		this.server.createContext("/status", this::status);
+	}
+
+	/**
+	 * Executor with a virtual thread per task if the JVM supports them, otherwise a cached pool
+	 */
+	private static ExecutorService connectionExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	// ACCESSORS
+
+	public int getPort() { return this.server.getAddress().getPort(); }
+
+	public void start() { this.server.start(); }
+
+	public void stop() {
+		this.server.stop(0);
+		this.compute.shutdownNow();
+		this.connections.shutdownNow();
+	}
+
+	// JOBS
+
+	/**
+	 * Serve a simulation or a sweep
+	 */
+	private void serve(HttpExchange exchange, boolean sweep) throws IOException {
+		try {
+			if(!exchange.getRequestMethod().equals("POST")) {
+				reply(exchange, 405, error("use POST"));
+				return;
+			}
+			Map<String, Object> job;
+			List<SimulationParameters> runs = new ArrayList<SimulationParameters>();
+			List<Number> values = new ArrayList<Number>();
+			String parameter = null;
+			int progress = 0;
+			try(InputStream in = exchange.getRequestBody()) {
+				job = Json.parseObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+				SimulationParameters base = new SimulationParameters();
+				for(Map.Entry<String, Object> e : job.entrySet()) {
+					switch(e.getKey()) {
+						case "progress":  progress = ((Number)e.getValue()).intValue(); break;
+						case "parameter": parameter = (String)e.getValue(); break;
+						case "values":    for(Object v : (List<?>)e.getValue()) values.add((Number)v); break;
+						case "seed":      base = base.withSeed(seed(e.getValue())); break;
+						default:          base = base.with(e.getKey(), value(e.getKey(), e.getValue()));
+					}
+				}
+				if(sweep) {
+					if(parameter==null || values.isEmpty()) throw new IllegalArgumentException("a sweep needs a parameter and its values");
+					for(Number v : values) runs.add(validate(parameter.equals("seed") ? base.withSeed(seed(v)) : base.with(parameter, value(parameter, v))));
+				}
+				else runs.add(validate(base));
+			}
+			catch(RuntimeException e) {	// malformed JSON, wrong types, unknown parameters or invalid values
+				reply(exchange, 400, error(e.getMessage()));
+				return;
+			}
+
+			// the simulations write their lines to a queue, which this thread copies to the client
+			BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+			AtomicBoolean cancelled = new AtomicBoolean(false);
+			List<Runnable> tasks = new ArrayList<Runnable>();
+			for(int r=0; r<runs.size(); r++) {
+				SimulationParameters p = runs.get(r);
+				String label = sweep ? "\"" + parameter + "\": " + values.get(r) + ", " : "";
+				int every = progress;
+				tasks.add(() -> {
+					try { this.run(p, label, every, lines, cancelled); }
+					catch(Exception e) { lines.add(error(e.toString())); }
+					finally { lines.add(END); }
+				});
+			}
+			if(this.compute.getQueue().remainingCapacity()<tasks.size()) {
+				reply(exchange, 503, error("too many jobs queued"));
+				return;
+			}
+			int submitted = 0;
+			try {
+				for(Runnable t : tasks) {
+					this.compute.execute(t);
+					submitted++;
+				}
+			}
+			catch(RejectedExecutionException e) {	// the queue was filled by other jobs in the meantime
+				cancelled.set(true);	// the simulations already submitted stop at once
+				reply(exchange, 503, error("too many jobs queued"));
+				return;
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+			exchange.sendResponseHeaders(200, 0);
+			try(OutputStream out = exchange.getResponseBody()) {
+				for(int done=0; done<submitted; ) {
+					String line = lines.take();
+					if(line==END) { done++; continue; }
+					out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+					out.flush();
+				}
+			}
+			catch(IOException e) {
+				cancelled.set(true);	// the client has gone, stop its simulations
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Run a simulation, as <code>SimulationStatistics.run</code>, writing progress and result to the queue
+	 */
+	private void run(SimulationParameters p, String label, int progress, BlockingQueue<String> lines, AtomicBoolean cancelled) throws IOException {
+		if(this.store!=null) {
+			SimulationSummary s = this.store.get(p);
+			if(s!=null) {
+				this.cached.incrementAndGet();
+				lines.add(result(p, label, s, true));
+				return;
+			}
+		}
+		SimulationEngine engine = this.pool.borrow(p);
+		JanusEllipsoid je = engine.getEllipsoid();
+		SimulationStatistics stats = new SimulationStatistics();
+		SimulationMetrics metrics = SimulationMetrics.register(label.isEmpty() ? "Simulation" : "Sweep", p.toString());
+		engine.setMetrics(metrics);
+		try {
+			for(int i=0; i<p.getNequil(); i++) {
+				if(cancelled.get()) return;
+				engine.step(1);
+			}
+			for(int i=0; i<p.getNsteps(); i++) {
+				if(cancelled.get()) return;
+				engine.step(1);
+				stats.add(je);
+				if(progress>0 && (i+1)%progress==0) {
+					lines.add("{" + label + "\"type\": \"progress\", \"samples\": " + (i+1) + ", \"z\": " + je.center.a[2]
+						+ ", \"theta\": " + je.getTheta() + ", \"energy\": " + je.energy() + "}");
+				}
+			}
+		}
+		finally {
+			engine.setMetrics(null);
+			if(metrics!=null) metrics.close();
+			this.pool.release(engine);
+		}
+		SimulationSummary s = stats.summary();
+		if(this.store!=null) this.store.put(p, s);
+		this.completed.incrementAndGet();
+		lines.add(result(p, label, s, false));
+	}
+
+	/**
+	 * Serve the status of the server
+	 */
+	private void status(HttpExchange exchange) throws IOException {
+		try {
+			reply(exchange, 200, "{\"running\": " + this.compute.getActiveCount() + ", \"queued\": " + this.compute.getQueue().size()
+				+ ", \"completed\": " + this.completed.get() + ", \"cached\": " + this.cached.get()
+				+ ", \"threads\": " + this.compute.getMaximumPoolSize() + ", \"geometries\": " + this.pool.getGeometries() + "}");
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Send a complete answer
+	 */
+	private static void reply(HttpExchange exchange, int code, String line) throws IOException {
+		byte[] body = (line + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+		exchange.sendResponseHeaders(code, body.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Check that the parameters of a simulation make sense and that it does not need too much memory
+	 *
+	 * @throws IllegalArgumentException if they do not
+	 */
+	private static SimulationParameters validate(SimulationParameters p) {
+		p = p.toBuilder().build();
+		if(p.getNsteps()<1) throw new IllegalArgumentException("nsteps must be positive");
+		if(p.getNgrid()>MAXNGRID) throw new IllegalArgumentException("ngrid cannot be larger than " + MAXNGRID);
+		if(p.getNtries()>MAXNTRIES) throw new IllegalArgumentException("ntries cannot be larger than " + MAXNTRIES);
+		return p;
+	}
+
+	/**
+	 * Value of a parameter of a job, which must be a finite number, and an integer for the integer parameters,
+	 * so that it is not truncated
+	 */
+	private static double value(String name, Object value) {
+		if(!(value instanceof Number) || !Double.isFinite(((Number)value).doubleValue())) throw new IllegalArgumentException(name + " must be a finite number");
+		if(INTEGERS.contains(name)) {
+			if(!(value instanceof Long) || (Long)value<Integer.MIN_VALUE || (Long)value>Integer.MAX_VALUE) throw new IllegalArgumentException(name + " must be an integer");
+		}
+		return ((Number)value).doubleValue();
+	}
+
+	/**
+	 * Seed of a job, which must be an integer, so that it is not rounded to a double
+	 */
+	private static long seed(Object value) {
+		if(!(value instanceof Long)) throw new IllegalArgumentException("the seed must be an integer that fits in 64 bits");
+		return (Long)value;
+	}
+
+	/**
+	 * JSON lines
+	 */
+	private static String error(String message) {
+		return "{\"type\": \"error\", \"message\": " + Json.quote(String.valueOf(message)) + "}";
+	}
+	private static String result(SimulationParameters p, String label, SimulationSummary s, boolean cached) {
+		String[] names = { "z", "theta", "energy" };
+		StringBuilder b = new StringBuilder();
+		b.append("{").append(label).append("\"type\": \"result\", \"cached\": ").append(cached)
+		 .append(", \"key\": \"").append(ResultStore.key(p)).append("\", \"parameters\": ").append(Json.quote(p.toString()))
+		 .append(", \"samples\": ").append(s.getCount());
+		for(int k=0; k<names.length; k++) {
+			b.append(", \"").append(names[k]).append("\": ").append(Json.number(s.getMean(k)))
+			 .append(", \"error_").append(names[k]).append("\": ").append(Json.number(s.getError(k)));
+		}
+		b.append(", \"costheta\": ").append(Json.number(s.getMeanCostheta())).append(", \"error_costheta\": ").append(Json.number(s.getErrorCostheta()))
+		 .append(", \"bimodality\": ").append(Json.number(s.getBimodality())).append("}");
+		return b.toString();
+	}
+
+	// JSON
+
+	/**
+	 * Minimal JSON support: parsing of objects, arrays, strings, numbers, booleans and null,
+	 * and formatting of strings and numbers
+	 */
+	static class Json {
+
+		private final String s;
+		private int pos = 0;
+
+		private Json(String s) { this.s = s; }
+
+		/**
+		 * Parse a JSON object
+		 *
+		 * @throws IllegalArgumentException if the text is not a JSON object
+		 */
+		static Map<String, Object> parseObject(String text) {
+			Json json = new Json(text);
+			Object o = json.value();
+			json.skip();
+			if(!(o instanceof Map) || json.pos!=text.length()) throw new IllegalArgumentException("expected a JSON object");
+			@SuppressWarnings("unchecked") Map<String, Object> map = (Map<String, Object>)o;
+			return map;
+		}
+
+		private void skip() {
+			while(this.pos<this.s.length() && Character.isWhitespace(this.s.charAt(this.pos))) this.pos++;
+		}
+
+		private char next() {
+			this.skip();
+			if(this.pos>=this.s.length()) throw new IllegalArgumentException("unexpected end of JSON");
+			return this.s.charAt(this.pos);
+		}
+
+		private void expect(char c) {
+			if(this.next()!=c) throw new IllegalArgumentException("expected '" + c + "' at " + this.pos);
+			this.pos++;
+		}
+
+		private Object value() {
+			char c = this.next();
+			if(c=='{') {
+				Map<String, Object> map = new LinkedHashMap<String, Object>();
+				this.pos++;
+				if(this.next()=='}') { this.pos++; return map; }
+				while(true) {
+					String key = this.string();
+					this.expect(':');
+					map.put(key, this.value());
+					if(this.next()!=',') break;
+					this.pos++;
+				}
+				this.expect('}');
+				return map;
+			}
+			if(c=='[') {
+				List<Object> list = new ArrayList<Object>();
+				this.pos++;
+				if(this.next()==']') { this.pos++; return list; }
+				while(true) {
+					list.add(this.value());
+					if(this.next()!=',') break;
+					this.pos++;
+				}
+				this.expect(']');
+				return list;
+			}
+			if(c=='"') return this.string();
+			for(String word : new String[] { "true", "false", "null" }) {
+				if(this.s.startsWith(word, this.pos)) {
+					this.pos += word.length();
+					return word.equals("null") ? null : Boolean.valueOf(word);
+				}
+			}
+			int start = this.pos;
+			while(this.pos<this.s.length() && "+-0123456789.eE".indexOf(this.s.charAt(this.pos))>=0) this.pos++;
+			String literal = this.s.substring(start, this.pos);
+			try { return Long.valueOf(literal); }	// integers keep all their digits, as seeds need
+			catch(NumberFormatException e) { /* not an integer, or too large for a long */ }
+			try { return Double.valueOf(literal); }
+			catch(NumberFormatException e) { throw new IllegalArgumentException("invalid JSON value at " + start); }
+		}
+
+		private String string() {
+			this.expect('"');
+			StringBuilder b = new StringBuilder();
+			while(true) {
+				if(this.pos>=this.s.length()) throw new IllegalArgumentException("unterminated JSON string");
+				char c = this.s.charAt(this.pos++);
+				if(c=='"') return b.toString();
+				if(c=='\\') {
+					char e = this.s.charAt(this.pos++);
+					switch(e) {
+						case 'n': b.append('\n'); break;
+						case 't': b.append('\t'); break;
+						case 'r': b.append('\r'); break;
+						case 'b': b.append('\b'); break;
+						case 'f': b.append('\f'); break;
+						case 'u': b.append((char)Integer.parseInt(this.s.substring(this.pos, this.pos+4), 16)); this.pos += 4; break;
+						default:  b.append(e);
+					}
+				}
+				else b.append(c);
+			}
+		}
+
+		static String quote(String text) {
+			StringBuilder b = new StringBuilder("\"");
+			for(char c : text.toCharArray()) {
+				if(c=='"' || c=='\\') b.append('\\').append(c);
+				else if(c<0x20)       b.append(String.format("\\u%04x", (int)c));
+				else                  b.append(c);
+			}
+			return b.append('"').toString();
+		}
+
+		static String number(double x) {
+			return (Double.isNaN(x) || Double.isInfinite(x)) ? "null" : Double.toString(x);
+		}
+
+	}
+
+	//   MAIN METHOD
+
+	/**
+	 * Main method
+	 */
+	public static void main(String args[]) {
+
+		int port = DEFAULTPORT;
+		int nthreads = Runtime.getRuntime().availableProcessors();
+		int queue = 1000;
+		String cache = null;
+
+		// parse command line arguments
+		System.out.println("# Usage: java JobServer [-port val] [-threads val] [-queue val] [-cache dir]");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-port") )    port = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-threads") ) nthreads = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-queue") )   queue = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-cache") )   cache = args[i+1];
+			}
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+
+		System.out.print("# Generated by: java JobServer");
+		for(int i=0; i<args.length; i++) System.out.print( " " + args[i] );
+		System.out.println("");
+		try {
+			JobServer server = new JobServer(port, nthreads, queue, (cache!=null) ? new ResultStore(cache) : null);
+			server.start();
+			System.out.println("# threads = " + nthreads );
+			System.out.println("# Listening on http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort() );
+		}
+		catch(IOException e) { System.out.println("# Error: " + e.getMessage()); System.exit(-1); }
+
+	}
+}
@@ -0,0 +1,503 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Monolayer of identical Janus ellipsoids at the interface between water and oil, in a box periodic in x and y.
+ * Each particle has the free energy of a single <code>JanusEllipsoid</code>, computed with the grid of a prototype
+ * shared by all of them, and the particles interact as hard ellipsoids, whose overlaps are detected with
+ * <code>EllipsoidOverlap</code>. Since two ellipsoids that do not overlap cut the interface in disjoint ellipses,
+ * the interfacial areas removed by the particles add up.
+ *
+ * A MC step moves a random particle in x, y and z and rotates it, as in <code>JanusEllipsoid.iterate</code>;
+ * moves that create an overlap are rejected, the others are accepted with the Metropolis rule.
+ * The particles are kept in a cell list of columns at least as wide as the maximum length of an ellipsoid,
+ * so that the overlaps of a move are tested only against the particles in the 9 nearest columns, and a step
+ * costs the same however many particles there are.
+ *
+ * Large monolayers can be swept in parallel with a checkerboard decomposition: the columns, whose number is even
+ * along x and y, are split in 4 sublattices of columns that are not neighbours, and the columns of a sublattice
+ * are swept concurrently, one sublattice after the other. A particle then interacts only with particles of its column
+ * and of the 8 around it, which do not move, and moves out of its column are rejected, so each sublattice phase
+ * satisfies detailed balance by itself. The columns are shifted by a random offset before each sweep, so that the
+ * particles can cross their boundaries. Each column has its own random numbers, seeded by the monolayer, so the
+ * trajectory does not depend on the number of threads.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class Monolayer {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	private static final int NQ = 4;	// elements of a quaternion
+	private static final int NAREAS = JanusEllipsoid.NAREAS;
+	private static final int NSHAPE = EllipsoidOverlap.NSHAPE;
+
+	/**
+	 * Parameters and particles
+	 */
+	private final SimulationParameters params;	// geometry, surface tensions and sigmas of the moves
+	private final JanusEllipsoid prototype;	// grid shared by all the particles
+	private final Vector3d axis;	// half axis of the particles
+	private final int n;	// number of particles
+	private final double boxx, boxy;	// sides of the periodic box
+	private final double sigmadxy;	// sigma of the displacements in the plane of the interface
+	private final double[] x, y, z;	// centers
+	private final double[] q;	// orientations, as re, im_x, im_y, im_z
+	private final double[] areas;	// Sao, Spo, Saw, Spw, Si of each particle
+	private final double[] energy;	// free energy of each particle
+	private final double[] shape;	// inverse shape matrix of each particle, for the overlaps
+	private final double range2;	// squared distance beyond which two particles cannot overlap
+	private final double contact2;	// squared distance below which they always overlap
+	public double time = 0.;	// MC sweeps, of n steps each
+
+	/**
+	 * Cell list: linked lists of the particles in each column of the box
+	 */
+	private final int ncx, ncy;	// number of columns along x and y
+	private final int[] head;	// first particle of each column, or -1
+	private final int[] next;	// next particle in the same column, or -1
+	private final int[] cell;	// column of each particle
+	private final int[] offx, offy;	// offsets of the neighbouring columns, each only once
+	private double originx = 0., originy = 0.;	// corner of the first column
+
+	/**
+	 * Dynamics
+	 */
+	private final RandomStream random;
+	private final Trial trial = new Trial();
+	private long moves = 0, accepted = 0, overlaps = 0;	// attempted and accepted moves, and moves rejected because of an overlap
+	public static final int NPHASES = 4;	// sublattices of the checkerboard
+
+	/**
+	 * Work arrays of a trial move
+	 */
+	private static class Trial {
+		final double[] z = new double[1];
+		final double[] q = new double[NQ];
+		final double[] areas = new double[NAREAS];
+		final double[] shape = new double[NSHAPE];
+		int[] members = new int[8];	// particles of the column of a parallel sweep
+		long moves = 0, accepted = 0, overlaps = 0;	// counters, added to those of the monolayer at the end of a sweep
+	}
+
+	// CONSTRUCTORS
+
+	/**
+	 * Create a monolayer of upright particles on a lattice, with their centers at the interface
+	 *
+	 * @param p			parameters of the particles and of the moves; dz and dphi are the sigmas of the moves, seed seeds them
+	 * @param n			number of particles
+	 * @param boxx		side of the box along x
+	 * @param boxy		side of the box along y
+	 * @param sigmadxy	sigma of the displacements in the plane
+	 */
+	public Monolayer(SimulationParameters p, int n, double boxx, double boxy, double sigmadxy) {
+		this.params = p;
+		this.prototype = p.createEllipsoid();
+		this.n = n;
+		this.boxx = boxx;
+		this.boxy = boxy;
+		this.sigmadxy = sigmadxy;
+		Vector3d axis = this.axis = p.getAxis();
+		double range = this.prototype.getMaximumLength();
+		double contact = 2.*Math.min(axis.a[0], Math.min(axis.a[1], axis.a[2]));
+		this.range2 = range*range;
+		this.contact2 = contact*contact;
+		if(n<1) throw new IllegalArgumentException("at least one particle is needed");
+		if(p.getRadius()!=0.) throw new IllegalArgumentException("monolayers in a periodic box need a planar interface");
+		if(boxx<2.*range || boxy<2.*range) throw new IllegalArgumentException("the sides of the box must be at least twice the maximum length " + range + " of the particles");
+
+		// lattice of upright particles, which do not overlap if their equators do not
+		int latx = (int)Math.ceil(Math.sqrt(n*boxx/boxy)), laty = (n+latx-1)/latx;
+		double spacingx = boxx/latx, spacingy = boxy/laty;
+		if(spacingx<2.*axis.a[0] || spacingy<2.*axis.a[1]) throw new IllegalArgumentException("the box is too small for " + n + " upright particles");
+		this.x = new double[n];
+		this.y = new double[n];
+		this.z = new double[n];
+		this.q = new double[NQ*n];
+		this.areas = new double[NAREAS*n];
+		this.energy = new double[n];
+		this.shape = new double[NSHAPE*n];
+		this.prototype.computeAreas(0., new Quaternion(1., new Vector3d(0.,0.,0.)), this.trial.areas);
+		for(int i=0; i<n; i++) {
+			this.x[i] = (i%latx + 0.5)*spacingx;
+			this.y[i] = (i/latx + 0.5)*spacingy;
+			this.z[i] = 0.;
+			this.q[NQ*i] = 1.;
+			System.arraycopy(this.trial.areas, 0, this.areas, NAREAS*i, NAREAS);
+			this.energy[i] = this.energy(this.trial.areas);
+			EllipsoidOverlap.shape(axis, this.q, NQ*i, this.shape, NSHAPE*i);
+		}
+
+		// an even number of columns at least as wide as the maximum length, with each neighbour counted once when there are only 2
+		this.ncx = 2*(int)(boxx/range/2.);
+		this.ncy = 2*(int)(boxy/range/2.);
+		this.offx = (this.ncx>2) ? new int[] { -1, 0, 1 } : new int[] { 0, 1 };
+		this.offy = (this.ncy>2) ? new int[] { -1, 0, 1 } : new int[] { 0, 1 };
+		this.head = new int[this.ncx*this.ncy];
+		this.next = new int[n];
+		this.cell = new int[n];
+		this.relink();
+
+		this.random = new RandomStream(p.getSeed());
+	}
+
+	// ACCESSORS
+
+	public SimulationParameters getParameters() { return this.params; }
+	public JanusEllipsoid getPrototype()        { return this.prototype; }
+	public int getParticles()                   { return this.n; }
+	public double getBoxx()                     { return this.boxx; }
+	public double getBoxy()                     { return this.boxy; }
+	public long getMoves()                      { return this.moves; }
+	public long getAccepted()                   { return this.accepted; }
+	public long getOverlaps()                   { return this.overlaps; }
+
+	/**
+	 * Center and orientation of a particle
+	 */
+	public Vector3d getCenter(int i) {
+		return new Vector3d(this.x[i], this.y[i], this.z[i]);
+	}
+	public Quaternion getRot(int i) {
+		return new Quaternion(this.q[NQ*i], new Vector3d(this.q[NQ*i+1], this.q[NQ*i+2], this.q[NQ*i+3]));
+	}
+
+	/**
+	 * Free energy of a particle, and total
+	 */
+	public double getEnergy(int i) {
+		return this.energy[i];
+	}
+	public double getEnergy() {
+		double e = 0.;
+		for(int i=0; i<this.n; i++) e += this.energy[i];
+		return e;
+	}
+
+	/**
+	 * Area of the interface removed by the particles
+	 */
+	public double getSi() {
+		double si = 0.;
+		for(int i=0; i<this.n; i++) si += this.areas[NAREAS*i+4];
+		return si;
+	}
+
+	/**
+	 * Mean z of the centers, and mean tilt angle of the polar axes with respect to the normal to the interface
+	 */
+	public double getMeanZ() {
+		double m = 0.;
+		for(int i=0; i<this.n; i++) m += this.z[i];
+		return m/this.n;
+	}
+	public double getMeanTheta() {
+		double m = 0.;
+		for(int i=0; i<this.n; i++) {
+			double w = this.q[NQ*i], qx = this.q[NQ*i+1], qy = this.q[NQ*i+2], qz = this.q[NQ*i+3];
+			m += Math.acos(Math.max(-1., Math.min(1., w*w - qx*qx - qy*qy + qz*qz)));
+		}
+		return m/this.n;
+	}
+
+	// COMPUTES
+
+	/**
+	 * Free energy of a set of areas, as in <code>JanusEllipsoid.energy</code>
+	 */
+	private double energy(double[] a) {
+		return this.prototype.energy(a);
+	}
+
+	/**
+	 * Column of a point of the box
+	 */
+	private int cellOf(double px, double py) {
+		int cx = (int)Math.floor((px-this.originx)*this.ncx/this.boxx);
+		int cy = (int)Math.floor((py-this.originy)*this.ncy/this.boxy);
+		cx = Math.floorMod(cx, this.ncx);	// the first column wraps around the box
+		cy = Math.floorMod(cy, this.ncy);
+		return cx*this.ncy + cy;
+	}
+
+	/**
+	 * Put all the particles in their columns
+	 */
+	private void relink() {
+		Arrays.fill(this.head, -1);
+		for(int i=this.n-1; i>=0; i--) this.link(i, this.cellOf(this.x[i], this.y[i]));
+	}
+
+	private void link(int i, int c) {
+		this.cell[i] = c;
+		this.next[i] = this.head[c];
+		this.head[c] = i;
+	}
+
+	private void unlink(int i) {
+		int c = this.cell[i];
+		if(this.head[c]==i) this.head[c] = this.next[i];
+		else {
+			int j = this.head[c];
+			while(this.next[j]!=i) j = this.next[j];
+			this.next[j] = this.next[i];
+		}
+	}
+
+	/**
+	 * Whether a particle, at a trial position and orientation, overlaps with any other
+	 *
+	 * @param i		the particle
+	 * @param px	trial center
+	 * @param py
+	 * @param pz
+	 * @param shp	trial inverse shape matrix
+	 */
+	private boolean overlaps(int i, double px, double py, double pz, double[] shp) {
+		int c = this.cellOf(px, py), cx = c/this.ncy, cy = c%this.ncy;
+		for(int dx : this.offx) {
+			int nx = (cx+dx+this.ncx)%this.ncx;
+			for(int dy : this.offy) {
+				int ny = (cy+dy+this.ncy)%this.ncy;
+				for(int j=this.head[nx*this.ncy+ny]; j>=0; j=this.next[j]) {
+					if(j==i) continue;
+					double rx = this.x[j]-px, ry = this.y[j]-py, rz = this.z[j]-pz;
+					rx -= this.boxx*Math.rint(rx/this.boxx);	// nearest periodic image
+					ry -= this.boxy*Math.rint(ry/this.boxy);
+					double r2 = rx*rx + ry*ry + rz*rz;
+					if(r2>=this.range2) continue;
+					if(r2<this.contact2) return true;
+					if(EllipsoidOverlap.overlap(shp, 0, this.shape, NSHAPE*j, rx, ry, rz)) return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Number of overlapping pairs, which is 0 unless something is wrong
+	 */
+	public int countOverlaps() {
+		int count = 0;
+		double[] shp = new double[NSHAPE];
+		for(int i=0; i<this.n; i++) {
+			System.arraycopy(this.shape, NSHAPE*i, shp, 0, NSHAPE);
+			if(this.overlaps(i, this.x[i], this.y[i], this.z[i], shp)) count++;
+		}
+		return count;
+	}
+
+	// DYNAMICS
+
+	/**
+	 * Try to move a particle
+	 *
+	 * @param i			the particle
+	 * @param t			work arrays and counters
+	 * @param random	random numbers of the move
+	 * @param confined	whether moves out of the column of the particle are rejected, in a parallel sweep
+	 * @return true if the move was accepted
+	 */
+	private boolean move(int i, Trial t, RandomStream random, boolean confined) {
+		t.moves++;
+		// trial position and orientation
+		double px = this.x[i] + random.gaussrand()*this.sigmadxy;
+		double py = this.y[i] + random.gaussrand()*this.sigmadxy;
+		px -= this.boxx*Math.floor(px/this.boxx);	// back in the box
+		py -= this.boxy*Math.floor(py/this.boxy);
+		t.z[0] = this.z[i] + random.gaussrand()*this.params.getDz();
+		Quaternion rot = Quaternion.prod(JanusEllipsoid.randomRotation(random, this.params.getDphi()), this.getRot(i));
+		rot.correct();
+		t.q[0] = rot.re;
+		t.q[1] = rot.im.a[0];
+		t.q[2] = rot.im.a[1];
+		t.q[3] = rot.im.a[2];
+		int c = this.cellOf(px, py);
+		if(confined && c!=this.cell[i]) return false;
+		// hard core exclusion
+		EllipsoidOverlap.shape(this.axis, t.q, 0, t.shape, 0);
+		if(this.overlaps(i, px, py, t.z[0], t.shape)) {
+			t.overlaps++;
+			return false;
+		}
+		// Metropolis rule on the free energy of the particle
+		this.prototype.computeAreas(t.z, t.q, 1, t.areas);
+		double en1 = this.energy(t.areas);
+		if( random.random()>Math.exp(-(en1-this.energy[i])) ) return false;
+		this.x[i] = px;
+		this.y[i] = py;
+		this.z[i] = t.z[0];
+		System.arraycopy(t.q, 0, this.q, NQ*i, NQ);
+		System.arraycopy(t.areas, 0, this.areas, NAREAS*i, NAREAS);
+		System.arraycopy(t.shape, 0, this.shape, NSHAPE*i, NSHAPE);
+		this.energy[i] = en1;
+		if(c!=this.cell[i]) {
+			this.unlink(i);
+			this.link(i, c);
+		}
+		t.accepted++;
+		return true;
+	}
+
+	/**
+	 * Add the counters of some moves to those of the monolayer
+	 */
+	private void collect(Trial t) {
+		this.moves += t.moves;
+		this.accepted += t.accepted;
+		this.overlaps += t.overlaps;
+		t.moves = t.accepted = t.overlaps = 0;
+	}
+
+	/**
+	 * Perform MC sweeps, of n steps on random particles each
+	 *
+	 * @param nsweeps	number of sweeps
+	 */
+	public void iterate(int nsweeps) {
+		for(int s=0; s<nsweeps; s++) {
+			for(int k=0; k<this.n; k++) this.move((int)(this.random.random()*this.n), this.trial, this.random, false);
+			this.time += 1.;
+		}
+		this.collect(this.trial);
+	}
+
+	/**
+	 * Perform MC sweeps in parallel, with the checkerboard decomposition: in each of the 4 phases of a sweep,
+	 * the columns of a sublattice are swept concurrently, with as many steps as particles in each column
+	 *
+	 * @param nsweeps	number of sweeps
+	 * @param pool		threads that sweep the columns, or null for serial sweeps
+	 */
+	public void iterate(int nsweeps, ForkJoinPool pool) {
+		if(pool==null) {
+			this.iterate(nsweeps);
+			return;
+		}
+		int nx = this.ncx/2, ny = this.ncy/2, ncolumns = nx*ny;	// columns in a sublattice
+		long[] seeds = new long[ncolumns];
+		Trial[] trials = new Trial[ncolumns];
+		for(int s=0; s<nsweeps; s++) {
+			// random offset of the columns, independent of the configuration
+			this.originx = this.random.random()*this.boxx/this.ncx;
+			this.originy = this.random.random()*this.boxy/this.ncy;
+			this.relink();
+			for(int phase=0; phase<NPHASES; phase++) {
+				int px = phase/2, py = phase%2;
+				for(int k=0; k<ncolumns; k++) seeds[k] = this.random.nextLong();
+				pool.submit(() -> IntStream.range(0, ncolumns).parallel().forEach(k -> {
+					if(trials[k]==null) trials[k] = new Trial();
+					this.sweep((2*(k/ny)+px)*this.ncy + 2*(k%ny)+py, trials[k], new RandomStream(seeds[k]));
+				})).join();
+			}
+			this.time += 1.;
+		}
+		for(Trial t : trials) if(t!=null) this.collect(t);
+	}
+
+	/**
+	 * Sweep a column, during a parallel sweep: its particles stay in it
+	 *
+	 * @param c			the column
+	 * @param t			work arrays and counters of the column
+	 * @param random	random numbers of the column
+	 */
+	private void sweep(int c, Trial t, RandomStream random) {
+		int count = 0;
+		for(int j=this.head[c]; j>=0; j=this.next[j]) {
+			if(count==t.members.length) t.members = Arrays.copyOf(t.members, 2*count);
+			t.members[count++] = j;
+		}
+		for(int k=0; k<count; k++) this.move(t.members[(int)(random.random()*count)], t, random, true);
+	}
+
+	/**
+	 * Write the particles, one per line: x y z q_re q_x q_y q_z energy
+	 */
+	public void write(PrintStream out) {
+		out.println("# x(nm) y(nm) z(nm) q_re q_x q_y q_z energy(kT)");
+		for(int i=0; i<this.n; i++) {
+			out.printf("%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f\n", this.x[i], this.y[i], this.z[i], this.q[NQ*i], this.q[NQ*i+1], this.q[NQ*i+2], this.q[NQ*i+3], this.energy[i]);
+		}
+	}
+
+	//   MAIN METHOD
+
+	/**
+	 * Simulate a monolayer and print the mean energy, z and theta of the particles after every dt sweeps
+	 *
+	 * @param args	command line arguments
+	 */
+	public static void main(String args[]) {
+
+		int nparticles = 100;
+		int nthreads = Runtime.getRuntime().availableProcessors();	// more than 1 for the parallel sweeps
+		double boxx = -1., boxy = -1.;	// by default a square box with a tenth of its area covered by the upright particles
+		double dxy = -1.;	// by default as dz
+		String configfile = null;
+		// by default one sample per sweep
+		SimulationParameters params = new SimulationParameters().with("dt", 1).with("nsteps", 100).with("ngrid", 50).withSeed(System.nanoTime());
+
+		// parse command line arguments; the parameters of the particles are the same as for JanusEllipsoid
+		System.out.println("# Usage: java Monolayer [-particles val] [-box val] [-boxy val] [-dxy val] [-threads val] [-config file] [simulation parameters as in JanusEllipsoid, and -nequil val; dt, nequil and nsteps in sweeps]");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-particles") ) nparticles = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-box") )       boxx = boxy = Double.valueOf(args[i+1]);
+				if( args[i].equals("-boxy") )      boxy = Double.valueOf(args[i+1]);
+				if( args[i].equals("-dxy") )       dxy = Double.valueOf(args[i+1]);
+				if( args[i].equals("-threads") )   nthreads = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-config") )    configfile = args[i+1];
+			}
+			params = params.with(args);
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+		Vector3d axis = params.getAxis();
+		if(boxx<0.) boxx = boxy = Math.sqrt(10.*nparticles*Math.PI*axis.a[0]*axis.a[1]);
+		if(boxy<0.) boxy = boxx;
+		if(dxy<0.) dxy = params.getDz();
+
+		Monolayer layer = null;
+		try { layer = new Monolayer(params, nparticles, boxx, boxy, dxy); }
+		catch(IllegalArgumentException e) { System.out.println("# Error: " + e.getMessage()); System.exit(-1); }
+
+		System.out.print("# Generated by: java Monolayer");
+		for(int i=0; i<args.length; i++) System.out.print( " " + args[i] );
+		System.out.println("");
+		System.out.println("# parameters: " + params );
+		System.out.println("# particles = " + nparticles );
+		System.out.println("# box = " + boxx + " x " + boxy );
+		System.out.println("# dxy = " + dxy );
+		System.out.println("# threads = " + nthreads );
+		System.out.println("# sweep <energy>(kT) <z>(nm) <theta>(rad) <Si>(nm^2) acceptance");
+
+		ForkJoinPool pool = (nthreads>1) ? new ForkJoinPool(nthreads) : null;	// checkerboard sweeps, otherwise serial ones
+		long startTime = System.currentTimeMillis();
+		layer.iterate(params.getDt()*params.getNequil(), pool);
+		for(int s=0; s<params.getNsteps(); s++) {
+			layer.iterate(params.getDt(), pool);
+			int np = layer.getParticles();
+			System.out.printf("%d\t%f\t%f\t%f\t%f\t%f\n", (long)layer.time, layer.getEnergy()/np, layer.getMeanZ(), layer.getMeanTheta(), layer.getSi()/np,
+				(double)layer.getAccepted()/Math.max(1L, layer.getMoves()));
+		}
+		long endTime = System.currentTimeMillis();
+		if(pool!=null) pool.shutdown();
+		System.out.println("# Run time = " + 0.001*(endTime-startTime) + " s, MC steps per second = " + 1000.*layer.getMoves()/Math.max(1L, endTime-startTime)
+			+ ", rejected for overlaps = " + (double)layer.getOverlaps()/Math.max(1L, layer.getMoves()) + ", overlapping particles = " + layer.countOverlaps());
+
+		if(configfile!=null) {
+			try(PrintStream out = new PrintStream(new FileOutputStream(configfile))) { layer.write(out); }
+			catch(IOException e) { System.out.println("# Error: " + e.getMessage()); System.exit(-1); }
+		}
+	}
+
+}
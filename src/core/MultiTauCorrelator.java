@@ -0,0 +1,196 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Streaming estimate of the autocorrelation function of a time series with the multi-tau correlator
+ * (Ramirez et al., J. Chem. Phys. 133, 154103, 2010). Level l keeps the last P averages of 2^l samples,
+ * so the lags grow geometrically and the memory is O(P log n); the first level gives all the lags below P.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class MultiTauCorrelator {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final int P = 16;	// channels per level
+	public static final int M = 2;	// samples averaged to pass to the next level
+
+	/**
+	 * Per level: shift register of the last P values, sums of products at each lag,
+	 * and accumulator of the average passed to the next level
+	 */
+	private double[][] shift = new double[1][P];
+	private double[][] corr = new double[1][P];
+	private long[][] ncorr = new long[1][P];
+	private double[] acc = new double[1];
+	private int[] nacc = new int[1];
+	private long[] nvalues = new long[1];	// values inserted at each level
+
+	/**
+	 * Running sums of the series, shifted by the first value to avoid roundoff
+	 */
+	private long n = 0;
+	private double x0, sum = 0.;
+
+	// ACCESSORS
+
+	/**
+	 * Add a sample
+	 */
+	public void add(double x) {
+		if(this.n==0) this.x0 = x;
+		x -= this.x0;
+		this.n++;
+		this.sum += x;
+		this.add(0, x);
+	}
+
+	/**
+	 * Add a value to a level
+	 */
+	private void add(int l, double x) {
+		if(l==this.shift.length) {
+			this.shift = Arrays.copyOf(this.shift, l+1);
+			this.corr = Arrays.copyOf(this.corr, l+1);
+			this.ncorr = Arrays.copyOf(this.ncorr, l+1);
+			this.shift[l] = new double[P];
+			this.corr[l] = new double[P];
+			this.ncorr[l] = new long[P];
+			this.acc = Arrays.copyOf(this.acc, l+1);
+			this.nacc = Arrays.copyOf(this.nacc, l+1);
+			this.nvalues = Arrays.copyOf(this.nvalues, l+1);
+		}
+		int head = (int)(this.nvalues[l]%P);
+		this.shift[l][head] = x;
+		this.nvalues[l]++;
+		int jmin = (l==0) ? 0 : P/M;	// shorter lags are covered more accurately by the level below
+		int jmax = (int)Math.min(P, this.nvalues[l]);
+		for(int j=jmin; j<jmax; j++) {
+			this.corr[l][j] += x*this.shift[l][(head-j+P)%P];
+			this.ncorr[l][j]++;
+		}
+		this.acc[l] += x;
+		if(++this.nacc[l]==M) {
+			double average = this.acc[l]/M;
+			this.acc[l] = 0.;
+			this.nacc[l] = 0;
+			this.add(l+1, average);
+		}
+	}
+
+	/**
+	 * Getters
+	 */
+	public long getCount() { return this.n; }
+	public double getMean() { return this.x0 + this.sum/this.n; }
+
+	/**
+	 * Lags at which the correlation is known, in samples, in increasing order
+	 */
+	public double[] getLags() {
+		double[] lags = new double[this.countLags()];
+		int i = 0;
+		for(int l=0; l<this.shift.length; l++) {
+			for(int j=(l==0) ? 0 : P/M; j<P; j++) {
+				if(this.ncorr[l][j]>0) lags[i++] = j*Math.pow(M, l);
+			}
+		}
+		return lags;
+	}
+
+	/**
+	 * Normalised autocorrelation function at the lags of getLags
+	 */
+	public double[] getCorrelation() {
+		double mean = this.sum/this.n;
+		double c0 = this.corr[0][0]/this.ncorr[0][0] - mean*mean;
+		double[] rho = new double[this.countLags()];
+		int i = 0;
+		for(int l=0; l<this.shift.length; l++) {
+			for(int j=(l==0) ? 0 : P/M; j<P; j++) {
+				if(this.ncorr[l][j]>0) rho[i++] = (this.corr[l][j]/this.ncorr[l][j] - mean*mean)/c0;
+			}
+		}
+		return rho;
+	}
+
+	private int countLags() {
+		int count = 0;
+		for(int l=0; l<this.shift.length; l++) {
+			for(int j=(l==0) ? 0 : P/M; j<P; j++) if(this.ncorr[l][j]>0) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Integrated autocorrelation time, in samples
+	 */
+	public double getIntegratedTime() {
+		return Autocorrelation.integratedTime(this.getLags(), this.getCorrelation());
+	}
+
+	/**
+	 * Effective number of independent samples, n / (2 tau_int)
+	 */
+	public double getEffectiveSamples() {
+		return Math.min(this.n, this.n/(2.*this.getIntegratedTime()));
+	}
+
+	// INPUT AND OUTPUT
+
+	/**
+	 * Write the full state of the correlator, to be restored exactly by read
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(this.shift.length);
+		for(int l=0; l<this.shift.length; l++) {
+			for(int j=0; j<P; j++) {
+				out.writeDouble(this.shift[l][j]);
+				out.writeDouble(this.corr[l][j]);
+				out.writeLong(this.ncorr[l][j]);
+			}
+			out.writeDouble(this.acc[l]);
+			out.writeInt(this.nacc[l]);
+			out.writeLong(this.nvalues[l]);
+		}
+		out.writeLong(this.n);
+		out.writeDouble(this.x0);
+		out.writeDouble(this.sum);
+	}
+
+	/**
+	 * Read the state of a correlator written by write
+	 */
+	public static MultiTauCorrelator read(DataInputStream in) throws IOException {
+		MultiTauCorrelator c = new MultiTauCorrelator();
+		int levels = in.readInt();
+		if(levels<1 || levels>Long.SIZE) throw new IOException("corrupted correlator");
+		c.shift = new double[levels][P];
+		c.corr = new double[levels][P];
+		c.ncorr = new long[levels][P];
+		c.acc = new double[levels];
+		c.nacc = new int[levels];
+		c.nvalues = new long[levels];
+		for(int l=0; l<levels; l++) {
+			for(int j=0; j<P; j++) {
+				c.shift[l][j] = in.readDouble();
+				c.corr[l][j] = in.readDouble();
+				c.ncorr[l][j] = in.readLong();
+			}
+			c.acc[l] = in.readDouble();
+			c.nacc[l] = in.readInt();
+			c.nvalues[l] = in.readLong();
+		}
+		c.n = in.readLong();
+		c.x0 = in.readDouble();
+		c.sum = in.readDouble();
+		return c;
+	}
+
+}
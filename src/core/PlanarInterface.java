@@ -0,0 +1,58 @@
+/**
+ * Flat interface z = z0, with oil above and water below
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class PlanarInterface implements InterfaceGeometry {
+
+	// STATE
+
+	private final double z0;	// z coordinate of the interface
+
+	// CONSTRUCTORS
+
+	/**
+	 * Standard constructor
+	 *
+	 * @param z0	z coordinate of the interface
+	 */
+	public PlanarInterface(double z0) {
+		this.z0 = z0;
+	}
+
+	// ACCESSORS
+
+	public double getZ0() { return this.z0; }
+
+	@Override
+	public String toString() { return "plane z = " + this.z0; }
+
+	// COMPUTES
+
+	@Override
+	public boolean inOil(double x, double y, double z) {
+		return z>this.z0;
+	}
+
+	/**
+	 * The rotated z coordinate of a point is the last row of the rotation matrix times the point
+	 */
+	@Override
+	public void classifier(double cx, double cy, double cz, double[] rot, double[] c) {
+		c[0] = rot[6];
+		c[1] = rot[7];
+		c[2] = rot[8];
+		c[3] = cz - this.z0;
+		c[4] = 0.;
+	}
+
+	/**
+	 * Area of the ellipse cut by the plane, whose normal in the frame of the ellipsoid is the last row of the rotation matrix
+	 */
+	@Override
+	public double excludedArea(double cx, double cy, double cz, double[] rot, Vector3d axis) {
+		return PlaneEllipsoidIntersec.area(cz - this.z0, new Vector3d(rot[6], rot[7], rot[8]), axis);
+	}
+
+}
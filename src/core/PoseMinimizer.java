@@ -0,0 +1,297 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Search of the minimum energy position and orientation of a Janus ellipsoid at the interface.
+ * The pose is parametrised by the z coordinate of the center, the tilt theta of the polar axis
+ * and the rotation phi around it, as in <code>EnergyLandscape.orientation</code>.
+ * Many Nelder-Mead minimisations from random starting poses run concurrently, and the
+ * minima they reach are grouped into basins.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class PoseMinimizer {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	private static final int NDIM = 3;	// z, theta, phi
+	private static final int MAXITER = 2000;	// maximum number of Nelder-Mead iterations
+	private static final double FTOL = 1e-8;	// tolerance on the energy spread of the simplex
+	private static final double[] STEP = { 0.2, 0.3, 0.3 };	// size of the initial simplex
+
+	/**
+	 * A local minimum of the energy, with the number of starts that ended there
+	 */
+	public static class Basin implements Comparable<Basin> {
+		public double energy;
+		public double z, theta, phi;
+		public int count = 1;
+
+		public Quaternion getRot() { return EnergyLandscape.orientation(this.theta, this.phi); }
+
+		@Override
+		public int compareTo(Basin b) { return Double.compare(this.energy, b.energy); }
+	}
+
+	/**
+	 * The ellipsoid providing the geometry and the surface tensions
+	 */
+	private JanusEllipsoid je;
+	private RandomStream random;	// random numbers of the starting poses
+
+	/**
+	 * Tolerances to decide whether two minima belong to the same basin
+	 */
+	private double tolz = 0.05;	// nm
+	private double tolangle = 0.05;	// rad
+
+	// CONSTRUCTORS
+
+	/**
+	 * Standard constructor
+	 *
+	 * @param je	ellipsoid to minimise, with its surface tension parameters
+	 * @param seed	seed of the random starting poses
+	 */
+	public PoseMinimizer(JanusEllipsoid je, long seed) {
+		this.je = je;
+		this.random = new RandomStream(seed);
+	}
+
+	/**
+	 * Constructor from the parameters of a simulation, whose seed seeds the starting poses
+	 *
+	 * @param p	parameters of the ellipsoid
+	 */
+	public PoseMinimizer(SimulationParameters p) {
+		this(p.createEllipsoid(), p.getSeed());
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Setters
+	 *
+	 * @param tolz		maximum distance in z between minima of the same basin
+	 * @param tolangle	maximum difference in theta and phi between minima of the same basin
+	 */
+	public void setTolerances(double tolz, double tolangle) {
+		this.tolz = tolz;
+		this.tolangle = tolangle;
+	}
+
+	// COMPUTES
+
+	/**
+	 * Energy of a pose; this does not modify the ellipsoid, so it can be called from several threads
+	 *
+	 * @param x	z, theta, phi
+	 */
+	public double energy(double[] x) {
+		double[] areas = new double[JanusEllipsoid.NAREAS];
+		this.je.computeAreas(x[0], EnergyLandscape.orientation(x[1], x[2]), areas);
+		return this.je.energy(areas);
+	}
+
+	/**
+	 * Nelder-Mead minimisation from a starting pose
+	 *
+	 * @param x0	starting z, theta, phi
+	 * @return the local minimum, with theta in [0,pi] and phi in [0,2pi)
+	 */
+	public Basin minimize(double[] x0) {
+		double[][] x = new double[NDIM+1][NDIM];
+		double[] f = new double[NDIM+1];
+		double[] xc = new double[NDIM], xr = new double[NDIM], xe = new double[NDIM], xk = new double[NDIM];
+		double fr, fe, fk;
+		// initial simplex
+		for(int i=0; i<=NDIM; i++) {
+			for(int d=0; d<NDIM; d++) x[i][d] = x0[d];
+			if(i>0) x[i][i-1] += STEP[i-1];
+			f[i] = this.energy(x[i]);
+		}
+		for(int iter=0; iter<MAXITER; iter++) {
+			// order the vertices, best first
+			for(int i=1; i<=NDIM; i++) {
+				for(int j=i; j>0 && f[j]<f[j-1]; j--) {
+					double[] tx = x[j]; x[j] = x[j-1]; x[j-1] = tx;
+					double tf = f[j]; f[j] = f[j-1]; f[j-1] = tf;
+				}
+			}
+			if(Math.abs(f[NDIM]-f[0]) <= FTOL*(1.+Math.abs(f[0]))) break;
+			// centroid of all the vertices but the worst
+			for(int d=0; d<NDIM; d++) {
+				xc[d] = 0.;
+				for(int i=0; i<NDIM; i++) xc[d] += x[i][d]/NDIM;
+			}
+			// reflection
+			for(int d=0; d<NDIM; d++) xr[d] = 2.*xc[d] - x[NDIM][d];
+			fr = this.energy(xr);
+			if(fr<f[0]) {
+				// expansion
+				for(int d=0; d<NDIM; d++) xe[d] = 3.*xc[d] - 2.*x[NDIM][d];
+				fe = this.energy(xe);
+				if(fe<fr) { System.arraycopy(xe, 0, x[NDIM], 0, NDIM); f[NDIM] = fe; }
+				else      { System.arraycopy(xr, 0, x[NDIM], 0, NDIM); f[NDIM] = fr; }
+			}
+			else if(fr<f[NDIM-1]) {
+				System.arraycopy(xr, 0, x[NDIM], 0, NDIM); f[NDIM] = fr;
+			}
+			else {
+				// contraction, outside or inside
+				if(fr<f[NDIM]) for(int d=0; d<NDIM; d++) xk[d] = 0.5*(xc[d] + xr[d]);
+				else           for(int d=0; d<NDIM; d++) xk[d] = 0.5*(xc[d] + x[NDIM][d]);
+				fk = this.energy(xk);
+				if(fk<Math.min(fr, f[NDIM])) {
+					System.arraycopy(xk, 0, x[NDIM], 0, NDIM); f[NDIM] = fk;
+				}
+				else {
+					// shrink towards the best vertex
+					for(int i=1; i<=NDIM; i++) {
+						for(int d=0; d<NDIM; d++) x[i][d] = 0.5*(x[0][d] + x[i][d]);
+						f[i] = this.energy(x[i]);
+					}
+				}
+			}
+		}
+		int best = 0;
+		for(int i=1; i<=NDIM; i++) if(f[i]<f[best]) best = i;
+		Basin b = new Basin();
+		b.energy = f[best];
+		b.z = x[best][0];
+		// a tilt of -theta is the same as a tilt of theta followed by a rotation of pi around the polar axis,
+		// up to a rotation around the normal to the interface, which does not change the energy
+		double theta = x[best][1] - 2.*Math.PI*Math.floor(x[best][1]/(2.*Math.PI));
+		double phi = x[best][2];
+		if(theta>Math.PI) {
+			theta = 2.*Math.PI - theta;
+			phi += Math.PI;
+		}
+		b.theta = theta;
+		b.phi = phi - 2.*Math.PI*Math.floor(phi/(2.*Math.PI));
+		return b;
+	}
+
+	/**
+	 * Minimise from many random starting poses in parallel, and group the minima into basins;
+	 * the starting poses are drawn in order, so the result only depends on the seed
+	 *
+	 * @param nstarts	number of random starts
+	 * @return the basins, sorted by energy
+	 */
+	public List<Basin> search(int nstarts) {
+		Vector3d axis = this.je.getAxis();
+		double[][] x0 = new double[nstarts][NDIM];
+		for(int s=0; s<nstarts; s++) {
+			x0[s][1] = Math.acos(2.*this.random.random()-1.);	// uniform on the sphere
+			x0[s][2] = 2.*Math.PI*this.random.random();
+			// start with the interface crossing the particle, otherwise the energy is flat around the starting point;
+			// the normal to the interface in the frame of the ellipsoid is (sin(theta) sin(phi), sin(theta) cos(phi), cos(theta))
+			double nx = Math.sin(x0[s][1])*Math.sin(x0[s][2]), ny = Math.sin(x0[s][1])*Math.cos(x0[s][2]), nz = Math.cos(x0[s][1]);
+			double h = Math.sqrt(nx*nx*axis.a[0]*axis.a[0] + ny*ny*axis.a[1]*axis.a[1] + nz*nz*axis.a[2]*axis.a[2]);
+			x0[s][0] = h*(2.*this.random.random()-1.);
+		}
+		Basin[] minima = new Basin[nstarts];
+		IntStream.range(0, nstarts).parallel().forEach(s -> minima[s] = this.minimize(x0[s]));
+		// group the minima, starting from the lowest ones
+		List<Basin> sorted = new ArrayList<Basin>();
+		Collections.addAll(sorted, minima);
+		Collections.sort(sorted);
+		List<Basin> basins = new ArrayList<Basin>();
+		for(Basin m : sorted) {
+			Basin found = null;
+			for(Basin b : basins) {
+				if(this.sameBasin(b, m)) { found = b; break; }
+			}
+			if(found!=null) found.count++;
+			else            basins.add(m);
+		}
+		return basins;
+	}
+
+	/**
+	 * Two minima are in the same basin if their poses are close; the ellipsoid is symmetric
+	 * under a rotation of pi around its polar axis, and if Lx=Ly phi does not matter at all
+	 */
+	private boolean sameBasin(Basin b1, Basin b2) {
+		if(Math.abs(b1.z-b2.z)>this.tolz) return false;
+		if(Math.abs(b1.theta-b2.theta)>this.tolangle) return false;
+		Vector3d axis = this.je.getAxis();
+		if(axis.a[0]==axis.a[1]) return true;
+		double dphi = Math.abs(b1.phi-b2.phi) % Math.PI;
+		return Math.min(dphi, Math.PI-dphi) <= this.tolangle;
+	}
+
+	//   MAIN METHOD
+
+	/**
+	 * Main method
+	 */
+	public static void main(String args[]) {
+
+		// set up initial parameters as in BslA
+		double Lx = 1.4;
+		double Ly = 1.4;
+		double Lz = 2.6;
+		double alpha = 50.4;	// angle fo the patch
+		double gamma = 12.;	// water oil surface tension in kT
+		double costhetaA =-0.2;	// apolar side
+		double costhetaP = 0.5;	// polar side
+		int ngrid = JanusEllipsoid.DEFAULTNGRID;
+		int nstarts = 64;
+		long seed = System.nanoTime();	// seed of the starting poses
+
+		// parse command line arguments
+		System.out.println("# Usage: java PoseMinimizer [-Lx val] [-Ly val] [-LxLy val] [-Lz val] [-alpha val] [-gamma val] [-costhetaA val] [-costhetaP val] [-ngrid val] [-nstarts val] [-seed val]");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-Lx") )        Lx = Double.valueOf(args[i+1]);
+				if( args[i].equals("-Ly") )        Ly = Double.valueOf(args[i+1]);
+				if( args[i].equals("-LxLy") )      Lx = Ly = Double.valueOf(args[i+1]);
+				if( args[i].equals("-Lz") )        Lz = Double.valueOf(args[i+1]);
+				if( args[i].equals("-alpha") )     alpha = Double.valueOf(args[i+1]);
+				if( args[i].equals("-gamma") )     gamma = Double.valueOf(args[i+1]);
+				if( args[i].equals("-costhetaA") ) costhetaA = Double.valueOf(args[i+1]);
+				if( args[i].equals("-costhetaP") ) costhetaP = Double.valueOf(args[i+1]);
+				if( args[i].equals("-ngrid") )     ngrid = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-nstarts") )   nstarts = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-seed") )      seed = Long.valueOf(args[i+1]);
+			}
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+
+		SimulationParameters params = SimulationParameters.builder().axis(Lx, Ly, Lz).alphaDegrees(alpha).ngrid(ngrid)
+			.gamma(gamma).costhetaA(costhetaA).costhetaP(costhetaP).seed(seed).build();
+		PoseMinimizer minimizer = new PoseMinimizer(params);
+		JanusEllipsoid janus = minimizer.je;
+		System.out.print("# Generated by: java PoseMinimizer");
+		for(int i=0; i<args.length; i++) System.out.print( " " + args[i] );
+		System.out.println("");
+		System.out.println("# Lx = "          + janus.getAxis().a[0] );
+		System.out.println("# Ly = "          + janus.getAxis().a[1] );
+		System.out.println("# Lz = "          + janus.getAxis().a[2] );
+		System.out.println("# alpha = "       + 180.*janus.getAlpha()/Math.PI );
+		System.out.println("# gamma = "       + janus.gamma );
+		System.out.println("# cos(thetaA) = " + janus.costhetaA );
+		System.out.println("# cos(thetaP) = " + janus.costhetaP );
+		System.out.println("# starts = "      + nstarts );
+		System.out.println("# seed = "        + seed );
+
+		long startTime = System.currentTimeMillis();
+		List<Basin> basins = minimizer.search(nstarts);
+		long endTime = System.currentTimeMillis();
+		System.out.println("# search time (ms) = " + (endTime - startTime) );
+		System.out.println("# energy(kT) z(nm) theta(rad) phi(rad) q_re q_x q_y q_z starts");
+		for(Basin b : basins) {
+			Quaternion q = b.getRot();
+			System.out.printf("%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f\t%d\n", b.energy, b.z, b.theta, b.phi, q.re, q.im.a[0], q.im.a[1], q.im.a[2], b.count);
+		}
+
+	}
+}
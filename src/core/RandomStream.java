@@ -0,0 +1,106 @@
+/**
+ * Stream of pseudo random numbers, with the xoshiro256** generator
+ * (Blackman and Vigna, ACM Trans. Math. Softw. 47, 36, 2021).
+ * Unlike Math.random() each simulation can have its own stream, which can be seeded
+ * for reproducibility and whose state can be saved and restored exactly.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class RandomStream {
+
+	//  FIELDS
+
+	private long s0, s1, s2, s3;	// state of the generator
+
+	//  CONSTRUCTORS
+
+	/**
+	 * Create a stream with a seed
+	 *
+	 * @param seed	seed of the stream
+	 */
+	public RandomStream(long seed) {
+		this.setSeed(seed);
+	}
+
+	/**
+	 * Copy constructor, the copy will produce the same numbers
+	 *
+	 * @param r	stream to copy
+	 */
+	public RandomStream(RandomStream r) {
+		this.setState(r.getState());
+	}
+
+	//   ACCESSORS
+
+	/**
+	 * Initialise the state from a seed, with the splitmix64 generator
+	 *
+	 * @param seed	seed of the stream
+	 */
+	public void setSeed(long seed) {
+		long[] s = new long[4];
+		for(int i=0; i<4; i++) {
+			seed += 0x9E3779B97F4A7C15L;
+			long z = seed;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			s[i] = z ^ (z >>> 31);
+		}
+		this.setState(s);
+	}
+
+	/**
+	 * Get and set the full state of the generator
+	 */
+	public long[] getState() {
+		return new long[] { this.s0, this.s1, this.s2, this.s3 };
+	}
+	public void setState(long[] s) {
+		this.s0 = s[0];
+		this.s1 = s[1];
+		this.s2 = s[2];
+		this.s3 = s[3];
+	}
+
+	//   RANDOM NUMBERS
+
+	/**
+	 * Next 64 random bits
+	 */
+	public long nextLong() {
+		long result = Long.rotateLeft(this.s1*5, 7) * 9;
+		long t = this.s1 << 17;
+		this.s2 ^= this.s0;
+		this.s3 ^= this.s1;
+		this.s1 ^= this.s2;
+		this.s0 ^= this.s3;
+		this.s2 ^= t;
+		this.s3 = Long.rotateLeft(this.s3, 45);
+		return result;
+	}
+
+	/**
+	 * Uniformly distributed random number in [0,1), as Math.random()
+	 */
+	public double random() {
+		return (this.nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Gaussian-distributed random numbers, mean = 0, sigma = 1, as Mathroutines.gaussrand()
+	 */
+	public double gaussrand() {
+		double x1, x2, w;
+		do {
+			x1 = 2.0 * this.random() - 1.0;
+			x2 = 2.0 * this.random() - 1.0;
+			w = x1*x1 + x2*x2;
+		} while (w >= 1.0 || w == 0.0);
+		w = Math.sqrt((-2.0 * Math.log(w)) / w);
+		return x1 * w;
+	}
+
+}
@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Persistent store of the results of simulations, in a directory on disk. Each result is kept in a file
+ * named after the SHA-256 hash of the canonical representation of the parameters, which includes the
+ * version of the code, so a simulation with the same parameters never needs to be run twice.
+ * Files are written to a temporary name and atomically renamed, so that readers never see partial results,
+ * and the computation of a missing result is protected by a file lock, so that several JVMs sharing the
+ * store do not run the same simulation at the same time; the lock file is deleted once the result is in place.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class ResultStore {
+
+	// STATE
+
+	private final Path dir;	// directory of the store
+
+	/**
+	 * Locks of the keys being computed in this JVM; file locks are held by the whole JVM,
+	 * so threads of the same JVM must also be serialised among themselves. A lock is removed
+	 * when the last thread using it leaves, so the map only holds the keys in use
+	 */
+	private static final ConcurrentHashMap<String, KeyLock> computing = new ConcurrentHashMap<String, KeyLock>();
+
+	private static final class KeyLock {
+		int users = 0;	// threads holding or waiting for the lock, changed only inside the map
+	}
+
+	// CONSTRUCTORS
+
+	/**
+	 * Open a store, creating the directory if needed
+	 *
+	 * @param dir	directory of the store
+	 */
+	public ResultStore(String dir) throws IOException {
+		this.dir = Paths.get(dir);
+		Files.createDirectories(this.dir);
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Key of a set of parameters: the SHA-256 hash of their canonical representation
+	 *
+	 * @param p	parameters of the simulation
+	 * @return the key, as a hexadecimal string
+	 */
+	public static String key(SimulationParameters p) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(p.canonical().getBytes(StandardCharsets.UTF_8));
+			StringBuilder s = new StringBuilder();
+			for(byte b : hash) s.append(String.format("%02x", b));
+			return s.toString();
+		}
+		catch(NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+	}
+
+	/**
+	 * Get a result from the store
+	 *
+	 * @param p	parameters of the simulation
+	 * @return the summary of the results, or null if they are not in the store
+	 */
+	public SimulationSummary get(SimulationParameters p) throws IOException {
+		Path file = this.dir.resolve(key(p) + ".result");
+		if(!Files.exists(file)) return null;
+		Properties props = new Properties();
+		try(InputStream in = Files.newInputStream(file)) {
+			props.load(in);
+		}
+		if(!p.canonical().equals(props.getProperty("parameters"))) return null;	// hash collision
+		return SimulationSummary.fromProperties(props);
+	}
+
+	/**
+	 * Put a result in the store, replacing any previous one
+	 *
+	 * @param p	parameters of the simulation
+	 * @param s	summary of the results
+	 */
+	public void put(SimulationParameters p, SimulationSummary s) throws IOException {
+		String key = key(p);
+		Properties props = s.toProperties();
+		props.setProperty("parameters", p.canonical());
+		props.setProperty("description", p.toString());
+		Path tmp = Files.createTempFile(this.dir, key, ".tmp");
+		try {
+			try(OutputStream out = Files.newOutputStream(tmp)) {
+				props.store(out, "JanusEllipsoid result");
+			}
+			try {
+				Files.move(tmp, this.dir.resolve(key + ".result"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(tmp, this.dir.resolve(key + ".result"), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Get a result from the store, computing and storing it if it is missing.
+	 * Only one thread among all the JVMs sharing the store computes a given result;
+	 * the others wait for it and then read it from the store.
+	 *
+	 * @param p			parameters of the simulation
+	 * @param compute	computes the result
+	 * @return the summary of the results
+	 */
+	public SimulationSummary computeIfAbsent(SimulationParameters p, Supplier<SimulationSummary> compute) throws IOException {
+		SimulationSummary s = this.get(p);
+		if(s!=null) return s;
+		String key = key(p);
+		String id = this.dir.toAbsolutePath() + "/" + key;
+		Path lockfile = this.dir.resolve(key + ".lock");
+		KeyLock lock = computing.compute(id, (k, l) -> {
+			if(l==null) l = new KeyLock();
+			l.users++;
+			return l;
+		});
+		try {
+			synchronized(lock) {
+				try(FileChannel channel = FileChannel.open(lockfile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+					FileLock flock = channel.lock();
+					try {
+						s = this.get(p);	// it may have been computed while we were waiting
+						if(s==null) {
+							s = compute.get();
+							this.put(p, s);
+						}
+						Files.deleteIfExists(lockfile);	// the result is in place, so nobody needs to wait for it any more
+					}
+					finally { flock.release(); }
+				}
+			}
+		}
+		finally {
+			computing.computeIfPresent(id, (k, l) -> (--l.users==0) ? null : l);
+		}
+		return s;
+	}
+
+	/**
+	 * Run a simulation, or get its results from the store if they are already there
+	 *
+	 * @param p	parameters of the simulation
+	 * @return the summary of the results
+	 */
+	public SimulationSummary run(SimulationParameters p) throws IOException {
+		return this.computeIfAbsent(p, () -> SimulationStatistics.run(p).summary());
+	}
+
+}
@@ -0,0 +1,296 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Reweighting of samples from several simulations to different values of the surface tension parameters,
+ * with the multistate Bennett acceptance ratio (MBAR) method, i.e. the binless limit of WHAM
+ * (Shirts and Chodera, J. Chem. Phys. 129, 124105, 2008).
+ * Given the areas Sao, Spo, Si of a sample, its reduced energy at parameters (gamma, cos(thetaA), cos(thetaP))
+ * is u = gamma ( Sao cos(thetaA) + Spo cos(thetaP) - Si ), so every sample can be evaluated in every state.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class Reweighting {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	private static final int MAXITER = 10000;	// maximum number of self-consistent iterations
+	private static final double TOL = 1e-10;	// tolerance on the free energies
+
+	/**
+	 * Observables that can be predicted, in the order of the arrays returned by predict
+	 */
+	public static final String[] OBSERVABLES = { "z", "theta", "cos(theta)", "energy" };
+
+	/**
+	 * Parameters of each simulation
+	 */
+	private List<double[]> states = new ArrayList<double[]>();	// gamma, costhetaA, costhetaP
+	private List<Integer> nsamples = new ArrayList<Integer>();	// number of samples of each simulation
+
+	/**
+	 * Samples from all simulations: z, theta, Sao, Spo, Si
+	 */
+	private List<double[]> samples = new ArrayList<double[]>();
+
+	/**
+	 * Reduced free energies of the simulations, and log of the MBAR denominator of each sample
+	 */
+	private double[] f;
+	private double[] logdenom;
+
+	// ACCESSORS
+
+	/**
+	 * Add the samples of a simulation
+	 *
+	 * @param gamma		surface tension of the simulation
+	 * @param costhetaA	cos(thetaA) of the simulation
+	 * @param costhetaP	cos(thetaP) of the simulation
+	 * @param data		samples, each one with z, theta, Sao, Spo, Si
+	 */
+	public void addRun(double gamma, double costhetaA, double costhetaP, List<double[]> data) {
+		this.states.add(new double[] { gamma, costhetaA, costhetaP });
+		this.nsamples.add(data.size());
+		this.samples.addAll(data);
+		this.f = null;
+	}
+
+	/**
+	 * Read the output of <code>java JanusEllipsoid</code>, taking the parameters from the header
+	 *
+	 * @param filename	name of the file
+	 * @param skip		number of initial samples to discard for equilibration
+	 * @param stride	use one sample every stride, to reduce correlations
+	 */
+	public void addRun(String filename, int skip, int stride) throws IOException {
+		double gamma = Double.NaN, costhetaA = Double.NaN, costhetaP = Double.NaN;
+		List<double[]> data = new ArrayList<double[]>();
+		try(BufferedReader in = new BufferedReader(new FileReader(filename))) {
+			String line;
+			int n = 0;
+			while((line = in.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty()) continue;
+				if(line.startsWith("#")) {
+					if(line.startsWith("# gamma = "))       gamma     = Double.valueOf(line.substring(10));
+					if(line.startsWith("# cos(thetaA) = ")) costhetaA = Double.valueOf(line.substring(16));
+					if(line.startsWith("# cos(thetaP) = ")) costhetaP = Double.valueOf(line.substring(16));
+					continue;
+				}
+				// time z theta energy Sao Spo Si
+				String[] col = line.split("\\s+");
+				if(n>=skip && (n-skip)%stride==0) {
+					data.add(new double[] { Double.valueOf(col[1]), Double.valueOf(col[2]), Double.valueOf(col[4]), Double.valueOf(col[5]), Double.valueOf(col[6]) });
+				}
+				n++;
+			}
+		}
+		if(Double.isNaN(gamma) || Double.isNaN(costhetaA) || Double.isNaN(costhetaP)) throw new IOException("missing parameters in the header of " + filename);
+		this.addRun(gamma, costhetaA, costhetaP, data);
+	}
+
+	/**
+	 * Getters
+	 */
+	public int getNumberOfRuns()    { return this.states.size(); }
+	public int getNumberOfSamples() { return this.samples.size(); }
+	public double[] getFreeEnergies() { return this.f; }
+
+	// COMPUTES
+
+	/**
+	 * Reduced energy of a sample
+	 *
+	 * @param x		sample, with z, theta, Sao, Spo, Si
+	 * @param state	gamma, costhetaA, costhetaP
+	 */
+	private static double reducedEnergy(double[] x, double[] state) {
+		return state[0]*( x[2]*state[1] + x[3]*state[2] - x[4] );
+	}
+
+	/**
+	 * Log of a sum of exponentials, avoiding overflows
+	 */
+	private static double logSumExp(double[] a, int n) {
+		double max = Double.NEGATIVE_INFINITY;
+		for(int i=0; i<n; i++) if(a[i]>max) max = a[i];
+		if(max==Double.NEGATIVE_INFINITY) return max;
+		double sum = 0.;
+		for(int i=0; i<n; i++) sum += Math.exp(a[i]-max);
+		return max + Math.log(sum);
+	}
+
+	/**
+	 * Solve the MBAR equations self-consistently,
+	 * f_k = -ln sum_n exp(-u_k(x_n)) / sum_l N_l exp(f_l - u_l(x_n)),
+	 * with the sums over the samples computed in parallel
+	 */
+	public void solve() {
+		int nstates = this.states.size();
+		int ntot = this.samples.size();
+		double[][] u = new double[nstates][ntot];	// reduced energy of every sample in every state
+		IntStream.range(0, ntot).parallel().forEach(n -> {
+			for(int k=0; k<nstates; k++) u[k][n] = reducedEnergy(this.samples.get(n), this.states.get(k));
+		});
+		double[] logN = new double[nstates];
+		for(int k=0; k<nstates; k++) logN[k] = Math.log(this.nsamples.get(k));
+		this.f = new double[nstates];
+		this.logdenom = new double[ntot];
+		double[] fnew = new double[nstates];
+		for(int iter=0; iter<MAXITER; iter++) {
+			// denominators of each sample, in parallel
+			final double[] fold = this.f;
+			IntStream.range(0, ntot).parallel().forEach(n -> {
+				double[] a = new double[nstates];
+				for(int l=0; l<nstates; l++) a[l] = logN[l] + fold[l] - u[l][n];
+				this.logdenom[n] = logSumExp(a, nstates);
+			});
+			// new free energies, each state in parallel
+			IntStream.range(0, nstates).parallel().forEach(k -> {
+				double[] a = new double[ntot];
+				for(int n=0; n<ntot; n++) a[n] = -u[k][n] - this.logdenom[n];
+				fnew[k] = -logSumExp(a, ntot);
+			});
+			double diff = 0.;
+			for(int k=nstates-1; k>=0; k--) {
+				fnew[k] -= fnew[0];	// fix the arbitrary constant
+				diff = Math.max(diff, Math.abs(fnew[k]-this.f[k]));
+			}
+			this.f = fnew.clone();
+			if(diff<TOL) break;
+		}
+		// final denominators, consistent with the free energies
+		IntStream.range(0, ntot).parallel().forEach(n -> {
+			double[] a = new double[nstates];
+			for(int l=0; l<nstates; l++) a[l] = logN[l] + this.f[l] - u[l][n];
+			this.logdenom[n] = logSumExp(a, nstates);
+		});
+	}
+
+	/**
+	 * Predict the averages of the observables at new parameters. The error of an average A is estimated
+	 * as sqrt( sum_n W_n^2 (A_n - <A>)^2 ), with W_n the normalised weights, which assumes uncorrelated samples.
+	 *
+	 * @param gamma		surface tension
+	 * @param costhetaA	cos(thetaA)
+	 * @param costhetaP	cos(thetaP)
+	 * @return averages of z, theta, cos(theta), energy, followed by their errors,
+	 *         the free energy relative to the first simulation and the effective number of samples
+	 */
+	public double[] predict(double gamma, double costhetaA, double costhetaP) {
+		if(this.f==null) this.solve();
+		int ntot = this.samples.size();
+		int nobs = OBSERVABLES.length;
+		double[] state = { gamma, costhetaA, costhetaP };
+		double[] u = new double[ntot];
+		double[] logw = new double[ntot];
+		for(int n=0; n<ntot; n++) {
+			u[n] = reducedEnergy(this.samples.get(n), state);
+			logw[n] = -u[n] - this.logdenom[n];
+		}
+		double lognorm = logSumExp(logw, ntot);
+		double[] w = new double[ntot];
+		double[][] obs = new double[ntot][nobs];
+		double[] result = new double[2*nobs+2];
+		double w2sum = 0.;
+		for(int n=0; n<ntot; n++) {
+			double[] x = this.samples.get(n);
+			w[n] = Math.exp(logw[n]-lognorm);
+			w2sum += w[n]*w[n];
+			obs[n][0] = x[0];
+			obs[n][1] = x[1];
+			obs[n][2] = Math.cos(x[1]);
+			obs[n][3] = u[n];	// the reduced energy is the energy in kT
+			for(int i=0; i<nobs; i++) result[i] += w[n]*obs[n][i];
+		}
+		for(int n=0; n<ntot; n++) {
+			for(int i=0; i<nobs; i++) result[nobs+i] += w[n]*w[n]*(obs[n][i]-result[i])*(obs[n][i]-result[i]);
+		}
+		for(int i=0; i<nobs; i++) result[nobs+i] = Math.sqrt(result[nobs+i]);
+		result[2*nobs]   = -lognorm;
+		result[2*nobs+1] = 1./w2sum;
+		return result;
+	}
+
+	//   MAIN METHOD
+
+	/**
+	 * Main method
+	 */
+	public static void main(String args[]) {
+
+		// grid of parameters where to predict the averages, by default only the first simulation
+		double gmin = Double.NaN, gmax = Double.NaN;
+		double amin = Double.NaN, amax = Double.NaN;
+		double pmin = Double.NaN, pmax = Double.NaN;
+		int ng = 1, na = 1, np = 1;
+		int skip = 0, stride = 1;
+		List<String> files = new ArrayList<String>();
+
+		// parse command line arguments
+		System.out.println("# Usage: java Reweighting [-gamma min max n] [-costhetaA min max n] [-costhetaP min max n] [-skip val] [-stride val] file1 file2 ...");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-gamma") )          { gmin = Double.valueOf(args[i+1]); gmax = Double.valueOf(args[i+2]); ng = Integer.valueOf(args[i+3]); i += 3; }
+				else if( args[i].equals("-costhetaA") ) { amin = Double.valueOf(args[i+1]); amax = Double.valueOf(args[i+2]); na = Integer.valueOf(args[i+3]); i += 3; }
+				else if( args[i].equals("-costhetaP") ) { pmin = Double.valueOf(args[i+1]); pmax = Double.valueOf(args[i+2]); np = Integer.valueOf(args[i+3]); i += 3; }
+				else if( args[i].equals("-skip") )      { skip = Integer.valueOf(args[i+1]); i++; }
+				else if( args[i].equals("-stride") )    { stride = Integer.valueOf(args[i+1]); i++; }
+				else files.add(args[i]);
+			}
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+		if(files.isEmpty()) { System.out.println("# No input files"); System.exit(-1); }
+
+		Reweighting mbar = new Reweighting();
+		try {
+			for(String file : files) mbar.addRun(file, skip, stride);
+		}
+		catch(Exception e) { System.out.println("# Error reading input: " + e.getMessage()); System.exit(-1); }
+
+		System.out.print("# Generated by: java Reweighting");
+		for(int i=0; i<args.length; i++) System.out.print( " " + args[i] );
+		System.out.println("");
+		long startTime = System.currentTimeMillis();
+		mbar.solve();
+		long endTime = System.currentTimeMillis();
+		System.out.println("# runs = "    + mbar.getNumberOfRuns() );
+		System.out.println("# samples = " + mbar.getNumberOfSamples() );
+		System.out.println("# solution time (ms) = " + (endTime - startTime) );
+		for(int k=0; k<mbar.getNumberOfRuns(); k++) {
+			double[] s = mbar.states.get(k);
+			System.out.println("# run " + k + ": gamma = " + s[0] + " cos(thetaA) = " + s[1] + " cos(thetaP) = " + s[2] + " f = " + mbar.getFreeEnergies()[k] );
+		}
+
+		// default ranges are the parameters of the first simulation
+		double[] first = mbar.states.get(0);
+		if(Double.isNaN(gmin)) gmin = gmax = first[0];
+		if(Double.isNaN(amin)) amin = amax = first[1];
+		if(Double.isNaN(pmin)) pmin = pmax = first[2];
+		final double g0 = gmin, dg = (ng>1) ? (gmax-gmin)/(ng-1) : 0.;
+		final double a0 = amin, da = (na>1) ? (amax-amin)/(na-1) : 0.;
+		final double p0 = pmin, dp = (np>1) ? (pmax-pmin)/(np-1) : 0.;
+		// point i of the grid has gamma index i/(na*np), costhetaA index (i/np)%na, costhetaP index i%np
+		final int nna = na, nnp = np, npoints = ng*na*np;
+		double[][] params = new double[npoints][];
+		for(int i=0; i<npoints; i++) params[i] = new double[] { g0 + dg*(i/(nna*nnp)), a0 + da*((i/nnp)%nna), p0 + dp*(i%nnp) };
+		double[][] results = new double[npoints][];
+		IntStream.range(0, npoints).parallel().forEach(i -> results[i] = mbar.predict(params[i][0], params[i][1], params[i][2]));
+		System.out.println("# gamma cos(thetaA) cos(thetaP) <z> <theta> <cos(theta)> <energy> err(z) err(theta) err(cos(theta)) err(energy) f(kT) Neff");
+		for(int i=0; i<npoints; i++) {
+			System.out.printf("%f\t%f\t%f", params[i][0], params[i][1], params[i][2]);
+			for(double r : results[i]) System.out.printf("\t%f", r);
+			System.out.println("");
+		}
+
+	}
+}
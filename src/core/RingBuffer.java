@@ -0,0 +1,85 @@
+/**
+ * Ring buffer of the last rows of a time series of doubles, with several channels per row, stored in primitive arrays
+ * of fixed capacity: however long the series, the memory does not grow and adding a row allocates nothing.
+ * One thread adds the rows and any other thread can copy them without locks: a copy that overlaps with the
+ * writer only loses the oldest rows, which the writer may have overwritten meanwhile.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class RingBuffer {
+
+	// STATE
+
+	private final int capacity;	// maximum number of rows
+	private final double[][] data;	// data[channel][row%capacity]
+	private volatile long count = 0;	// rows added since the creation, published after each row
+
+	// CONSTRUCTORS
+
+	/**
+	 * Create an empty buffer
+	 *
+	 * @param capacity	number of rows kept
+	 * @param channels	number of values in a row
+	 */
+	public RingBuffer(int capacity, int channels) {
+		if(capacity<1 || channels<1) throw new IllegalArgumentException("capacity and channels must be positive");
+		this.capacity = capacity;
+		this.data = new double[channels][capacity];
+	}
+
+	// ACCESSORS
+
+	public int getCapacity()  { return this.capacity; }
+	public int getChannels()  { return this.data.length; }
+
+	/**
+	 * Rows added since the creation, including those already overwritten
+	 */
+	public long getCount()    { return this.count; }
+
+	/**
+	 * Rows currently kept
+	 */
+	public int size()         { return (int)Math.min(this.count, this.capacity); }
+
+	// COMPUTES
+
+	/**
+	 * Add a row, overwriting the oldest one if the buffer is full; only one thread may add rows
+	 *
+	 * @param row	a value for each channel
+	 */
+	public void add(double[] row) {
+		long c = this.count;
+		int i = (int)(c%this.capacity);
+		for(int k=0; k<this.data.length; k++) this.data[k][i] = row[k];
+		this.count = c+1;	// publishes the row to the readers
+	}
+
+	/**
+	 * Copy the rows kept, from the oldest to the newest; any thread can call this while the writer adds rows
+	 *
+	 * @param dest	an array of at least capacity values for each channel, dest[channel][row]
+	 * @return the number of rows copied
+	 */
+	public int snapshot(double[][] dest) {
+		long end = this.count;
+		long begin = Math.max(0L, end-this.capacity);
+		int n = (int)(end-begin);
+		int first = (int)(begin%this.capacity);
+		int head = Math.min(n, this.capacity-first);
+		for(int k=0; k<this.data.length; k++) {
+			System.arraycopy(this.data[k], first, dest[k], 0, head);
+			System.arraycopy(this.data[k], 0, dest[k], head, n-head);
+		}
+		// rows older than this may have been overwritten during the copy
+		long valid = Math.max(begin, this.count-this.capacity+1);
+		if(valid>=end) return 0;
+		int skip = (int)(valid-begin);
+		if(skip>0) for(int k=0; k<this.data.length; k++) System.arraycopy(dest[k], skip, dest[k], 0, n-skip);
+		return n-skip;
+	}
+
+}
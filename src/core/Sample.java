@@ -0,0 +1,74 @@
+/**
+ * Immutable sample of the state of a simulation of a Janus ellipsoid: step, time, position along z,
+ * orientation, energy and areas. It holds only primitive fields, so it is cheap to create and to pass
+ * between threads.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public final class Sample {
+
+	//  FIELDS
+
+	public final long step;	// index of the sample
+	public final double time;	// MC time of the ellipsoid
+	public final double z;	// z coordinate of the center
+	public final double qre, qx, qy, qz;	// orientation quaternion
+	public final double energy;	// energy in kT
+	public final double Sao, Spo, Saw, Spw, Si;	// areas of the sides in oil and water, and of the removed interface
+
+	//  CONSTRUCTORS
+
+	/**
+	 * Sample the current state of an ellipsoid; this must be called by the thread that iterates it,
+	 * or with its lock held
+	 *
+	 * @param je	the ellipsoid
+	 * @param step	index of the sample
+	 */
+	public Sample(JanusEllipsoid je, long step) {
+		this.step = step;
+		this.time = je.time;
+		this.z = je.center.a[2];
+		this.qre = je.rot.re;
+		this.qx = je.rot.im.a[0];
+		this.qy = je.rot.im.a[1];
+		this.qz = je.rot.im.a[2];
+		this.energy = je.energy();
+		this.Sao = je.getSao();
+		this.Spo = je.getSpo();
+		this.Saw = je.getSaw();
+		this.Spw = je.getSpw();
+		this.Si = je.getSi();
+	}
+
+	//  ACCESSORS
+
+	/**
+	 * Orientation and state for the viewers
+	 */
+	public Quaternion getRot() {
+		return new Quaternion(this.qre, new Vector3d(this.qx, this.qy, this.qz));
+	}
+	public RigidBodyState getRigidBodyState() {
+		return new RigidBodyState(new Vector3d(0., 0., this.z), this.getRot());
+	}
+
+	/**
+	 * Tilt angle of the polar axis, as in <code>JanusEllipsoid.getTheta</code>
+	 */
+	public double getTheta() {
+		double cz = this.qre*this.qre - this.qx*this.qx - this.qy*this.qy + this.qz*this.qz;
+		return Math.acos(Math.max(-1., Math.min(1., cz)));
+	}
+
+	/**
+	 * A line with the columns of the output of <code>java JanusEllipsoid</code>: step z theta energy Sao Spo Si q_re q_x q_y q_z
+	 */
+	@Override
+	public String toString() {
+		return String.format("%d\t%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f", this.step, this.z, this.getTheta(), this.energy, this.Sao, this.Spo, this.Si,
+			this.qre, this.qx, this.qy, this.qz);
+	}
+
+}
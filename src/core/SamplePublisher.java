@@ -0,0 +1,262 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Publisher of the samples of a simulation of a Janus ellipsoid. Each subscriber has its own bounded buffer
+ * and receives the samples on an executor, at its own rate, as requested through its subscription.
+ * When a buffer is full the policy of its subscriber decides what happens:
+ * DROP discards the new sample, SAMPLE discards the oldest one so that the subscriber always gets the latest
+ * state, and BLOCK makes the simulation wait. Only BLOCK can slow down the simulation; with no subscribers,
+ * publishing does not even create the sample.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class SamplePublisher implements Flow.Publisher<Sample>, AutoCloseable {
+
+	// STATE
+
+	/**
+	 * What to do when the buffer of a subscriber is full
+	 */
+	public enum Backpressure { DROP, SAMPLE, BLOCK }
+
+	/**
+	 * constants
+	 */
+	public static final int DEFAULTCAPACITY = 256;	// samples in the buffer of a subscriber
+
+	private final Executor executor;	// delivers the samples
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+	private volatile boolean closed = false;
+	private final AtomicLong dropped = new AtomicLong();	// samples discarded because a buffer was full
+
+	// CONSTRUCTORS
+
+	/**
+	 * Create a publisher delivering on the common pool
+	 */
+	public SamplePublisher() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a publisher
+	 *
+	 * @param executor	delivers the samples to the subscribers
+	 */
+	public SamplePublisher(Executor executor) {
+		this.executor = executor;
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Subscribe with the SAMPLE policy and the default capacity
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super Sample> subscriber) {
+		this.subscribe(subscriber, Backpressure.SAMPLE, DEFAULTCAPACITY);
+	}
+
+	/**
+	 * Subscribe
+	 *
+	 * @param subscriber	the subscriber
+	 * @param policy		what to do when its buffer is full
+	 * @param capacity		size of its buffer
+	 * @return the subscription
+	 */
+	public Flow.Subscription subscribe(Flow.Subscriber<? super Sample> subscriber, Backpressure policy, int capacity) {
+		Subscription s = new Subscription(subscriber, policy, capacity);
+		if(this.closed) s.complete();
+		else this.subscriptions.add(s);
+		s.signal();	// calls onSubscribe on the executor
+		return s;
+	}
+
+	/**
+	 * Subscribe a consumer of all the samples it can get
+	 *
+	 * @param consumer	the consumer
+	 * @param policy	what to do when its buffer is full
+	 * @param capacity	size of its buffer
+	 * @return the subscription, to cancel it
+	 */
+	public Flow.Subscription subscribe(Consumer<? super Sample> consumer, Backpressure policy, int capacity) {
+		return this.subscribe(new Flow.Subscriber<Sample>() {
+			@Override public void onSubscribe(Flow.Subscription s) { s.request(Long.MAX_VALUE); }
+			@Override public void onNext(Sample sample)            { consumer.accept(sample); }
+			@Override public void onError(Throwable t)             { }
+			@Override public void onComplete()                     { }
+		}, policy, capacity);
+	}
+
+	public boolean hasSubscribers() { return !this.subscriptions.isEmpty(); }
+	public long getDropped()        { return this.dropped.get(); }
+
+	/**
+	 * Publish a sample
+	 */
+	public void publish(Sample sample) {
+		for(Subscription s : this.subscriptions) s.offer(sample);
+	}
+
+	/**
+	 * Publish the current state of an ellipsoid, if anybody is listening;
+	 * this must be called by the thread that iterates the ellipsoid
+	 *
+	 * @param je	the ellipsoid
+	 * @param step	index of the sample
+	 */
+	public void publish(JanusEllipsoid je, long step) {
+		if(this.subscriptions.isEmpty()) return;
+		this.publish(new Sample(je, step));
+	}
+
+	/**
+	 * Complete all the subscriptions, after they have received the samples in their buffers
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		for(Subscription s : this.subscriptions) s.complete();
+	}
+
+	// SUBSCRIPTIONS
+
+	/**
+	 * Subscription with its buffer; the samples are delivered by one task at a time on the executor
+	 */
+	private class Subscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super Sample> subscriber;
+		private final Backpressure policy;
+		private final int capacity;
+		private final ArrayDeque<Sample> buffer = new ArrayDeque<Sample>();
+		private final AtomicInteger wip = new AtomicInteger();	// pending signals to the delivery task
+		private long demand = 0;	// samples requested and not delivered
+		private boolean subscribed = false, cancelled = false, completed = false, terminated = false;
+
+		Subscription(Flow.Subscriber<? super Sample> subscriber, Backpressure policy, int capacity) {
+			this.subscriber = subscriber;
+			this.policy = policy;
+			this.capacity = Math.max(1, capacity);
+		}
+
+		/**
+		 * Add a sample to the buffer, applying the policy if it is full
+		 */
+		void offer(Sample sample) {
+			synchronized(this) {
+				if(this.cancelled || this.completed) return;
+				if(this.buffer.size()>=this.capacity) {
+					switch(this.policy) {
+						case DROP:
+							SamplePublisher.this.dropped.incrementAndGet();
+							return;
+						case SAMPLE:
+							this.buffer.pollFirst();
+							SamplePublisher.this.dropped.incrementAndGet();
+							break;
+						case BLOCK:
+							boolean interrupted = false;
+							while(this.buffer.size()>=this.capacity && !this.cancelled) {
+								try { this.wait(); }
+								catch(InterruptedException e) { interrupted = true; }
+							}
+							if(interrupted) Thread.currentThread().interrupt();
+							if(this.cancelled) return;
+							break;
+					}
+				}
+				this.buffer.addLast(sample);
+			}
+			this.signal();
+		}
+
+		void complete() {
+			synchronized(this) { this.completed = true; }
+			this.signal();
+		}
+
+		/**
+		 * Make sure that the delivery task runs
+		 */
+		void signal() {
+			if(this.wip.getAndIncrement()==0) SamplePublisher.this.executor.execute(this::drain);
+		}
+
+		/**
+		 * Deliver the requested samples, until there are no more signals
+		 */
+		private void drain() {
+			int missed = 1;
+			while(true) {
+				if(!this.subscribed) {
+					this.subscribed = true;
+					this.subscriber.onSubscribe(this);
+				}
+				List<Sample> batch = new ArrayList<Sample>();
+				boolean finish = false;
+				synchronized(this) {
+					while(this.demand>0 && !this.buffer.isEmpty() && !this.cancelled) {
+						batch.add(this.buffer.pollFirst());
+						this.demand--;
+					}
+					if(!batch.isEmpty()) this.notifyAll();	// wakes up a blocked simulation
+					finish = this.completed && this.buffer.isEmpty() && !this.cancelled && !this.terminated;
+					if(finish) this.terminated = true;
+				}
+				try {
+					for(Sample sample : batch) this.subscriber.onNext(sample);
+					if(finish) {
+						this.subscriber.onComplete();
+						SamplePublisher.this.subscriptions.remove(this);
+					}
+				}
+				catch(Throwable t) {	// a broken subscriber is cancelled
+					this.cancel();
+				}
+				synchronized(this) {
+					if(this.demand>0 && !this.buffer.isEmpty() && !this.cancelled) continue;	// more was published meanwhile
+				}
+				missed = this.wip.addAndGet(-missed);
+				if(missed==0) return;
+			}
+		}
+
+		@Override
+		public void request(long n) {
+			if(n<=0) {
+				this.cancel();
+				this.subscriber.onError(new IllegalArgumentException("non-positive request " + n));
+				return;
+			}
+			synchronized(this) {
+				this.demand = (this.demand+n<0) ? Long.MAX_VALUE : this.demand+n;
+			}
+			this.signal();
+		}
+
+		@Override
+		public void cancel() {
+			synchronized(this) {
+				this.cancelled = true;
+				this.buffer.clear();
+				this.notifyAll();
+			}
+			SamplePublisher.this.subscriptions.remove(this);
+		}
+
+	}
+
+}
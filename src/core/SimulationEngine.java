@@ -0,0 +1,133 @@
+/**
+ * Engine running a simulation of a Janus ellipsoid, for programs that embed the simulations.
+ * It keeps an ellipsoid and the buffers of its statistics, and can be reset to new parameters:
+ * when the geometry does not change the grid is kept, so that a reset costs only the computation
+ * of the areas. An engine is not thread safe; <code>SimulatorPool</code> shares engines between threads.
+ *
+ *   SimulationEngine engine = new SimulationEngine(SimulationParameters.builder().gamma(10.).nsteps(1000).build());
+ *   SimulationSummary s = engine.run();
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class SimulationEngine {
+
+	// STATE
+
+	private SimulationParameters params;
+	private JanusEllipsoid je;
+	private final SimulationStatistics stats = new SimulationStatistics();	// reused by each run
+	private long step = 0;	// samples since the last reset
+	private SimulationMetrics metrics = null;	// live counters, kept across resets
+
+	// CONSTRUCTORS
+
+	/**
+	 * Create an engine, building the grid of the ellipsoid
+	 *
+	 * @param p	parameters of the simulation
+	 */
+	public SimulationEngine(SimulationParameters p) {
+		this.params = p;
+		this.je = p.createEllipsoid();
+	}
+
+	/**
+	 * Create an engine copying the grid of another one with the same geometry,
+	 * which is faster than building it again
+	 *
+	 * @param prototype	engine with the same axis, alpha and ngrid
+	 * @param p			parameters of the simulation
+	 */
+	public SimulationEngine(SimulationEngine prototype, SimulationParameters p) {
+		if(!p.geometry().equals(prototype.params.geometry())) throw new IllegalArgumentException("the prototype has another geometry");
+		this.je = new JanusEllipsoid(prototype.je);
+		this.reset(p);
+	}
+
+	// ACCESSORS
+
+	public SimulationParameters getParameters() { return this.params; }
+	public JanusEllipsoid getEllipsoid()        { return this.je; }
+	public long getStep()                       { return this.step; }
+
+	/**
+	 * Report the steps to some metrics, or to none if null
+	 */
+	public void setMetrics(SimulationMetrics metrics) {
+		this.metrics = metrics;
+		this.je.setMetrics(metrics);
+	}
+
+	/**
+	 * Current state, as an immutable sample
+	 */
+	public Sample getSample() {
+		return new Sample(this.je, this.step);
+	}
+
+	// COMPUTES
+
+	/**
+	 * Reset the engine to the initial state of a simulation: the results are the same as
+	 * with a new engine, but the grid is kept if the geometry does not change
+	 *
+	 * @param p	parameters of the simulation
+	 */
+	public void reset(SimulationParameters p) {
+		if(this.params!=null && !p.geometry().equals(this.params.geometry())) {
+			this.je = p.createEllipsoid();
+			this.je.setMetrics(this.metrics);
+		}
+		else {
+			this.je.center = new Vector3d(0.,0.,0.);
+			this.je.rot = new Quaternion(1., new Vector3d(0.,0.,0.));
+			this.je.time = 0.;
+			this.je.gamma = p.getGamma();
+			this.je.costhetaA = p.getCosthetaA();
+			this.je.costhetaP = p.getCosthetaP();
+			this.je.setSeed(p.getSeed());
+			this.je.setInterface(p.createInterface());
+		}
+		this.params = p;
+		this.step = 0;
+	}
+
+	/**
+	 * Advance the simulation without collecting statistics
+	 *
+	 * @param n	number of samples, of dt MC steps each
+	 */
+	public void step(int n) {
+		for(int i=0; i<n; i++) SimulationStatistics.iterate(this.je, this.params);
+		this.step += n;
+	}
+
+	/**
+	 * Advance the simulation collecting the statistics of the samples
+	 *
+	 * @param n	number of samples, of dt MC steps each
+	 * @return the summary of these samples
+	 */
+	public SimulationSummary run(int n) {
+		this.stats.clear();
+		for(int i=0; i<n; i++) {
+			SimulationStatistics.iterate(this.je, this.params);
+			this.stats.add(this.je);
+		}
+		this.step += n;
+		return this.stats.summary();
+	}
+
+	/**
+	 * Run the whole simulation from the current state: nequil samples discarded and nsteps collected;
+	 * after a reset the result is the same as with <code>SimulationStatistics.run</code>
+	 *
+	 * @return the summary of the collected samples
+	 */
+	public SimulationSummary run() {
+		this.step(this.params.getNequil());
+		return this.run(this.params.getNsteps());
+	}
+
+}
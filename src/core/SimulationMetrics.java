@@ -0,0 +1,168 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Live counters of a running simulation of a Janus ellipsoid, registered as an MBean under
+ * JanusEllipsoid:type=...,name=...,id=... so that JConsole or VisualVM can spot slow or stuck runs.
+ * An ellipsoid with metrics reports each batch of steps to them; without metrics it only checks a null field.
+ * The metrics are disabled, and register returns null, when the JVM runs with -Djanus.metrics=false.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class SimulationMetrics implements SimulationMetricsMBean, AutoCloseable {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final boolean ENABLED = !"false".equals(System.getProperty("janus.metrics"));
+	public static final int WINDOW = 10;	// seconds of the rolling rates
+	private static final long SECOND = 1000000000L;	// in ns
+
+	private static final AtomicLong ids = new AtomicLong();	// to tell apart simulations with the same name
+
+	private final ObjectName name;
+	private final long created = System.nanoTime();
+
+	/**
+	 * Totals, added by the simulation threads
+	 */
+	private final LongAdder steps = new LongAdder();
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+	private final LongAdder areaNanos = new LongAdder();
+	private volatile double energy = Double.NaN, z = Double.NaN;
+	private volatile long lastBatch = this.created;
+
+	/**
+	 * Snapshots taken about once a second for the rolling rates: time, steps, accepted, GC time in ms
+	 */
+	private final long[][] history = new long[WINDOW+1][];
+	private int head = 0, count = 0;
+	private volatile long lastSnapshot = 0L;
+
+	// CONSTRUCTORS
+
+	private SimulationMetrics(ObjectName name) {
+		this.name = name;
+		this.snapshot(this.created);
+	}
+
+	/**
+	 * Register the metrics of a simulation
+	 *
+	 * @param type	kind of simulation, such as Simulation, Sweep or Replica
+	 * @param name	name of the simulation
+	 * @return the metrics, or null if they are disabled or cannot be registered
+	 */
+	public static SimulationMetrics register(String type, String name) {
+		if(!ENABLED) return null;
+		try {
+			SimulationMetrics m = new SimulationMetrics(new ObjectName("JanusEllipsoid:type=" + type + ",name=" + ObjectName.quote(name) + ",id=" + ids.incrementAndGet()));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(m, m.name);
+			return m;
+		}
+		catch(JMException e) {	// the instrumentation must never stop a simulation
+			return null;
+		}
+	}
+
+	/**
+	 * Unregister the metrics at the end of the simulation
+	 */
+	@Override
+	public void close() {
+		try { ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name); }
+		catch(JMException e) { }
+	}
+
+	// ACCESSORS
+
+	@Override public long getSteps()                 { return this.steps.sum(); }
+	@Override public long getAccepted()              { return this.accepted.sum(); }
+	@Override public double getAcceptanceRatio()     { return (double)this.getAccepted()/this.getSteps(); }
+	@Override public double getAreaTimeFraction()    { return (double)this.areaNanos.sum()/this.nanos.sum(); }
+	@Override public double getElapsedSeconds()      { return (double)(System.nanoTime()-this.created)/SECOND; }
+	@Override public double getEnergy()              { return this.energy; }
+	@Override public double getZ()                   { return this.z; }
+	@Override public double getSecondsSinceLastBatch() { return (double)(System.nanoTime()-this.lastBatch)/SECOND; }
+
+	@Override
+	public double getStepsPerSecond() {
+		long now = System.nanoTime();
+		long[] old = this.oldest(now);
+		return (double)(this.getSteps()-old[1])*SECOND/Math.max(1L, now-old[0]);
+	}
+
+	@Override
+	public double getRecentAcceptanceRatio() {
+		long[] old = this.oldest(System.nanoTime());
+		return (double)(this.getAccepted()-old[2])/(this.getSteps()-old[1]);
+	}
+
+	@Override
+	public double getGcTimeFraction() {
+		long now = System.nanoTime();
+		long[] old = this.oldest(now);
+		return (double)(gcMillis()-old[3])*1000000L/Math.max(1L, now-old[0]);
+	}
+
+	// COMPUTES
+
+	/**
+	 * Report a batch of steps; called by the thread that iterates the ellipsoid
+	 *
+	 * @param n			number of steps
+	 * @param accepted	number of accepted moves
+	 * @param nanos		time of the batch
+	 * @param areaNanos	time spent computing the areas
+	 * @param energy	energy at the end of the batch
+	 * @param z			z coordinate of the center at the end of the batch
+	 */
+	public void record(int n, long accepted, long nanos, long areaNanos, double energy, double z) {
+		this.steps.add(n);
+		this.accepted.add(accepted);
+		this.nanos.add(nanos);
+		this.areaNanos.add(areaNanos);
+		this.energy = energy;
+		this.z = z;
+		long now = System.nanoTime();
+		this.lastBatch = now;
+		if(now-this.lastSnapshot>=SECOND) this.snapshot(now);
+	}
+
+	/**
+	 * Take a snapshot, if the last one is older than a second
+	 */
+	private synchronized void snapshot(long now) {
+		if(this.count>0 && now-this.lastSnapshot<SECOND) return;
+		this.history[this.head] = new long[] { now, this.getSteps(), this.getAccepted(), gcMillis() };
+		this.head = (this.head+1)%this.history.length;
+		this.count = Math.min(this.count+1, this.history.length);
+		this.lastSnapshot = now;
+	}
+
+	/**
+	 * Oldest snapshot in the window
+	 */
+	private synchronized long[] oldest(long now) {
+		this.snapshot(now);
+		return this.history[(this.head-this.count+this.history.length)%this.history.length];
+	}
+
+	/**
+	 * Total time spent by the JVM in garbage collection, in ms
+	 */
+	private static long gcMillis() {
+		long t = 0L;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) t += Math.max(0L, gc.getCollectionTime());
+		return t;
+	}
+
+}
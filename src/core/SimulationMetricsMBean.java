@@ -0,0 +1,32 @@
+/**
+ * Management interface of <code>SimulationMetrics</code>, as seen in JConsole or VisualVM
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public interface SimulationMetricsMBean {
+
+	/**
+	 * Totals since the registration
+	 */
+	public long getSteps();
+	public long getAccepted();
+	public double getAcceptanceRatio();
+	public double getAreaTimeFraction();	// fraction of the time of the steps spent computing the areas
+	public double getElapsedSeconds();
+
+	/**
+	 * Rates over the last WINDOW seconds
+	 */
+	public double getStepsPerSecond();
+	public double getRecentAcceptanceRatio();
+	public double getGcTimeFraction();	// fraction of the wall time spent in garbage collection, by the whole JVM
+
+	/**
+	 * Last state, and time since the last batch of steps, which grows when the simulation is stuck
+	 */
+	public double getEnergy();
+	public double getZ();
+	public double getSecondsSinceLastBatch();
+
+}
@@ -0,0 +1,305 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of parameters of a Monte Carlo simulation of a Janus ellipsoid:
+ * geometry, surface tensions and sampling settings.
+ * Parameters can be changed by name, which produces a new object, so that
+ * drivers can scan any of them, or set with a <code>Builder</code>.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class SimulationParameters {
+
+	// FIELDS
+
+	/**
+	 * Names of the parameters accepted by with, and those of them that are integers
+	 */
+	public static final List<String> NAMES = Arrays.asList("Lx", "Ly", "LxLy", "Lz", "aspect", "alpha", "ngrid", "gamma", "costhetaA", "costhetaP",
+		"dz", "dphi", "dt", "nsteps", "nequil", "ntries", "seed", "radius");
+	public static final List<String> INTEGERS = Arrays.asList("ngrid", "dt", "nsteps", "nequil", "ntries");
+
+	private final double Lx, Ly, Lz;	// half axis of the ellipsoid
+	private final double alpha;	// angle that defines the patch, in radians
+	private final int ngrid;	// resolution of the surface points
+	private final double gamma, costhetaA, costhetaP;	// surface tensions
+	private final double dz, dphi;	// sigmas of the MC moves
+	private final int dt;	// MC steps between samples
+	private final int nsteps;	// number of samples
+	private final int nequil;	// number of initial samples discarded for equilibration
+	private final int ntries;	// trial moves per step, more than 1 for multiple-try Metropolis
+	private final long seed;	// seed of the random numbers
+	private final double radius;	// radius of the droplet, positive for oil and negative for water, or 0 for a planar interface
+
+	// CONSTRUCTORS
+
+	/**
+	 * Default parameters, as in BslA
+	 */
+	public SimulationParameters() {
+		this(1.4, 1.4, 2.6, Math.PI*50.4/180., JanusEllipsoid.DEFAULTNGRID, 12., -0.2, 0.5, 0.01, 0.01, 100, 10000, 0, 1, 1);
+	}
+
+	/**
+	 * Constructor for a planar interface
+	 */
+	public SimulationParameters(double Lx, double Ly, double Lz, double alpha, int ngrid, double gamma, double costhetaA, double costhetaP,
+	                            double dz, double dphi, int dt, int nsteps, int nequil, int ntries, long seed) {
+		this(Lx, Ly, Lz, alpha, ngrid, gamma, costhetaA, costhetaP, dz, dphi, dt, nsteps, nequil, ntries, seed, 0.);
+	}
+
+	/**
+	 * Complete constructor
+	 */
+	public SimulationParameters(double Lx, double Ly, double Lz, double alpha, int ngrid, double gamma, double costhetaA, double costhetaP,
+	                            double dz, double dphi, int dt, int nsteps, int nequil, int ntries, long seed, double radius) {
+		this.Lx = Lx;
+		this.Ly = Ly;
+		this.Lz = Lz;
+		this.alpha = alpha;
+		this.ngrid = ngrid;
+		this.gamma = gamma;
+		this.costhetaA = costhetaA;
+		this.costhetaP = costhetaP;
+		this.dz = dz;
+		this.dphi = dphi;
+		this.dt = dt;
+		this.nsteps = nsteps;
+		this.nequil = nequil;
+		this.ntries = ntries;
+		this.seed = seed;
+		this.radius = radius;
+	}
+
+	/**
+	 * Builder of parameters, starting from the defaults or from other parameters
+	 */
+	public static Builder builder() { return new Builder(new SimulationParameters()); }
+	public Builder toBuilder()      { return new Builder(this); }
+
+	public static class Builder {
+
+		private double Lx, Ly, Lz, alpha, gamma, costhetaA, costhetaP, dz, dphi, radius;
+		private int ngrid, dt, nsteps, nequil, ntries;
+		private long seed;
+
+		private Builder(SimulationParameters p) {
+			this.Lx = p.Lx; this.Ly = p.Ly; this.Lz = p.Lz; this.alpha = p.alpha; this.ngrid = p.ngrid;
+			this.gamma = p.gamma; this.costhetaA = p.costhetaA; this.costhetaP = p.costhetaP;
+			this.dz = p.dz; this.dphi = p.dphi; this.dt = p.dt; this.nsteps = p.nsteps; this.nequil = p.nequil; this.ntries = p.ntries; this.seed = p.seed;
+			this.radius = p.radius;
+		}
+
+		public Builder axis(double Lx, double Ly, double Lz) { this.Lx = Lx; this.Ly = Ly; this.Lz = Lz; return this; }
+		public Builder alphaDegrees(double alpha)          { this.alpha = Math.PI*alpha/180.; return this; }
+		public Builder alpha(double alpha)                 { this.alpha = alpha; return this; }
+		public Builder ngrid(int ngrid)                    { this.ngrid = ngrid; return this; }
+		public Builder gamma(double gamma)                 { this.gamma = gamma; return this; }
+		public Builder costhetaA(double costhetaA)         { this.costhetaA = costhetaA; return this; }
+		public Builder costhetaP(double costhetaP)         { this.costhetaP = costhetaP; return this; }
+		public Builder dz(double dz)                       { this.dz = dz; return this; }
+		public Builder dphi(double dphi)                   { this.dphi = dphi; return this; }
+		public Builder dt(int dt)                          { this.dt = dt; return this; }
+		public Builder nsteps(int nsteps)                  { this.nsteps = nsteps; return this; }
+		public Builder nequil(int nequil)                  { this.nequil = nequil; return this; }
+		public Builder ntries(int ntries)                  { this.ntries = ntries; return this; }
+		public Builder seed(long seed)                     { this.seed = seed; return this; }
+		public Builder radius(double radius)               { this.radius = radius; return this; }
+
+		/**
+		 * Build the parameters
+		 *
+		 * @throws IllegalArgumentException if they do not make sense
+		 */
+		public SimulationParameters build() {
+			if(!(this.Lx>0. && this.Ly>0. && this.Lz>0.)) throw new IllegalArgumentException("the half axes must be positive");
+			if(!(this.alpha>=0. && this.alpha<=Math.PI)) throw new IllegalArgumentException("alpha must be between 0 and 180 degrees");
+			if(this.ngrid<1 || this.dt<1 || this.ntries<1) throw new IllegalArgumentException("ngrid, dt and ntries must be positive");
+			if(this.nsteps<0 || this.nequil<0) throw new IllegalArgumentException("nsteps and nequil cannot be negative");
+			if(!(this.dz>=0. && this.dphi>=0.)) throw new IllegalArgumentException("the steps cannot be negative");
+			if(!Double.isFinite(this.radius)) throw new IllegalArgumentException("the radius of the droplet must be finite");
+			return new SimulationParameters(this.Lx, this.Ly, this.Lz, this.alpha, this.ngrid, this.gamma, this.costhetaA, this.costhetaP,
+				this.dz, this.dphi, this.dt, this.nsteps, this.nequil, this.ntries, this.seed, this.radius);
+		}
+
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Getters
+	 */
+	public Vector3d getAxis()     { return new Vector3d(this.Lx, this.Ly, this.Lz); }
+	public double getAlpha()      { return this.alpha; }
+	public int getNgrid()         { return this.ngrid; }
+	public double getGamma()      { return this.gamma; }
+	public double getCosthetaA()  { return this.costhetaA; }
+	public double getCosthetaP()  { return this.costhetaP; }
+	public double getDz()         { return this.dz; }
+	public double getDphi()       { return this.dphi; }
+	public int getDt()            { return this.dt; }
+	public int getNsteps()        { return this.nsteps; }
+	public int getNequil()        { return this.nequil; }
+	public int getNtries()        { return this.ntries; }
+	public long getSeed()         { return this.seed; }
+	public double getRadius()     { return this.radius; }
+
+	/**
+	 * Get a copy with one parameter changed, using the names of the command line options:
+	 * Lx, Ly, LxLy, Lz, aspect (Lz/Lx, at fixed Lx and Ly), alpha (in degrees), ngrid, gamma, costhetaA, costhetaP,
+	 * dz, dphi, dt, nsteps, nequil, ntries, seed, radius.
+	 * A seed passed as a double is exact only up to 2^53; use withSeed for arbitrary seeds
+	 *
+	 * @param name	name of the parameter
+	 * @param value	new value
+	 * @return the new parameters
+	 */
+	public SimulationParameters with(String name, double value) {
+		double Lx = this.Lx, Ly = this.Ly, Lz = this.Lz, alpha = this.alpha, gamma = this.gamma, costhetaA = this.costhetaA, costhetaP = this.costhetaP, dz = this.dz, dphi = this.dphi, radius = this.radius;
+		int ngrid = this.ngrid, dt = this.dt, nsteps = this.nsteps, nequil = this.nequil, ntries = this.ntries;
+		long seed = this.seed;
+		switch(name) {
+			case "Lx":        Lx = value; break;
+			case "Ly":        Ly = value; break;
+			case "LxLy":      Lx = Ly = value; break;
+			case "Lz":        Lz = value; break;
+			case "aspect":    Lz = value*Lx; break;
+			case "alpha":     alpha = Math.PI*value/180.; break;
+			case "ngrid":     ngrid = (int)value; break;
+			case "gamma":     gamma = value; break;
+			case "costhetaA": costhetaA = value; break;
+			case "costhetaP": costhetaP = value; break;
+			case "dz":        dz = value; break;
+			case "dphi":      dphi = value; break;
+			case "dt":        dt = (int)value; break;
+			case "nsteps":    nsteps = (int)value; break;
+			case "nequil":    nequil = (int)value; break;
+			case "ntries":    ntries = (int)value; break;
+			case "seed":      seed = (long)value; break;
+			case "radius":    radius = value; break;
+			default: throw new IllegalArgumentException("unknown parameter " + name);
+		}
+		return new SimulationParameters(Lx, Ly, Lz, alpha, ngrid, gamma, costhetaA, costhetaP, dz, dphi, dt, nsteps, nequil, ntries, seed, radius);
+	}
+
+	/**
+	 * Get a copy with another seed, with all its 64 bits
+	 *
+	 * @param seed	seed of the random numbers
+	 * @return the new parameters
+	 */
+	public SimulationParameters withSeed(long seed) {
+		return new SimulationParameters(this.Lx, this.Ly, this.Lz, this.alpha, this.ngrid, this.gamma, this.costhetaA, this.costhetaP,
+			this.dz, this.dphi, this.dt, this.nsteps, this.nequil, this.ntries, seed, this.radius);
+	}
+
+	/**
+	 * Apply the command line options that correspond to parameters, ignoring the others;
+	 * the seed and the integer parameters are parsed as integers, so that they are exact
+	 *
+	 * @param args	command line arguments, as pairs -name value
+	 * @return the new parameters
+	 * @throws IllegalArgumentException if a value is missing or is not a number, or if the parameters do not make sense
+	 */
+	public SimulationParameters with(String[] args) {
+		SimulationParameters p = this;
+		for(int i=0; i<args.length; i++) {
+			if(!args[i].startsWith("-") || !NAMES.contains(args[i].substring(1))) continue;	// not a parameter
+			if(i+1==args.length) throw new IllegalArgumentException("missing value of " + args[i]);
+			String name = args[i].substring(1), value = args[i+1];
+			if(name.equals("seed"))          p = p.withSeed(Long.parseLong(value));
+			else if(INTEGERS.contains(name)) p = p.with(name, Integer.parseInt(value));
+			else                             p = p.with(name, Double.parseDouble(value));
+		}
+		return p.toBuilder().build();
+	}
+
+	/**
+	 * Create an ellipsoid with these parameters, with its random numbers seeded
+	 */
+	public JanusEllipsoid createEllipsoid() {
+		JanusEllipsoid je = new JanusEllipsoid(this.getAxis(), this.alpha, this.ngrid, this.gamma, this.costhetaA, this.costhetaP);
+		je.setSeed(this.seed);
+		if(this.radius!=0.) je.setInterface(this.createInterface());
+		return je;
+	}
+
+	/**
+	 * Create the interface between water and oil: a droplet of the given radius, or the plane z = ZINTER
+	 */
+	public InterfaceGeometry createInterface() {
+		if(this.radius!=0.) return new SphericalInterface(this.radius);
+		return new PlanarInterface(JanusEllipsoid.ZINTER);
+	}
+
+	/**
+	 * Key of the geometry of the ellipsoid, which determines its grid
+	 */
+	public String geometry() {
+		return this.Lx + "," + this.Ly + "," + this.Lz + "," + this.alpha + "," + this.ngrid;
+	}
+
+	/**
+	 * Canonical representation of all the parameters and of the version of the code, with the exact
+	 * binary values of the numbers, so that two sets of parameters give the same results if and only
+	 * if they have the same canonical representation; the radius is only written for droplets,
+	 * so that the representations of planar interfaces are those of the previous versions
+	 */
+	public String canonical() {
+		return "version=" + JanusEllipsoid.VERSION
+			+ ";Lx=" + Long.toHexString(Double.doubleToLongBits(this.Lx))
+			+ ";Ly=" + Long.toHexString(Double.doubleToLongBits(this.Ly))
+			+ ";Lz=" + Long.toHexString(Double.doubleToLongBits(this.Lz))
+			+ ";alpha=" + Long.toHexString(Double.doubleToLongBits(this.alpha))
+			+ ";ngrid=" + this.ngrid
+			+ ";gamma=" + Long.toHexString(Double.doubleToLongBits(this.gamma))
+			+ ";costhetaA=" + Long.toHexString(Double.doubleToLongBits(this.costhetaA))
+			+ ";costhetaP=" + Long.toHexString(Double.doubleToLongBits(this.costhetaP))
+			+ ";dz=" + Long.toHexString(Double.doubleToLongBits(this.dz))
+			+ ";dphi=" + Long.toHexString(Double.doubleToLongBits(this.dphi))
+			+ ";dt=" + this.dt + ";nsteps=" + this.nsteps + ";nequil=" + this.nequil + ";ntries=" + this.ntries + ";seed=" + this.seed
+			+ ((this.radius!=0.) ? ";radius=" + Long.toHexString(Double.doubleToLongBits(this.radius)) : "");
+	}
+
+	/**
+	 * Parse a canonical representation written by canonical()
+	 *
+	 * @param canonical	canonical representation
+	 * @return the parameters
+	 * @throws IllegalArgumentException if the representation is malformed or from another version of the code
+	 */
+	public static SimulationParameters parse(String canonical) {
+		Map<String, String> f = new HashMap<String, String>();
+		for(String field : canonical.split(";")) {
+			String[] kv = field.split("=", 2);
+			if(kv.length!=2) throw new IllegalArgumentException("malformed parameters " + canonical);
+			f.put(kv[0], kv[1]);
+		}
+		if(!JanusEllipsoid.VERSION.equals(f.get("version"))) throw new IllegalArgumentException("parameters of version " + f.get("version") + " of the code");
+		try {
+			return new SimulationParameters(bits(f.get("Lx")), bits(f.get("Ly")), bits(f.get("Lz")), bits(f.get("alpha")), Integer.parseInt(f.get("ngrid")),
+				bits(f.get("gamma")), bits(f.get("costhetaA")), bits(f.get("costhetaP")), bits(f.get("dz")), bits(f.get("dphi")),
+				Integer.parseInt(f.get("dt")), Integer.parseInt(f.get("nsteps")), Integer.parseInt(f.get("nequil")), Integer.parseInt(f.get("ntries")), Long.parseLong(f.get("seed")),
+				f.containsKey("radius") ? bits(f.get("radius")) : 0.);
+		}
+		catch(NullPointerException | NumberFormatException e) { throw new IllegalArgumentException("malformed parameters " + canonical); }
+	}
+
+	private static double bits(String hex) {
+		return Double.longBitsToDouble(Long.parseUnsignedLong(hex, 16));
+	}
+
+	@Override
+	public String toString() {
+		return "Lx=" + this.Lx + " Ly=" + this.Ly + " Lz=" + this.Lz + " alpha=" + 180.*this.alpha/Math.PI + " ngrid=" + this.ngrid
+			+ " gamma=" + this.gamma + " costhetaA=" + this.costhetaA + " costhetaP=" + this.costhetaP
+			+ " dz=" + this.dz + " dphi=" + this.dphi + " dt=" + this.dt + " nsteps=" + this.nsteps
+			+ " nequil=" + this.nequil + " ntries=" + this.ntries + " seed=" + this.seed
+			+ ((this.radius!=0.) ? " radius=" + this.radius : "");
+	}
+
+}
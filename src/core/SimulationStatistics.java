@@ -0,0 +1,262 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Accumulator of the observables sampled along a simulation of a Janus ellipsoid:
+ * z coordinate of the center, tilt angle theta of the polar axis and energy.
+ * It keeps running sums, block averages for the statistical errors, and a histogram of theta,
+ * all of fixed size, so that neither the memory nor a checkpoint grows with the length of the run.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class SimulationStatistics {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final int NOBS = 3;	// z, theta, energy
+	public static final int NBLOCKS = 20;	// number of blocks for the error estimates
+	public static final int NBINS = 90;	// number of bins of the histogram of theta in [0,pi]
+
+	/**
+	 * Running sums
+	 */
+	private long n = 0;	// number of samples
+	private double[] sum = new double[NOBS];
+	private double[] sum2 = new double[NOBS];
+	private double sumcos = 0.;	// sum of cos(theta)
+
+	/**
+	 * Sums of the powers 1 to 4 of theta - theta0, where theta0 is the first sample,
+	 * for the moments of the distribution of theta without cancellations
+	 */
+	private double theta0 = 0.;
+	private double[] moment = new double[4];
+
+	/**
+	 * Sums of the blocks for the error estimates of z, theta, energy and cos(theta): there are between NBLOCKS
+	 * and 2*NBLOCKS full blocks of the same size, and when they are 2*NBLOCKS the pairs are merged and the size
+	 * is doubled, so the memory does not grow with the number of samples
+	 */
+	private long blocksize = 1;	// samples per block
+	private int nblocks = 0;	// full blocks
+	private long fill = 0;	// samples in the block being filled
+	private double[][] block = new double[NOBS+1][2*NBLOCKS];
+
+	/**
+	 * Histogram of theta
+	 */
+	private long[] histogram = new long[NBINS];
+
+	// ACCESSORS
+
+	/**
+	 * Add a sample
+	 *
+	 * @param z		z coordinate of the center
+	 * @param theta	tilt angle of the polar axis
+	 * @param energy	energy
+	 */
+	public void add(double z, double theta, double energy) {
+		double[] x = { z, theta, energy, Math.cos(theta) };
+		for(int k=0; k<NOBS; k++) {
+			this.sum[k] += x[k];
+			this.sum2[k] += x[k]*x[k];
+		}
+		this.sumcos += x[NOBS];
+		if(this.n==0) this.theta0 = theta;
+		double d = theta - this.theta0, dp = 1.;
+		for(int j=0; j<4; j++) {
+			dp *= d;
+			this.moment[j] += dp;
+		}
+		for(int k=0; k<=NOBS; k++) this.block[k][this.nblocks] += x[k];
+		if(++this.fill==this.blocksize) {
+			this.fill = 0;
+			if(++this.nblocks==2*NBLOCKS) this.merge();
+		}
+		int bin = (int)(NBINS*theta/Math.PI);
+		this.histogram[Math.max(0, Math.min(NBINS-1, bin))]++;
+		this.n++;
+	}
+
+	/**
+	 * Merge the pairs of blocks, doubling their size
+	 */
+	private void merge() {
+		for(int k=0; k<=NOBS; k++) {
+			for(int b=0; b<NBLOCKS; b++) this.block[k][b] = this.block[k][2*b] + this.block[k][2*b+1];
+			Arrays.fill(this.block[k], NBLOCKS, 2*NBLOCKS, 0.);
+		}
+		this.nblocks = NBLOCKS;
+		this.blocksize *= 2;
+	}
+
+	/**
+	 * Remove all the samples
+	 */
+	public void clear() {
+		this.n = 0;
+		this.sumcos = 0.;
+		this.theta0 = 0.;
+		this.blocksize = 1;
+		this.nblocks = 0;
+		this.fill = 0;
+		Arrays.fill(this.sum, 0.);
+		Arrays.fill(this.sum2, 0.);
+		Arrays.fill(this.moment, 0.);
+		for(int k=0; k<=NOBS; k++) Arrays.fill(this.block[k], 0.);
+		Arrays.fill(this.histogram, 0);
+	}
+
+	/**
+	 * Add the current state of an ellipsoid
+	 */
+	public void add(JanusEllipsoid je) {
+		this.add(je.center.a[2], je.getTheta(), je.energy());
+	}
+
+	/**
+	 * Getters
+	 */
+	public long getCount()               { return this.n; }
+	public long[] getHistogram()         { return this.histogram; }
+	public double getMean(int k)         { return this.sum[k]/this.n; }
+	public double getMeanZ()             { return this.getMean(0); }
+	public double getMeanTheta()         { return this.getMean(1); }
+	public double getMeanEnergy()        { return this.getMean(2); }
+	public double getMeanCostheta()      { return this.sumcos/this.n; }
+	public double getVariance(int k)     { return this.sum2[k]/this.n - this.getMean(k)*this.getMean(k); }
+	public double getError(int k)        { return this.blockError(k); }
+	public double getErrorCostheta()     { return this.blockError(NOBS); }
+
+	/**
+	 * Bimodality coefficient of the distribution of theta, (skewness^2 + 1) / kurtosis:
+	 * above 5/9 the distribution is likely to be bimodal
+	 */
+	public double getBimodality() {
+		double mean = this.moment[0]/this.n, s2 = this.moment[1]/this.n, s3 = this.moment[2]/this.n, s4 = this.moment[3]/this.n;
+		double m2 = s2 - mean*mean;	// central moments from the moments about theta0
+		double m3 = s3 - 3.*mean*s2 + 2.*mean*mean*mean;
+		double m4 = s4 - 4.*mean*s3 + 6.*mean*mean*s2 - 3.*mean*mean*mean*mean;
+		if(!(m2>0.)) return 0.;
+		return (m3*m3/(m2*m2*m2) + 1.) / (m4/(m2*m2));
+	}
+
+	/**
+	 * Standard error of the mean from the fluctuations of the averages of the full blocks;
+	 * the samples of the block being filled are left out
+	 *
+	 * @param k	observable, NOBS for cos(theta)
+	 */
+	private double blockError(int k) {
+		int m = this.nblocks;
+		if(m<NBLOCKS) return Double.NaN;
+		double mean = 0., var = 0.;
+		for(int b=0; b<m; b++) mean += this.block[k][b]/this.blocksize;
+		mean /= m;
+		for(int b=0; b<m; b++) {
+			double d = this.block[k][b]/this.blocksize - mean;
+			var += d*d;
+		}
+		return Math.sqrt(var/(m-1)/m);
+	}
+
+	/**
+	 * Summary of the statistics
+	 */
+	public SimulationSummary summary() {
+		double[] mean = new double[NOBS], error = new double[NOBS];
+		for(int k=0; k<NOBS; k++) {
+			mean[k] = this.getMean(k);
+			error[k] = this.getError(k);
+		}
+		return new SimulationSummary(this.n, mean, error, this.getMeanCostheta(), this.getErrorCostheta(), this.getBimodality(), this.histogram.clone(), null);
+	}
+
+	/**
+	 * Write the full state of the accumulator, to be restored exactly by read;
+	 * its size does not depend on the number of samples
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeLong(this.n);
+		for(int k=0; k<NOBS; k++) {
+			out.writeDouble(this.sum[k]);
+			out.writeDouble(this.sum2[k]);
+		}
+		out.writeDouble(this.sumcos);
+		out.writeDouble(this.theta0);
+		for(int j=0; j<4; j++) out.writeDouble(this.moment[j]);
+		out.writeLong(this.blocksize);
+		out.writeInt(this.nblocks);
+		out.writeLong(this.fill);
+		for(int k=0; k<=NOBS; k++) {
+			for(int b=0; b<2*NBLOCKS; b++) out.writeDouble(this.block[k][b]);
+		}
+		for(int b=0; b<NBINS; b++) out.writeLong(this.histogram[b]);
+	}
+
+	/**
+	 * Read the state of an accumulator written by write
+	 */
+	public static SimulationStatistics read(DataInputStream in) throws IOException {
+		SimulationStatistics s = new SimulationStatistics();
+		s.n = in.readLong();
+		for(int k=0; k<NOBS; k++) {
+			s.sum[k] = in.readDouble();
+			s.sum2[k] = in.readDouble();
+		}
+		s.sumcos = in.readDouble();
+		s.theta0 = in.readDouble();
+		for(int j=0; j<4; j++) s.moment[j] = in.readDouble();
+		s.blocksize = in.readLong();
+		s.nblocks = in.readInt();
+		s.fill = in.readLong();
+		if(s.blocksize<1 || s.nblocks<0 || s.nblocks>=2*NBLOCKS || s.fill<0 || s.fill>=s.blocksize) throw new IOException("corrupted statistics");
+		for(int k=0; k<=NOBS; k++) {
+			for(int b=0; b<2*NBLOCKS; b++) s.block[k][b] = in.readDouble();
+		}
+		for(int b=0; b<NBINS; b++) s.histogram[b] = in.readLong();
+		return s;
+	}
+
+	// SIMULATION
+
+	/**
+	 * Iterate an ellipsoid with the MC moves of a simulation
+	 */
+	public static void iterate(JanusEllipsoid je, SimulationParameters p) {
+		if(p.getNtries()>1) je.iterateMTM(p.getDt(), p.getDz(), p.getDphi(), p.getNtries());
+		else                je.iterate(p.getDt(), p.getDz(), p.getDphi());
+	}
+
+	/**
+	 * Run a simulation and collect its statistics
+	 *
+	 * @param p			parameters of the simulation
+	 * @return the statistics of the samples after equilibration
+	 */
+	public static SimulationStatistics run(SimulationParameters p) {
+		JanusEllipsoid je = p.createEllipsoid();
+		SimulationStatistics stats = new SimulationStatistics();
+		SimulationMetrics metrics = SimulationMetrics.register("Simulation", p.toString());
+		je.setMetrics(metrics);
+		try {
+			for(int i=0; i<p.getNequil(); i++) iterate(je, p);
+			for(int i=0; i<p.getNsteps(); i++) {
+				iterate(je, p);
+				stats.add(je);
+			}
+		}
+		finally {
+			if(metrics!=null) metrics.close();
+		}
+		return stats;
+	}
+
+}
@@ -0,0 +1,112 @@
+import java.util.Properties;
+
+/**
+ * Immutable summary of the results of a simulation of a Janus ellipsoid: averages and errors
+ * of z, theta and energy, the histogram of theta, and optionally where the trajectory was written.
+ * It can be converted to and from <code>Properties</code> to be stored on disk.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class SimulationSummary {
+
+	// FIELDS
+
+	private final long count;	// number of samples
+	private final double[] mean, error;	// averages and errors of z, theta, energy
+	private final double meanCostheta, errorCostheta;	// average and error of cos(theta)
+	private final double bimodality;	// bimodality coefficient of theta
+	private final long[] histogram;	// histogram of theta in [0,pi]
+	private final String trajectory;	// file with the trajectory, or null
+
+	// CONSTRUCTORS
+
+	/**
+	 * Complete constructor
+	 */
+	public SimulationSummary(long count, double[] mean, double[] error, double meanCostheta, double errorCostheta, double bimodality, long[] histogram, String trajectory) {
+		this.count = count;
+		this.mean = mean.clone();
+		this.error = error.clone();
+		this.meanCostheta = meanCostheta;
+		this.errorCostheta = errorCostheta;
+		this.bimodality = bimodality;
+		this.histogram = histogram.clone();
+		this.trajectory = trajectory;
+	}
+
+	/**
+	 * Get a copy with a reference to the trajectory
+	 *
+	 * @param trajectory	file with the trajectory
+	 */
+	public SimulationSummary withTrajectory(String trajectory) {
+		return new SimulationSummary(this.count, this.mean, this.error, this.meanCostheta, this.errorCostheta, this.bimodality, this.histogram, trajectory);
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Getters; observables are indexed as in <code>SimulationStatistics</code>: 0 z, 1 theta, 2 energy
+	 */
+	public long getCount()           { return this.count; }
+	public double getMean(int k)     { return this.mean[k]; }
+	public double getError(int k)    { return this.error[k]; }
+	public double getMeanCostheta()  { return this.meanCostheta; }
+	public double getErrorCostheta() { return this.errorCostheta; }
+	public double getBimodality()    { return this.bimodality; }
+	public long[] getHistogram()     { return this.histogram.clone(); }
+	public String getTrajectory()    { return this.trajectory; }
+
+	// CONVERSIONS
+
+	/**
+	 * Convert to properties
+	 */
+	public Properties toProperties() {
+		Properties p = new Properties();
+		p.setProperty("count", Long.toString(this.count));
+		String[] names = { "z", "theta", "energy" };
+		for(int k=0; k<names.length; k++) {
+			p.setProperty("mean." + names[k], Double.toString(this.mean[k]));
+			p.setProperty("error." + names[k], Double.toString(this.error[k]));
+		}
+		p.setProperty("mean.costheta", Double.toString(this.meanCostheta));
+		p.setProperty("error.costheta", Double.toString(this.errorCostheta));
+		p.setProperty("bimodality", Double.toString(this.bimodality));
+		StringBuilder h = new StringBuilder();
+		for(int i=0; i<this.histogram.length; i++) h.append((i>0) ? "," : "").append(this.histogram[i]);
+		p.setProperty("histogram.theta", h.toString());
+		if(this.trajectory!=null) p.setProperty("trajectory", this.trajectory);
+		return p;
+	}
+
+	/**
+	 * Convert from properties
+	 */
+	public static SimulationSummary fromProperties(Properties p) {
+		String[] names = { "z", "theta", "energy" };
+		double[] mean = new double[names.length], error = new double[names.length];
+		for(int k=0; k<names.length; k++) {
+			mean[k] = Double.valueOf(p.getProperty("mean." + names[k]));
+			error[k] = Double.valueOf(p.getProperty("error." + names[k]));
+		}
+		String[] h = p.getProperty("histogram.theta").split(",");
+		long[] histogram = new long[h.length];
+		for(int i=0; i<h.length; i++) histogram[i] = Long.valueOf(h[i]);
+		return new SimulationSummary(Long.valueOf(p.getProperty("count")), mean, error,
+			Double.valueOf(p.getProperty("mean.costheta")), Double.valueOf(p.getProperty("error.costheta")),
+			Double.valueOf(p.getProperty("bimodality")), histogram, p.getProperty("trajectory"));
+	}
+
+	@Override
+	public String toString() {
+		return "samples = " + this.count
+			+ "\n<z> = " + this.mean[0] + " +- " + this.error[0]
+			+ "\n<theta> = " + this.mean[1] + " +- " + this.error[1]
+			+ "\n<cos(theta)> = " + this.meanCostheta + " +- " + this.errorCostheta
+			+ "\n<energy> = " + this.mean[2] + " +- " + this.error[2]
+			+ "\nbimodality = " + this.bimodality;
+	}
+
+}
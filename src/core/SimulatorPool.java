@@ -0,0 +1,127 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Function;
+
+/**
+ * Pool of warm simulation engines, by geometry, shared between threads. An engine is borrowed reset to
+ * the requested parameters and given back when done; borrowing reuses an idle engine of the same geometry,
+ * or copies the grid of one with the same geometry, so that the grid is built only once per geometry.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class SimulatorPool {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final int DEFAULTIDLE = 8;	// idle engines kept for each geometry
+
+	private final int maxidle;
+	private final ConcurrentHashMap<String, ConcurrentLinkedDeque<SimulationEngine>> idle = new ConcurrentHashMap<String, ConcurrentLinkedDeque<SimulationEngine>>();
+
+	/**
+	 * Engines whose grids are copied, by geometry; they are never borrowed
+	 */
+	private final ConcurrentHashMap<String, SimulationEngine> prototypes = new ConcurrentHashMap<String, SimulationEngine>();
+
+	// CONSTRUCTORS
+
+	public SimulatorPool() {
+		this(DEFAULTIDLE);
+	}
+
+	/**
+	 * Create a pool
+	 *
+	 * @param maxidle	idle engines kept for each geometry; the others are discarded when given back
+	 */
+	public SimulatorPool(int maxidle) {
+		this.maxidle = maxidle;
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Number of geometries seen by the pool
+	 */
+	public int getGeometries() { return this.prototypes.size(); }
+
+	/**
+	 * Number of idle engines
+	 */
+	public int getIdle() {
+		int n = 0;
+		for(ConcurrentLinkedDeque<SimulationEngine> q : this.idle.values()) n += q.size();
+		return n;
+	}
+
+	// COMPUTES
+
+	/**
+	 * Build in advance the engines for some parameters
+	 *
+	 * @param p	parameters of the simulations
+	 * @param n	number of engines
+	 */
+	public void prewarm(SimulationParameters p, int n) {
+		SimulationEngine[] engines = new SimulationEngine[n];
+		for(int i=0; i<n; i++) engines[i] = this.borrow(p);
+		for(int i=0; i<n; i++) this.release(engines[i]);
+	}
+
+	/**
+	 * Borrow an engine, reset to the initial state of a simulation
+	 *
+	 * @param p	parameters of the simulation
+	 * @return the engine, to be given back with release
+	 */
+	public SimulationEngine borrow(SimulationParameters p) {
+		ConcurrentLinkedDeque<SimulationEngine> q = this.idle.get(p.geometry());
+		SimulationEngine engine = (q==null) ? null : q.pollFirst();
+		if(engine!=null) {
+			engine.reset(p);
+			return engine;
+		}
+		SimulationEngine prototype = this.prototypes.computeIfAbsent(p.geometry(), g -> new SimulationEngine(p));
+		return new SimulationEngine(prototype, p);
+	}
+
+	/**
+	 * Give back a borrowed engine
+	 */
+	public void release(SimulationEngine engine) {
+		ConcurrentLinkedDeque<SimulationEngine> q = this.idle.computeIfAbsent(engine.getParameters().geometry(), g -> new ConcurrentLinkedDeque<SimulationEngine>());
+		if(q.size()<this.maxidle) q.offerFirst(engine);	// the most recently used engine is the warmest
+	}
+
+	/**
+	 * Run a task with a borrowed engine, giving it back at the end
+	 *
+	 * @param p		parameters of the simulation
+	 * @param task	what to do with the engine
+	 * @return the result of the task
+	 */
+	public <T> T apply(SimulationParameters p, Function<SimulationEngine, T> task) {
+		SimulationEngine engine = this.borrow(p);
+		try {
+			return task.apply(engine);
+		}
+		finally {
+			this.release(engine);
+		}
+	}
+
+	/**
+	 * Run a whole simulation with a borrowed engine
+	 *
+	 * @param p	parameters of the simulation
+	 * @return the summary of the collected samples
+	 */
+	public SimulationSummary run(SimulationParameters p) {
+		return this.apply(p, SimulationEngine::run);
+	}
+
+}
@@ -0,0 +1,214 @@
+/**
+ * Interface of a spherical droplet of radius |R|, centered at (0,0,R), so that it is tangent to the plane z = 0
+ * at the origin: for R > 0 the droplet is of oil, for R < 0 it is of water, and in both cases the oil is above
+ * the interface near the origin, as for PlanarInterface, which is the limit of large |R|.
+ *
+ * A point p is in oil if sign(R) (R^2 - |p - C|^2) > 0; for the points g of the surface of an ellipsoid with
+ * center c and rotation R, |p - C|^2 = |c - C|^2 + 2 (R^T (c - C)).g + |g|^2, which is a classifier with the
+ * same cost per point as the planar one.
+ *
+ * The area of the sphere inside the ellipsoid is computed in the frame of the ellipsoid, in polar coordinates
+ * (theta, phi) on the sphere around a point S inside the intersection: for each phi, the angle theta(phi)
+ * at which the great circle from S leaves the ellipsoid solves Q(theta) = 1, where Q is the quadratic form
+ * of the ellipsoid, a trigonometric polynomial of degree 2 in theta, found by Newton's method on the arc length
+ * safeguarded by bisection; then
+ *
+ *   Si = R^2 int_0^2pi ( 1 - cos theta(phi) ) dphi,
+ *
+ * whose periodic integrand is smooth, so the trapezoidal rule on NPHI points converges exponentially.
+ * S is the point of the sphere deepest in the ellipsoid, so the area is zero if S is outside; the integral
+ * assumes that the intersection is star-shaped around S, which holds for ellipsoids smaller than the droplet.
+ * The cost is about 25 microseconds per call, a few percent of a serial MC step with the default grid.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class SphericalInterface implements InterfaceGeometry {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	private static final int DIM = JanusEllipsoid.DIM;
+	private static final int NPHI = 64;	// points of the integral over phi
+	private static final int MAXITER = 100;	// iterations of the searches of theta and of S
+	private static final double TOL = 1e-13;	// relative tolerance of the searches
+	private static final double[] COSPHI = new double[NPHI], SINPHI = new double[NPHI];
+	static {
+		for(int k=0; k<NPHI; k++) {
+			COSPHI[k] = Math.cos(2.*Math.PI*k/NPHI);
+			SINPHI[k] = Math.sin(2.*Math.PI*k/NPHI);
+		}
+	}
+
+	private final double radius;	// signed radius of the droplet, positive for oil in water
+
+	// CONSTRUCTORS
+
+	/**
+	 * Standard constructor
+	 *
+	 * @param radius	radius of the droplet, positive for a droplet of oil and negative for a droplet of water
+	 * @throws IllegalArgumentException if the radius is zero or not finite
+	 */
+	public SphericalInterface(double radius) {
+		if(radius==0. || !Double.isFinite(radius)) throw new IllegalArgumentException("the radius of the droplet must be finite and not zero");
+		this.radius = radius;
+	}
+
+	// ACCESSORS
+
+	public double getRadius() { return this.radius; }
+
+	@Override
+	public String toString() { return "sphere of radius " + this.radius; }
+
+	// COMPUTES
+
+	/**
+	 * R^2 - |p - C|^2 = z (2R - z) - x^2 - y^2, which has no cancellation for large R
+	 */
+	@Override
+	public boolean inOil(double x, double y, double z) {
+		return Math.signum(this.radius)*(z*(2.*this.radius - z) - x*x - y*y) > 0.;
+	}
+
+	/**
+	 * The classifier is divided by 2|R|, so that it tends to the planar one for large |R|
+	 */
+	@Override
+	public void classifier(double cx, double cy, double cz, double[] rot, double[] c) {
+		double s = Math.signum(this.radius), scale = 0.5/Math.abs(this.radius);
+		double vz = cz - this.radius;	// c - C
+		double ux = cx*rot[0] + cy*rot[3] + vz*rot[6];	// R^T (c - C)
+		double uy = cx*rot[1] + cy*rot[4] + vz*rot[7];
+		double uz = cx*rot[2] + cy*rot[5] + vz*rot[8];
+		c[0] = -2.*s*scale*ux;
+		c[1] = -2.*s*scale*uy;
+		c[2] = -2.*s*scale*uz;
+		c[3] = s*scale*(cz*(2.*this.radius - cz) - cx*cx - cy*cy);
+		c[4] = -s*scale;
+	}
+
+	@Override
+	public double excludedArea(double cx, double cy, double cz, double[] rot, Vector3d axis) {
+		double rs = Math.abs(this.radius);
+		double wx = 1./(axis.a[0]*axis.a[0]), wy = 1./(axis.a[1]*axis.a[1]), wz = 1./(axis.a[2]*axis.a[2]);	// quadratic form of the ellipsoid
+		double lmax = Math.max(axis.a[0], Math.max(axis.a[1], axis.a[2]));
+		// center of the sphere in the frame of the ellipsoid, R^T (C - c)
+		double vz = this.radius - cz;
+		double ax = -cx*rot[0] - cy*rot[3] + vz*rot[6];
+		double ay = -cx*rot[1] - cy*rot[4] + vz*rot[7];
+		double az = -cx*rot[2] - cy*rot[5] + vz*rot[8];
+		double rho = Math.sqrt(ax*ax + ay*ay + az*az);
+		if(rho>=rs+lmax || rho<=rs-lmax) return 0.;	// the ellipsoid is all outside or all inside the sphere
+		// point S of the sphere deepest in the ellipsoid
+		double[] y = new double[2*DIM];
+		deepest(ax, ay, az, wx, wy, wz, rs, y);
+		double sx = y[0]/rs, sy = y[1]/rs, sz = y[2]/rs;
+		double px = y[3], py = y[4], pz = y[5];
+		if(wx*px*px + wy*py*py + wz*pz*pz>=1.) return 0.;	// the sphere does not cut the ellipsoid
+		// orthonormal basis e1, e2 of the plane perpendicular to s
+		double e1x, e1y, e1z;
+		if(Math.abs(sx)<=Math.abs(sy) && Math.abs(sx)<=Math.abs(sz)) { e1x = 0.; e1y = sz; e1z = -sy; }
+		else if(Math.abs(sy)<=Math.abs(sz))                          { e1x = -sz; e1y = 0.; e1z = sx; }
+		else                                                         { e1x = sy; e1y = -sx; e1z = 0.; }
+		double norm = Math.sqrt(e1x*e1x + e1y*e1y + e1z*e1z);
+		e1x /= norm; e1y /= norm; e1z /= norm;
+		double e2x = sy*e1z - sz*e1y, e2y = sz*e1x - sx*e1z, e2z = sx*e1y - sy*e1x;
+		// products of S, s, e1, e2 with the quadratic form
+		double q0  = wx*px*px   + wy*py*py   + wz*pz*pz;
+		double bs  = wx*px*sx   + wy*py*sy   + wz*pz*sz;
+		double b1  = wx*px*e1x  + wy*py*e1y  + wz*pz*e1z;
+		double b2  = wx*px*e2x  + wy*py*e2y  + wz*pz*e2z;
+		double ss  = wx*sx*sx   + wy*sy*sy   + wz*sz*sz;
+		double s1  = wx*sx*e1x  + wy*sy*e1y  + wz*sz*e1z;
+		double s2  = wx*sx*e2x  + wy*sy*e2y  + wz*sz*e2z;
+		double q11 = wx*e1x*e1x + wy*e1y*e1y + wz*e1z*e1z;
+		double q22 = wx*e2x*e2x + wy*e2y*e2y + wz*e2z*e2z;
+		double q12 = wx*e1x*e2x + wy*e1y*e2y + wz*e1z*e2z;
+		// on the great circle of direction u, the point at arc length t = rs theta from S is S + c1 s + c2 u, with
+		// c1 = rs (cos theta - 1) and c2 = rs sin theta, so Q = q0 + 2 c1 bs + 2 c2 bu + c1^2 ss + c2^2 uu + 2 c1 c2 su,
+		// which has no cancellation even for droplets much larger than the ellipsoid
+		double tmax = rs*((lmax>=rs) ? Math.PI : 2.*Math.asin(lmax/rs));	// beyond, the chord from S is longer than the ellipsoid
+		double sum = 0., t = 0.5*tmax;
+		for(int j=0; j<NPHI; j++) {
+			double cp = COSPHI[j], sp = SINPHI[j];
+			double bu = cp*b1 + sp*b2;
+			double uu = cp*cp*q11 + sp*sp*q22 + 2.*cp*sp*q12;
+			double su = cp*s1 + sp*s2;
+			double lo = 0., hi = tmax;
+			double h = Math.sin(0.5*tmax/rs), c1 = -2.*rs*h*h, c2 = rs*Math.sin(tmax/rs);
+			if(q0 + 2.*c1*bs + 2.*c2*bu + c1*c1*ss + c2*c2*uu + 2.*c1*c2*su<1.) t = hi;	// the great circle never leaves the ellipsoid
+			else {
+				if(!(t>lo && t<hi)) t = 0.5*(lo+hi);
+				for(int iter=0; iter<MAXITER; iter++) {
+					h  = Math.sin(0.5*t/rs);
+					c1 = -2.*rs*h*h;
+					c2 = rs*Math.sin(t/rs);
+					double f  = q0 + 2.*c1*bs + 2.*c2*bu + c1*c1*ss + c2*c2*uu + 2.*c1*c2*su - 1.;
+					// dc1/dt = -c2/rs, dc2/dt = 1 + c1/rs
+					double d1 = -c2/rs, d2 = 1. + c1/rs;
+					double df = 2.*(d1*bs + d2*bu + c1*d1*ss + c2*d2*uu + (d1*c2 + c1*d2)*su);
+					if(f<0.) lo = t;
+					else     hi = t;
+					double step = f/df;
+					if(Math.abs(step)<TOL*lmax) { t -= step; break; }
+					t -= step;
+					if(!(t>lo && t<hi)) t = 0.5*(lo+hi);	// Newton left the bracket
+				}
+			}
+			h = Math.sin(0.5*t/rs);
+			sum += 2.*h*h;	// 1 - cos(theta)
+		}
+		return rs*rs*2.*Math.PI*sum/NPHI;
+	}
+
+	/**
+	 * Point S of the sphere of center A and radius rs where the quadratic form Q(x) = sum w_i x_i^2 is minimum:
+	 * minimising (A + y)^T W (A + y) with |y| = rs gives y_i = -w_i A_i / (w_i + nu), where nu > -min(w) solves |y(nu)| = rs,
+	 * found by Newton's method on 1/|y(nu)| - 1/rs, which is almost linear, safeguarded by bisection;
+	 * then S_i = A_i nu / (w_i + nu), without the cancellation of A + y for large spheres
+	 *
+	 * @param out	array where to store y and S
+	 */
+	private static void deepest(double ax, double ay, double az, double wx, double wy, double wz, double rs, double[] out) {
+		double[] w = { wx, wy, wz }, g = { wx*ax, wy*ay, wz*az };
+		int imin = 0;	// longest axis of the ellipsoid
+		for(int i=1; i<DIM; i++) if(w[i]<w[imin]) imin = i;
+		double gnorm = Math.sqrt(g[0]*g[0] + g[1]*g[1] + g[2]*g[2]);
+		double lo = -w[imin], hi = gnorm/rs - w[imin];	// |y(lo)| is infinite, |y(hi)| <= rs
+		double nu = hi;
+		for(int iter=0; iter<MAXITER && gnorm>0.; iter++) {
+			double y2 = 0., dy2 = 0.;
+			for(int i=0; i<DIM; i++) {
+				double d = w[i] + nu;
+				if(g[i]==0.) continue;
+				y2  += g[i]*g[i]/(d*d);
+				dy2 += g[i]*g[i]/(d*d*d);
+			}
+			double ynorm = Math.sqrt(y2);
+			double f = 1./ynorm - 1./rs;
+			if(f<0.) lo = nu;
+			else     hi = nu;
+			double step = f*y2*ynorm/dy2;
+			if(Math.abs(step)<=TOL*Math.abs(nu)) { nu -= step; break; }
+			nu -= step;
+			if(!(nu>lo && nu<hi)) nu = 0.5*(lo+hi);	// Newton left the bracket
+		}
+		double[] a = { ax, ay, az };
+		double y2 = 0.;
+		for(int i=0; i<DIM; i++) {
+			out[i] = (g[i]==0.) ? 0. : -g[i]/(w[i]+nu);
+			out[DIM+i] = (g[i]==0.) ? 0. : a[i]*nu/(w[i]+nu);
+			y2 += out[i]*out[i];
+		}
+		if(y2<rs*rs) {	// A is on a plane of symmetry, and the rest of y is along the longest axis
+			double t = Math.sqrt(rs*rs - y2 + out[imin]*out[imin]);
+			out[imin] = (out[imin]<0.) ? -t : t;
+			out[DIM+imin] = a[imin] + out[imin];
+		}
+	}
+
+}
@@ -0,0 +1,271 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Adaptive search of the orientational phase transition of a Janus ellipsoid along one parameter.
+ * Short simulations are run on a coarse grid of values of the parameter, and the intervals where
+ * the order parameter crosses the midpoint between its extreme values are bisected, with all the
+ * simulations of a refinement level running concurrently. Optionally, the search is repeated for
+ * several values of a second parameter, which gives the transition line.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class TransitionLocator {
+
+	// STATE
+
+	/**
+	 * Order parameters
+	 */
+	public static final String COSTHETA = "costheta";	// mean cos(theta) of the polar axis
+	public static final String BIMODALITY = "bimodality";	// bimodality coefficient of the distribution of theta
+
+	/**
+	 * Order parameter measured at a value of the scanned parameter, with its error
+	 */
+	public static class Point {
+		public double x, order, error;
+	}
+
+	/**
+	 * Location of a transition, with its confidence interval
+	 */
+	public static class Transition {
+		public double x, xlow, xhigh;
+	}
+
+	/**
+	 * Settings of the search
+	 */
+	private SimulationParameters base;	// parameters of the simulations, except the scanned one
+	private String parameter;	// name of the scanned parameter
+	private String order = COSTHETA;	// order parameter
+	private double nsigma = 2.;	// width of the confidence intervals, in standard errors
+	private ExecutorService pool;	// threads running the simulations
+	private ResultStore store = null;	// store of the results of previous simulations, if any
+
+	/**
+	 * Order parameter at the values of the scanned parameter computed so far
+	 */
+	private TreeMap<Double, Point> points = new TreeMap<Double, Point>();
+
+	// CONSTRUCTORS
+
+	/**
+	 * Standard constructor
+	 *
+	 * @param base		parameters of the simulations
+	 * @param parameter	name of the scanned parameter, as in <code>SimulationParameters.with</code>
+	 * @param pool		threads running the simulations
+	 */
+	public TransitionLocator(SimulationParameters base, String parameter, ExecutorService pool) {
+		this.base = base;
+		this.parameter = parameter;
+		this.pool = pool;
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Setters
+	 */
+	public void setOrder(String order)    { this.order = order; }
+	public void setStore(ResultStore store) { this.store = store; }
+	public void setNsigma(double nsigma)  { this.nsigma = nsigma; }
+
+	/**
+	 * Getters
+	 */
+	public List<Point> getPoints() { return new ArrayList<Point>(this.points.values()); }
+
+	// COMPUTES
+
+	/**
+	 * Run the simulations at the given values of the scanned parameter concurrently,
+	 * and add the results to the points computed so far; simulations already in the store are not run again
+	 */
+	private void evaluate(List<Double> xs) throws InterruptedException, ExecutionException {
+		List<Future<Point>> futures = new ArrayList<Future<Point>>();
+		for(final double x : xs) {
+			futures.add(this.pool.submit(() -> {
+				SimulationParameters p = this.base.with(this.parameter, x);
+				SimulationSummary stats = (this.store!=null) ? this.store.run(p) : SimulationStatistics.run(p).summary();
+				Point pt = new Point();
+				pt.x = x;
+				if(this.order.equals(BIMODALITY)) {
+					pt.order = stats.getBimodality();
+					pt.error = 0.;	// no error estimate for the bimodality
+				}
+				else {
+					pt.order = stats.getMeanCostheta();
+					pt.error = stats.getErrorCostheta();
+				}
+				return pt;
+			}));
+		}
+		for(Future<Point> f : futures) {
+			Point p = f.get();
+			this.points.put(p.x, p);
+		}
+	}
+
+	/**
+	 * Midpoint between the extreme values of the order parameter
+	 */
+	private double threshold() {
+		double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+		for(Point p : this.points.values()) {
+			min = Math.min(min, p.order);
+			max = Math.max(max, p.order);
+		}
+		return 0.5*(min+max);
+	}
+
+	/**
+	 * Whether the threshold may be crossed between two points, within their errors
+	 */
+	private boolean brackets(Point a, Point b, double threshold) {
+		double alow = a.order - this.nsigma*a.error, ahigh = a.order + this.nsigma*a.error;
+		double blow = b.order - this.nsigma*b.error, bhigh = b.order + this.nsigma*b.error;
+		return (Math.min(alow, blow) <= threshold) && (Math.max(ahigh, bhigh) >= threshold);
+	}
+
+	/**
+	 * Locate the transitions
+	 *
+	 * @param xmin		minimum value of the scanned parameter
+	 * @param xmax		maximum value of the scanned parameter
+	 * @param ninitial	number of points of the initial coarse grid
+	 * @param tolerance	stop refining intervals narrower than this
+	 * @return the transitions found, each one with its confidence interval
+	 * @throws IllegalArgumentException if the initial grid has fewer than 2 points
+	 */
+	public List<Transition> locate(double xmin, double xmax, int ninitial, double tolerance) throws InterruptedException, ExecutionException {
+		if(ninitial<2) throw new IllegalArgumentException("the initial grid needs at least 2 points");
+		this.points.clear();
+		List<Double> xs = new ArrayList<Double>();
+		for(int i=0; i<ninitial; i++) xs.add(xmin + (xmax-xmin)*i/(ninitial-1));
+		this.evaluate(xs);
+		// refine the intervals that may contain the crossing, until they are narrow enough
+		for(;;) {
+			double threshold = this.threshold();
+			xs.clear();
+			Map.Entry<Double, Point> prev = null;
+			for(Map.Entry<Double, Point> e : this.points.entrySet()) {
+				if(prev!=null && e.getKey()-prev.getKey()>tolerance && this.brackets(prev.getValue(), e.getValue(), threshold)) {
+					xs.add(0.5*(prev.getKey()+e.getKey()));
+				}
+				prev = e;
+			}
+			if(xs.isEmpty()) break;
+			this.evaluate(xs);
+		}
+		// each run of adjacent intervals that may contain the crossing is a transition: its confidence interval
+		// is the union of the intervals, and the estimate is the crossing of the steepest of them
+		double threshold = this.threshold();
+		List<Transition> transitions = new ArrayList<Transition>();
+		Transition t = null;
+		double steepest = -1.;
+		Point prev = null;
+		for(Point p : this.points.values()) {
+			if(prev!=null && this.brackets(prev, p, threshold)) {
+				if(t==null) {
+					t = new Transition();
+					t.xlow = prev.x;
+					steepest = -1.;
+					transitions.add(t);
+				}
+				t.xhigh = p.x;
+				double slope = Math.abs(p.order-prev.order)/(p.x-prev.x);
+				if(slope>steepest) {
+					steepest = slope;
+					t.x = (p.order!=prev.order) ? prev.x + (threshold-prev.order)*(p.x-prev.x)/(p.order-prev.order) : 0.5*(prev.x+p.x);
+					t.x = Math.max(prev.x, Math.min(p.x, t.x));
+				}
+			}
+			else t = null;
+			prev = p;
+		}
+		return transitions;
+	}
+
+	//   MAIN METHOD
+
+	/**
+	 * Main method
+	 */
+	public static void main(String args[]) {
+
+		String parameter = "alpha";
+		double xmin = 0., xmax = 180.;
+		int ninitial = 7;
+		double tolerance = 1.;
+		String order = COSTHETA;
+		String cache = null;
+		int nthreads = Runtime.getRuntime().availableProcessors();
+		String lineParameter = null;
+		List<Double> lineValues = new ArrayList<Double>();
+		// short simulations by default
+		SimulationParameters base = new SimulationParameters().with("nsteps", 1000).with("nequil", 100);
+
+		// parse command line arguments; the simulation parameters are the same as for JanusEllipsoid
+		System.out.println("# Usage: java TransitionLocator [-scan name min max] [-ninitial val] [-tolerance val] [-order costheta|bimodality] [-threads val] [-cache dir] [-line name v1,v2,...] [simulation parameters as in JanusEllipsoid]");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-scan") )      { parameter = args[i+1]; xmin = Double.valueOf(args[i+2]); xmax = Double.valueOf(args[i+3]); }
+				if( args[i].equals("-ninitial") )  { ninitial = Integer.valueOf(args[i+1]); if(ninitial<2) throw new IllegalArgumentException(); }
+				if( args[i].equals("-tolerance") ) tolerance = Double.valueOf(args[i+1]);
+				if( args[i].equals("-order") )     order = args[i+1];
+				if( args[i].equals("-cache") )     cache = args[i+1];
+				if( args[i].equals("-threads") )   nthreads = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-line") ) {
+					lineParameter = args[i+1];
+					for(String v : args[i+2].split(",")) lineValues.add(Double.valueOf(v));
+				}
+			}
+			base = base.with(args);
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+		if(lineParameter==null) lineValues.add(Double.NaN);
+
+		System.out.print("# Generated by: java TransitionLocator");
+		for(int i=0; i<args.length; i++) System.out.print( " " + args[i] );
+		System.out.println("");
+		System.out.println("# parameters: " + base );
+		System.out.println("# scan " + parameter + " in [" + xmin + ", " + xmax + "], order parameter " + order );
+
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		try {
+			ResultStore store = (cache!=null) ? new ResultStore(cache) : null;
+			List<String> summary = new ArrayList<String>();
+			for(double v : lineValues) {
+				SimulationParameters p = (lineParameter==null) ? base : base.with(lineParameter, v);
+				TransitionLocator locator = new TransitionLocator(p, parameter, pool);
+				locator.setOrder(order);
+				locator.setStore(store);
+				long startTime = System.currentTimeMillis();
+				List<Transition> transitions = locator.locate(xmin, xmax, ninitial, tolerance);
+				long endTime = System.currentTimeMillis();
+				if(lineParameter!=null) System.out.println("# " + lineParameter + " = " + v );
+				System.out.println("# " + locator.getPoints().size() + " simulations in " + (endTime - startTime) + " ms");
+				System.out.println("# " + parameter + " order error");
+				for(Point pt : locator.getPoints()) System.out.printf("%f\t%f\t%f\n", pt.x, pt.order, pt.error);
+				System.out.println("");
+				System.out.println("");
+				for(Transition t : transitions) summary.add(String.format("%s\t%f\t%f\t%f", (lineParameter==null) ? "-" : Double.toString(v), t.x, t.xlow, t.xhigh));
+			}
+			System.out.println("# transition: " + ((lineParameter==null) ? "-" : lineParameter) + " " + parameter + " low high");
+			for(String s : summary) System.out.println(s);
+		}
+		catch(Exception e) { System.out.println("# Error: " + e); System.exit(-1); }
+		finally { pool.shutdown(); }
+
+	}
+}
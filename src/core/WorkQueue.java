@@ -0,0 +1,403 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of simulations of a Janus ellipsoid in a directory, shared by worker processes that can run
+ * in several JVMs on one machine, or on several machines sharing the filesystem. A job is a file that moves
+ * between the subdirectories pending, leased, done and failed; moves are atomic renames, so a job is claimed
+ * by exactly one worker. While it runs a job, a worker touches its file, and a job whose file has not been touched
+ * for longer than the lease is put back in pending, so the jobs of a worker that died are run again.
+ * Every claim is recorded in attempts, and a job that has been claimed too many times is moved to failed.
+ * Results are kept in a <code>ResultStore</code> in the subdirectory results, which is also used to avoid
+ * running twice a simulation that was already done, even if a worker whose lease expired finishes it late.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class WorkQueue {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final String PENDING = "pending", LEASED = "leased", DONE = "done", FAILED = "failed", ATTEMPTS = "attempts", RESULTS = "results", LOGS = "logs";
+	public static final double DEFAULTLEASE = 60.;	// seconds after which a job that is not touched is run again
+	public static final int DEFAULTMAXATTEMPTS = 3;	// claims of a job before it fails
+
+	private final Path dir;	// directory of the queue
+	private final ResultStore store;	// results of the jobs
+	private double lease = DEFAULTLEASE;
+	private int maxattempts = DEFAULTMAXATTEMPTS;
+
+	// CONSTRUCTORS
+
+	/**
+	 * Open a queue, creating its directories if needed
+	 *
+	 * @param dir	directory of the queue
+	 */
+	public WorkQueue(String dir) throws IOException {
+		this.dir = Paths.get(dir);
+		for(String sub : new String[] { PENDING, LEASED, DONE, FAILED, ATTEMPTS, LOGS }) Files.createDirectories(this.dir.resolve(sub));
+		this.store = new ResultStore(this.dir.resolve(RESULTS).toString());
+	}
+
+	// ACCESSORS
+
+	public void setLease(double seconds)   { this.lease = seconds; }
+	public void setMaxAttempts(int n)      { this.maxattempts = n; }
+	public ResultStore getStore()          { return this.store; }
+
+	/**
+	 * File of a job in a state
+	 */
+	private Path file(String state, String key) {
+		return this.dir.resolve(state).resolve(key + ".job");
+	}
+
+	/**
+	 * Keys of the jobs in a state
+	 */
+	public List<String> list(String state) throws IOException {
+		List<String> keys = new ArrayList<String>();
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(this.dir.resolve(state), "*.job")) {
+			for(Path f : files) {
+				String name = f.getFileName().toString();
+				keys.add(name.substring(0, name.length()-4));
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Read a job
+	 *
+	 * @return the properties of the job: parameters and label, or null if it is not in that state any more
+	 */
+	private Properties read(String state, String key) throws IOException {
+		Properties job = new Properties();
+		try(InputStream in = Files.newInputStream(this.file(state, key))) {
+			job.load(in);
+		}
+		catch(NoSuchFileException e) { return null; }
+		return job;
+	}
+
+	/**
+	 * Rename atomically, if the filesystem allows it
+	 */
+	private static void move(Path from, Path to) throws IOException {
+		try {
+			Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(AtomicMoveNotSupportedException e) {
+			Files.move(from, to);
+		}
+	}
+
+	// COORDINATION
+
+	/**
+	 * Submit a simulation, unless it is already in the queue or in the store
+	 *
+	 * @param p		parameters of the simulation
+	 * @param label	description of the job, such as the values of the scanned parameters
+	 * @return whether the job was added
+	 */
+	public boolean submit(SimulationParameters p, String label) throws IOException {
+		String key = ResultStore.key(p);
+		for(String state : new String[] { PENDING, LEASED, DONE, FAILED }) {
+			if(Files.exists(this.file(state, key))) return false;
+		}
+		if(this.store.get(p)!=null) return false;
+		Properties job = new Properties();
+		job.setProperty("parameters", p.canonical());
+		job.setProperty("label", label);
+		Path tmp = Files.createTempFile(this.dir.resolve(PENDING), key, ".tmp");
+		try {
+			try(OutputStream out = Files.newOutputStream(tmp)) {
+				job.store(out, p.toString());
+			}
+			move(tmp, this.file(PENDING, key));
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+		return true;
+	}
+
+	/**
+	 * Put back in pending the leased jobs whose lease has expired
+	 *
+	 * @return the number of jobs put back
+	 */
+	public int reap() throws IOException {
+		int n = 0;
+		long now = System.currentTimeMillis();
+		for(String key : this.list(LEASED)) {
+			Path f = this.file(LEASED, key);
+			try {
+				if(now - Files.getLastModifiedTime(f).toMillis() < 1000*this.lease) continue;
+				move(f, this.file(PENDING, key));	// only one of the reapers succeeds
+				n++;
+			}
+			catch(NoSuchFileException e) { /* finished or reaped meanwhile */ }
+		}
+		return n;
+	}
+
+	/**
+	 * Claim a pending job
+	 *
+	 * @param worker	name of the worker, recorded in the attempts
+	 * @return the key of the job, or null if there are no pending jobs
+	 */
+	public String claim(String worker) throws IOException {
+		for(String key : this.list(PENDING)) {
+			Path f = this.file(PENDING, key);
+			try {
+				Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis()));	// the lease starts now
+				move(f, this.file(LEASED, key));
+			}
+			catch(NoSuchFileException e) { continue; }	// claimed by another worker
+			Path attempts = this.dir.resolve(ATTEMPTS).resolve(key);
+			Files.write(attempts, (worker + " " + System.currentTimeMillis() + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			if(Files.readAllLines(attempts).size() > this.maxattempts) {
+				try { move(this.file(LEASED, key), this.file(FAILED, key)); }
+				catch(NoSuchFileException e) { /* reaped meanwhile */ }
+				continue;
+			}
+			return key;
+		}
+		return null;
+	}
+
+	/**
+	 * Run a claimed job, touching its file until it is done, and move it to done
+	 *
+	 * @param key		key of the job
+	 * @param heartbeat	thread that touches the file
+	 */
+	public void run(String key, ScheduledExecutorService heartbeat) throws IOException {
+		Properties job = this.read(LEASED, key);
+		if(job==null) return;	// reaped meanwhile, someone else will run it
+		SimulationParameters p = SimulationParameters.parse(job.getProperty("parameters"));
+		Path f = this.file(LEASED, key);
+		long period = Math.max(1, (long)(250*this.lease));	// four touches per lease
+		ScheduledFuture<?> touch = heartbeat.scheduleAtFixedRate(() -> {
+			try { Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis())); }
+			catch(IOException e) { /* the lease was lost, the result is still useful */ }
+		}, period, period, TimeUnit.MILLISECONDS);
+		try {
+			if(this.store.get(p)==null) this.store.put(p, SimulationStatistics.run(p).summary());
+		}
+		finally {
+			touch.cancel(false);
+		}
+		try { move(f, this.file(DONE, key)); }
+		catch(NoSuchFileException e) {	// reaped while running: the result is stored, so the job is done wherever it is
+			try { move(this.file(PENDING, key), this.file(DONE, key)); }
+			catch(NoSuchFileException e2) { /* claimed again, the next run will find the result in the store */ }
+		}
+	}
+
+	/**
+	 * Work until there are no more jobs, pending or leased
+	 *
+	 * @param worker	name of the worker
+	 * @param wait		whether to wait for new jobs when the queue is empty
+	 */
+	public void work(String worker, boolean wait) throws IOException, InterruptedException {
+		ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> { Thread t = new Thread(r); t.setDaemon(true); return t; });
+		try {
+			while(true) {
+				this.reap();
+				String key = this.claim(worker);
+				if(key!=null) {
+					System.out.println("# " + worker + " running " + key);
+					this.run(key, heartbeat);
+					continue;
+				}
+				if(!wait && this.list(LEASED).isEmpty()) return;
+				Thread.sleep((long)Math.min(1000., 250.*this.lease));	// leased jobs may come back
+			}
+		}
+		finally {
+			heartbeat.shutdownNow();
+		}
+	}
+
+	/**
+	 * Run worker processes until all the jobs are done or failed, starting new ones when they die
+	 *
+	 * @param nworkers	number of workers
+	 * @param jvmargs	options of the JVMs of the workers, such as -Xmx
+	 */
+	public void coordinate(int nworkers, List<String> jvmargs) throws IOException, InterruptedException {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		Process[] workers = new Process[nworkers];
+		int started = 0;
+		while(true) {
+			int reaped = this.reap();
+			int pending = this.list(PENDING).size(), leased = this.list(LEASED).size();
+			if(reaped>0) System.out.println("# " + reaped + " expired leases");
+			if(pending==0 && leased==0) break;
+			for(int w=0; w<nworkers; w++) {
+				if(workers[w]!=null && workers[w].isAlive()) continue;
+				if(workers[w]!=null) System.out.println("# worker " + w + " exited with code " + workers[w].exitValue());
+				List<String> command = new ArrayList<String>();
+				command.add(java);
+				command.addAll(jvmargs);
+				command.add("-cp");
+				command.add(System.getProperty("java.class.path"));
+				command.add("WorkQueue");
+				command.add("-dir");
+				command.add(this.dir.toString());
+				command.add("-lease");
+				command.add(Double.toString(this.lease));
+				command.add("-maxattempts");
+				command.add(Integer.toString(this.maxattempts));
+				command.add("worker");
+				File log = this.dir.resolve(LOGS).resolve("worker-" + w + ".log").toFile();
+				workers[w] = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.appendTo(log)).start();
+				started++;
+			}
+			System.out.println("# pending = " + pending + ", leased = " + leased + ", done = " + this.list(DONE).size() + ", failed = " + this.list(FAILED).size() + ", workers started = " + started);
+			Thread.sleep((long)Math.min(5000., 500.*this.lease));
+		}
+		for(Process w : workers) if(w!=null) w.waitFor();
+	}
+
+	/**
+	 * Print the results of the jobs that are done, with their labels
+	 */
+	public void printResults() throws IOException {
+		System.out.println("# label <z> err(z) <theta> err(theta) <cos(theta)> err(cos(theta)) <energy> err(energy) bimodality");
+		for(String key : this.list(DONE)) {
+			Properties job = this.read(DONE, key);
+			if(job==null) continue;
+			SimulationSummary s = this.store.get(SimulationParameters.parse(job.getProperty("parameters")));
+			if(s==null) continue;
+			System.out.printf("%s\t%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f\t%f\n", job.getProperty("label"), s.getMean(0), s.getError(0), s.getMean(1), s.getError(1),
+				s.getMeanCostheta(), s.getErrorCostheta(), s.getMean(2), s.getError(2), s.getBimodality());
+		}
+		for(String key : this.list(FAILED)) {
+			Properties job = this.read(FAILED, key);
+			if(job!=null) System.out.println("# failed: " + job.getProperty("label") + " " + key);
+		}
+	}
+
+	//   MAIN METHOD
+
+	/**
+	 * Main method
+	 */
+	public static void main(String args[]) {
+
+		String dir = null;
+		String mode = null;
+		double lease = DEFAULTLEASE;
+		int maxattempts = DEFAULTMAXATTEMPTS;
+		int nworkers = Runtime.getRuntime().availableProcessors();
+		boolean wait = false;
+		List<String> jvmargs = new ArrayList<String>();
+		List<String> scanNames = new ArrayList<String>();
+		List<double[]> scanRanges = new ArrayList<double[]>();
+		// short simulations by default
+		SimulationParameters base = new SimulationParameters().with("nsteps", 1000).with("nequil", 100);
+
+		// parse command line arguments; the simulation parameters are the same as for JanusEllipsoid
+		System.out.println("# Usage: java WorkQueue -dir dir [-lease seconds] [-maxattempts val] submit [-scan name min max n]... [simulation parameters as in JanusEllipsoid] | worker [-wait] | coordinator [-workers val] [-jvm option]... | results");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-dir") )         dir = args[i+1];
+				if( args[i].equals("-lease") )       lease = Double.valueOf(args[i+1]);
+				if( args[i].equals("-maxattempts") ) maxattempts = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-workers") )     nworkers = Integer.valueOf(args[i+1]);
+				if( args[i].equals("-wait") )        wait = true;
+				if( args[i].equals("-jvm") )         jvmargs.add(args[i+1]);
+				if( args[i].equals("-scan") ) {
+					scanNames.add(args[i+1]);
+					scanRanges.add(new double[] { Double.valueOf(args[i+2]), Double.valueOf(args[i+3]), Integer.valueOf(args[i+4]) });
+				}
+				if( args[i].equals("submit") || args[i].equals("worker") || args[i].equals("coordinator") || args[i].equals("results") ) mode = args[i];
+			}
+			base = base.with(args);
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+		if(dir==null || mode==null) { System.out.println("# A directory and a mode are needed"); System.exit(-1); }
+
+		try {
+			WorkQueue queue = new WorkQueue(dir);
+			queue.setLease(lease);
+			queue.setMaxAttempts(maxattempts);
+			switch(mode) {
+				case "submit": {
+					// all the combinations of the scanned parameters
+					List<SimulationParameters> jobs = new ArrayList<SimulationParameters>();
+					List<String> labels = new ArrayList<String>();
+					jobs.add(base);
+					labels.add("");
+					for(int s=0; s<scanNames.size(); s++) {
+						double[] r = scanRanges.get(s);
+						int n = (int)r[2];
+						List<SimulationParameters> next = new ArrayList<SimulationParameters>();
+						List<String> nextLabels = new ArrayList<String>();
+						for(int j=0; j<jobs.size(); j++) {
+							for(int k=0; k<n; k++) {
+								double v = (n>1) ? r[0] + (r[1]-r[0])*k/(n-1) : r[0];
+								next.add(jobs.get(j).with(scanNames.get(s), v));
+								nextLabels.add(labels.get(j) + (labels.get(j).isEmpty() ? "" : ",") + scanNames.get(s) + "=" + v);
+							}
+						}
+						jobs = next;
+						labels = nextLabels;
+					}
+					int added = 0;
+					for(int j=0; j<jobs.size(); j++) if(queue.submit(jobs.get(j), labels.get(j))) added++;
+					System.out.println("# submitted " + added + " of " + jobs.size() + " jobs, the others are already queued or done");
+					break;
+				}
+				case "worker": {
+					String worker = InetAddress.getLocalHost().getHostName() + ":" + ProcessHandle.current().pid();
+					queue.work(worker, wait);
+					break;
+				}
+				case "coordinator": {
+					long startTime = System.currentTimeMillis();
+					queue.coordinate(nworkers, jvmargs);
+					long endTime = System.currentTimeMillis();
+					System.out.println("# finished in " + (endTime - startTime) + " ms");
+					queue.printResults();
+					break;
+				}
+				case "results":
+					queue.printResults();
+					break;
+			}
+		}
+		catch(Exception e) { System.out.println("# Error: " + e); System.exit(-1); }
+
+	}
+}
@@ -0,0 +1,105 @@
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Paces the repaints of a view of a running simulation. The simulation offers its samples from its own thread and never
+ * waits; a Swing timer repaints the view only when a new sample has arrived, and adapts its period to the time
+ * spent painting, so that drawing takes at most a fraction of the Swing thread however fast the simulation runs.
+ * The pacer also measures the throughput of the simulation from the MC time of the samples it shows.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class FramePacer {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final int MINDELAY = 16;	// ms between frames, about 60 fps
+	public static final int MAXDELAY = 250;	// ms between frames, when painting is slow
+	private static final double LOAD = 0.25;	// maximum fraction of the time spent painting
+	private static final double SMOOTHING = 0.1;	// weight of the last measure in the running averages
+
+	private final JComponent view;
+	private final Timer timer;
+	private volatile Sample latest = null;	// last sample offered by the simulation
+
+	/**
+	 * Only used on the Swing thread
+	 */
+	private Sample shown = null;	// sample of the current frame
+	private long shownNanos = 0L;	// when it was shown
+	private double stepsPerSecond = 0., framesPerSecond = 0.;
+
+	// CONSTRUCTORS
+
+	/**
+	 * Create a pacer, stopped
+	 *
+	 * @param view	the view to repaint
+	 */
+	public FramePacer(JComponent view) {
+		this.view = view;
+		this.timer = new Timer(MINDELAY, e -> this.tick());
+		this.timer.setCoalesce(true);
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Offer a new sample; called by any thread, it never blocks
+	 */
+	public void offer(Sample sample) { this.latest = sample; }
+
+	/**
+	 * Sample to draw in the current frame, or null if none has arrived yet
+	 */
+	public Sample getSample()            { return this.shown; }
+	public double getStepsPerSecond()    { return this.stepsPerSecond; }
+	public double getFramesPerSecond()   { return this.framesPerSecond; }
+	public boolean isRunning()           { return this.timer.isRunning(); }
+
+	// COMPUTES
+
+	public void start() {
+		this.shown = null;
+		this.latest = null;
+		this.stepsPerSecond = this.framesPerSecond = 0.;
+		this.timer.setDelay(MINDELAY);
+		this.timer.restart();
+	}
+
+	public void stop() {
+		this.timer.stop();
+	}
+
+	/**
+	 * Repaint if there is a new sample
+	 */
+	private void tick() {
+		Sample sample = this.latest;
+		if(sample==null || sample==this.shown) return;
+		long now = System.nanoTime();
+		if(this.shown!=null) {
+			double dt = 1e-9*(now-this.shownNanos);
+			this.stepsPerSecond += SMOOTHING*((sample.time-this.shown.time)/dt - this.stepsPerSecond);
+			this.framesPerSecond += SMOOTHING*(1./dt - this.framesPerSecond);
+		}
+		this.shown = sample;
+		this.shownNanos = now;
+		this.view.repaint();
+	}
+
+	/**
+	 * Report the time spent painting a frame, to adapt the period of the repaints
+	 *
+	 * @param nanos	time of the last paint
+	 */
+	public void painted(long nanos) {
+		int delay = (int)Math.ceil(1e-6*nanos/LOAD);
+		this.timer.setDelay(Math.max(MINDELAY, Math.min(MAXDELAY, delay)));
+	}
+
+}
@@ -1,4 +1,8 @@
 import java.awt.BorderLayout;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 
 import javax.swing.JFrame;
 
@@ -17,9 +21,9 @@ public class InteractiveJanusEllipsoid extends JFrame {
 	// Current simulation state
 	private JanusEllipsoid je = null;
 	
-	// sigmas for MC dynamics
-	private double sigmadz   = 0.02;
-	private double sigmadphi = 0.02;
+	// sigmas for MC dynamics, read by the background thread at each batch
+	private volatile double sigmadz   = 0.02;
+	private volatile double sigmadphi = 0.02;
 
 	// A local copy of the simulation state: this is needed to avoid concurrency problems
 	public JanusEllipsoid state = new JanusEllipsoid(new Vector3d(1.4,1.4,2.6), Math.PI*0.28, JanusEllipsoid.DEFAULTNGRID, 10, -0.7, 0.5);
@@ -27,10 +31,28 @@ public class InteractiveJanusEllipsoid extends JFrame {
 	// The user interface objects we interact with
 	private InteractiveJanusEllipsoidViewer viewer = new InteractiveJanusEllipsoidViewer(this);
 	private JanusEllipsoidControlPanel  controls   = new JanusEllipsoidControlPanel(this);
+	private LivePlots                   plots      = new LivePlots();
 	
 	// Background thread to run the simulation in
 	private Thread background = null;
 
+	// Samples of the running simulation, for the views; the simulation never waits for them
+	private final SamplePublisher samples = new SamplePublisher();
+	private volatile Sample latest = null;	// most recent sample of the running simulation
+
+	// Changes made by the user while the simulation runs, applied by the background thread between batches of steps
+	private final ConcurrentLinkedQueue<Consumer<JanusEllipsoid>> commands = new ConcurrentLinkedQueue<Consumer<JanusEllipsoid>>();
+
+	// Ellipsoids with the grids of the last geometries, so that going back to one does not build its grid again;
+	// only used on the Swing thread
+	private static final int GRIDCACHE = 16;
+	private final Map<String, JanusEllipsoid> grids = new LinkedHashMap<String, JanusEllipsoid>(GRIDCACHE, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, JanusEllipsoid> eldest) {
+			return size() > GRIDCACHE;
+		}
+	};
+
 	
 	//  CONSTRUCTOR
 	
@@ -52,8 +74,12 @@ public class InteractiveJanusEllipsoid extends JFrame {
 		// Lay out the viewer and controls
 		getContentPane().add(viewer, BorderLayout.CENTER);
 		getContentPane().add(controls, BorderLayout.SOUTH);
+		getContentPane().add(plots, BorderLayout.EAST);
 		pack();
 
+		// Keep only the most recent sample
+		samples.subscribe(sample -> latest = sample, SamplePublisher.Backpressure.SAMPLE, 1);
+
 		// Open the window
 		setVisible(true);
 				
@@ -71,43 +97,56 @@ public class InteractiveJanusEllipsoid extends JFrame {
 	 * 
 	 */
 	public RigidBodyState getRigidBodyState() {
-		// If the simulation is running, we will need to update our local copy of the state
-		if(background != null) {
-			// Obtain the lock on the JanusEllipsoid object to ensure the state is consistent
-			synchronized(je) {
-				state.center = new Vector3d(je.center);
-				state.rot    = new Quaternion(je.rot);
-			}
-		}
+		// If the simulation is running, the most recent sample is the state; samples are immutable, so no lock is needed
+		Sample sample = latest;
+		if(background != null && sample != null) return sample.getRigidBodyState();
 		return new RigidBodyState(state.center, state.rot);
 	}
+
+	/**
+	 * Samples of the simulation, published every 100 MC steps while it runs; views can subscribe
+	 * with the backpressure policy they need
+	 */
+	public SamplePublisher getSamples() {
+		return samples;
+	}
 	
 	/**
-	 * Setters
+	 * Setters: they change the local copy of the state and, if the simulation is running,
+	 * they also send the change to the background thread, which applies it in place
 	 */
 	public void setCenter(Vector3d r) {
-		if(background != null) return;
 		state.center = new Vector3d(r);
+		final Vector3d center = new Vector3d(r);
+		send(sim -> sim.center = center);
 	}
 	public void setRot(Quaternion q) {
-		if(background != null) return;
 		state.rot = new Quaternion(q);
+		final Quaternion rot = new Quaternion(q);
+		send(sim -> sim.rot = rot);
 	}
 	public void setEllipsoid(Vector3d axis, double alpha) {
-		if(background != null) return;
-		state.resetEllipsoid(new Vector3d(axis), alpha, JanusEllipsoid.DEFAULTNGRID);
+		String key = axis.a[0] + "," + axis.a[1] + "," + axis.a[2] + "," + alpha;
+		JanusEllipsoid geometry = grids.get(key);
+		if(geometry == null) {
+			geometry = new JanusEllipsoid(new Vector3d(axis), alpha, JanusEllipsoid.DEFAULTNGRID);
+			grids.put(key, geometry);
+		}
+		state.setGeometry(geometry);
+		final JanusEllipsoid g = geometry;	// the grid is shared with the background thread, which only reads it
+		send(sim -> sim.setGeometry(g));
 	}
 	public void setGamma(double gamma) {
-		if(background != null) return;
 		state.gamma = gamma;
+		send(sim -> sim.gamma = gamma);
 	}
 	public void setCosthetaA(double costhetaA) {
-		if(background != null) return;
 		state.costhetaA = costhetaA;
+		send(sim -> sim.costhetaA = costhetaA);
 	}
 	public void setCosthetaP(double costhetaP) {
-		if(background != null) return;
 		state.costhetaP = costhetaP;
+		send(sim -> sim.costhetaP = costhetaP);
 	}
 	public void setSigmadz(double sigma) {
 		this.sigmadz = sigma;
@@ -126,6 +165,17 @@ public class InteractiveJanusEllipsoid extends JFrame {
 		return sigmadphi;
 	}
 	
+	/**
+	 * Show or hide the plots of the energy, z and theta
+	 */
+	public void setPlotsVisible(boolean visible) {
+		plots.setVisible(visible);
+		pack();
+	}
+	public boolean isPlotsVisible() {
+		return plots.isVisible();
+	}
+
 	/**
 	 * Determine whether the simulation is running or not
 	 * 
@@ -137,6 +187,14 @@ public class InteractiveJanusEllipsoid extends JFrame {
 	
 	//  ACTIONS
 	
+	/**
+	 * Send a change to the running simulation; if it is not running the change is already in the local copy of the state,
+	 * from which the next simulation starts
+	 */
+	private void send(Consumer<JanusEllipsoid> command) {
+		if(background != null) commands.add(command);
+	}
+
 	/** 
 	 * Start running a simulation in the background. Does nothing if the simulation is already running.
 	 */
@@ -145,6 +203,8 @@ public class InteractiveJanusEllipsoid extends JFrame {
 		if(background != null) return;
 		// Set up a new simulation with the desired initial condition (since this may be different from the state in which the last simulation ended)
 		je = new JanusEllipsoid(state);
+		latest = null;
+		commands.clear();	// already in the state
 		// Run it in a new background thread
 		background = new Thread() {
 			@Override
@@ -157,15 +217,20 @@ public class InteractiveJanusEllipsoid extends JFrame {
 						// Inform the view objects that the simulation has started
 						controls.simulationStarted();
 						viewer.simulationStarted();
+						plots.simulationStarted(samples);
 					}
 				});
 
 				// Repeatedly iterate the equations of motion until the thread is interrupted
+				long step = 0;
 				while(!isInterrupted()) {
+					for(Consumer<JanusEllipsoid> command; (command = commands.poll()) != null; ) command.accept(je);
 					je.iterate((int)1e2, sigmadz, sigmadphi);
+					samples.publish(je, step++);
 				}
 				// Update the local copy of the state with that of the JanusEllipsoid object
-				getRigidBodyState();
+				state.center = new Vector3d(je.center);
+				state.rot    = new Quaternion(je.rot);
 				
 				// Communicate with the view objects on the Swing thread
 				javax.swing.SwingUtilities.invokeLater(new Runnable() {
@@ -176,6 +241,7 @@ public class InteractiveJanusEllipsoid extends JFrame {
 						background = null;
 						// Inform the view objects that the simulation has finished
 						viewer.simulationFinished();
+						plots.simulationFinished();
 						controls.simulationFinished();
 					}
 				});
@@ -2,16 +2,14 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Arc2D;
+import java.awt.image.BufferedImage;
 import java.awt.Point;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseAdapter;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
 
 import javax.swing.JComponent;
-import javax.swing.Timer;
 
 /**
  * An interactive version of the pendulum viewer. This class interacts with a <code>JanusEllipsoid</code> object
@@ -28,7 +26,6 @@ public class InteractiveJanusEllipsoidViewer extends JComponent {
 	 * constants
 	 */
 	private static final double BOB_RADIUS = 10;
-	private static final int ANIMATION_DELAY = 50;	// Number of milliseconds between frames of an animation. 50ms = 20fps
 	private static final Vector3d XAXIS = new Vector3d(1.,0.,0.);	// x axis
 	private static final Vector3d YAXIS = new Vector3d(0.,1.,0.);	// y axis
 	private static final Vector3d ZAXIS = new Vector3d(0.,0.,1.);	// z axis
@@ -39,12 +36,17 @@ public class InteractiveJanusEllipsoidViewer extends JComponent {
 	private InteractiveJanusEllipsoid controller;
 	
 	/**
-	 * A timer object to perform the automatic updating of the window while the simulation is running
+	 * Repaints the window when the running simulation publishes a new sample, at a rate adapted to the time spent painting
 	 */
-	private Timer autoUpdater = new Timer(ANIMATION_DELAY, new ActionListener() {
-		@Override
-		public void actionPerformed(ActionEvent e) { repaint(); }		
-	});
+	private FramePacer pacer = new FramePacer(this);
+	private Flow.Subscription subscription = null;	// to the samples of the running simulation
+
+	/**
+	 * Last picture of the interface and of the ellipsoid, rendered again only when the pose or the size change
+	 */
+	private SurfaceRenderer renderer = new SurfaceRenderer();
+	private BufferedImage frame = null;
+	private Object[] frameKey = null;
 	
 	//  USER INTERACTION
 	
@@ -161,30 +163,33 @@ public class InteractiveJanusEllipsoidViewer extends JComponent {
 			double tmpx = Math.sin(theta)*ry+displacement.x;
 			double tmpy = Math.cos(theta)*ry-displacement.y;
 			theta = Math.acos( tmpy/Math.sqrt(tmpx*tmpx+tmpy*tmpy) );
-			state.rot = new Quaternion( Math.cos(theta/2.), Vector3d.mult(XAXIS, Math.sin(theta/2.)));
+			state.rot = tilt(theta);
 			controller.setRot(state.rot);
 		}
 	}
 	
+	/**
+	 * Orientation tilted by theta towards the right of the view, i.e. a rotation around the y axis
+	 */
+	private static Quaternion tilt(double theta) {
+		return new Quaternion( Math.cos(theta/2.), Vector3d.mult(YAXIS, Math.sin(theta/2.)));
+	}
+
 	// PAINTING
 	
 	protected void paintComponent(Graphics g) {
-
-		// Clear the background if we are an opaque component
-		if(isOpaque()) {
-			g.setColor(getBackground());
-			g.fillRect(0, 0, getWidth(), getHeight());
-		}
+		long start = System.nanoTime();
 
 		setupCoordinateSystem();
+		if(width<=0 || height<=0) return;
 		
-		// cast to Graphics2D for the rotation of the ellipse
+		// cast to Graphics2D for the hotspots
 		Graphics2D g2d = (Graphics2D)g;
-		AffineTransform old = g2d.getTransform();
 
-		// Get the most recent simulation state: all thread-safety issues are delegated to the controller object, so
-		// we don't need any synchronized blocks here
-		RigidBodyState state = controller.getRigidBodyState();
+		// Get the most recent simulation state: the sample shown by the pacer while running, otherwise the state
+		// of the controller; all thread-safety issues are delegated to them, so we don't need any synchronized blocks here
+		Sample sample = pacer.getSample();
+		RigidBodyState state = (controller.isRunning() && sample!=null) ? sample.getRigidBodyState() : controller.getRigidBodyState();
 
 		// rescaled axis
 		double rx = sx*controller.state.getAxis().a[0];
@@ -195,6 +200,9 @@ public class InteractiveJanusEllipsoidViewer extends JComponent {
 		// orientation of the ellipse
 		Vector3d zrotated = state.rot.rotate(ZAXIS);
 		double theta = Math.acos(Vector3d.dot(zrotated, ZAXIS));
+		// pose to draw
+		double z = state.center.a[2];
+		Quaternion rot = state.rot;
 
 		if(!controller.isRunning()) {
 			// Compute hotspot positions (NOTE: this is slightly inefficient, only really need to do this when the state is updated)
@@ -209,29 +217,24 @@ public class InteractiveJanusEllipsoidViewer extends JComponent {
 			// If we happen to be dragging one of the particles, move it before drawing
 			if(activeHotspot == 0) {	// translate
 				cy += displacement.y;
+				z  += displacement.y/sy;
 			}
 			else if(activeHotspot == 1) {	// rotate
 				double tmpx = Math.sin(theta)*ry+displacement.x;
 				double tmpy = Math.cos(theta)*ry-displacement.y;
 				theta = Math.acos( tmpy/Math.sqrt(tmpx*tmpx+tmpy*tmpy) );
+				rot = tilt(theta);
 			}
 		}
 		
-		// Draw the interface at z=0
-		g2d.setColor(Color.BLUE);
-		g2d.fillRect(0, height/2, width, height/2);
-		g.drawString( "Oil",   30, 30);
-		g2d.setColor(Color.WHITE);
-		g.drawString( "Water", 30, height-30);
-
-		// Now add the ellipsoid
-		g2d.rotate(theta,  cx, cy);
-		g2d.setColor(Color.RED);
-		g2d.fillOval((int)(cx-rx), (int)(cy-ry), (int)(2.0*rx), (int)(2.0*ry));
-		g2d.setColor(Color.YELLOW);
-		int alpha = (int)(180.*controller.state.getAlpha()/Math.PI);
-		g2d.fill(new Arc2D.Double((int)(cx-rx-1), (int)(cy-ry-1), (int)(2.0*rx+1), (int)(2.0*ry+1), 90-alpha, 2*alpha, Arc2D.CHORD));
-		g2d.setTransform(old);
+		// Render the surface of the ellipsoid only if something changed
+		Object[] key = JanusEllipsoidViewer.frameKey(controller.state, width, height, z, rot);
+		if(frame==null || !Arrays.equals(key, frameKey)) {
+			frame = renderer.render(controller.state, z, rot, width, height);
+			frameKey = key;
+		}
+		g.drawImage(frame, 0, 0, null);
+		JanusEllipsoidViewer.drawLabels(g, width, height);
 
 		// finally, paint the hotspots
 		if(!controller.isRunning()) {
@@ -239,10 +242,15 @@ public class InteractiveJanusEllipsoidViewer extends JComponent {
 			g2d.fillOval((int)(cx-BOB_RADIUS), (int)(cy-BOB_RADIUS), (int)(2.0*BOB_RADIUS), (int)(2.0*BOB_RADIUS));
 			g2d.fillOval((int)(cx+Math.sin(theta)*ry-BOB_RADIUS), (int)(cy-Math.cos(theta)*ry-BOB_RADIUS), (int)(2.0*BOB_RADIUS), (int)(2.0*BOB_RADIUS));
 		}
+		// or the real throughput of the simulation
+		else {
+			g2d.setColor(Color.BLACK);
+			g2d.drawString(String.format("%.0f MC steps/s, %.0f fps", pacer.getStepsPerSecond(), pacer.getFramesPerSecond()), width-200, 30);
+			pacer.painted(System.nanoTime()-start);
+		}
 
 	}
 
-
 	//  MESSAGES
 	
 	/**
@@ -253,16 +261,19 @@ public class InteractiveJanusEllipsoidViewer extends JComponent {
 		removeMouseListener(mouseFollower);
 		// Ensure display is up-to-date
 		repaint();
-		// Send repaint messages at regular intervals using the autoUpdater Timer object
-		autoUpdater.restart();
+		// Repaint when the simulation publishes new samples
+		pacer.start();
+		subscription = controller.getSamples().subscribe(pacer::offer, SamplePublisher.Backpressure.SAMPLE, 1);
 	}
 
 	/**
 	 * This is received whenever the simulation displayed by this view has stopped running
 	 */
 	public void simulationFinished() {
-		// Stop sending regular repaint messages
-		autoUpdater.stop();
+		// Stop following the samples
+		if(subscription != null) subscription.cancel();
+		subscription = null;
+		pacer.stop();
 		// Ensure display is up-to-date
 		repaint();
 		// Start following the mouse again
@@ -45,6 +45,7 @@ public class JanusEllipsoidControlPanel extends JPanel {
 	private JLabel      costhetaPLabel = new JLabel("cos(thetaR)");
 	private NumberField costhetaPField = new NumberField(1.0, roundToTwoDP);
 	private JButton   startStopButton  = new JButton("Start");
+	private JButton   plotsButton      = new JButton("Hide plots");
 
 	//   CONSTRUCTOR
 	
@@ -68,6 +69,15 @@ public class JanusEllipsoidControlPanel extends JPanel {
 			}			
 		});
 
+		// The plots button shows or hides the plots of the energy, z and theta
+		plotsButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				controller.setPlotsVisible(!controller.isPlotsVisible());
+				plotsButton.setText(controller.isPlotsVisible() ? "Hide plots" : "Show plots");
+			}
+		});
+
 		// The alpha slider sets the angle of the patch
 		alphaLabel.setText( String.format("alpha = %3d", (int)(180.*controller.state.getAlpha()/Math.PI)) );
 		alphaSlider.setValue( (int)(180.*controller.state.getAlpha()/Math.PI) );
@@ -176,6 +186,7 @@ public class JanusEllipsoidControlPanel extends JPanel {
 		add(costhetaPLabel);
 		add(costhetaPField);
 		add(startStopButton);
+		add(plotsButton);
 	}
 
 	//  MESSAGES
@@ -186,15 +197,7 @@ public class JanusEllipsoidControlPanel extends JPanel {
 	public void simulationStarted() {
 		// Change the start/stop button to reflect the fact it now stops the simulation
 		startStopButton.setText("Stop");
-		// Dim the other controls
-		alphaSlider.setEnabled(false);
-		zaxisField.setEnabled(false);
-		xaxisField.setEnabled(false);
-		sigmadzField.setEnabled(false);
-		sigmadphiField.setEnabled(false);
-		gammaField.setEnabled(false);
-		costhetaAField.setEnabled(false);
-		costhetaPField.setEnabled(false);
+		// The other controls stay enabled: the controller sends their changes to the running simulation
 	}
 
 	/**
@@ -203,15 +206,6 @@ public class JanusEllipsoidControlPanel extends JPanel {
 	public void simulationFinished() {
 		// Change the start/stop button to reflect the fact it now starts the simulation
 		startStopButton.setText("Start");
-		// Enable the other controls
-		alphaSlider.setEnabled(true);
-		zaxisField.setEnabled(true);
-		xaxisField.setEnabled(true);
-		sigmadzField.setEnabled(true);
-		sigmadphiField.setEnabled(true);
-		gammaField.setEnabled(true);
-		costhetaAField.setEnabled(true);
-		costhetaPField.setEnabled(true);
 	}
 	
 }
@@ -0,0 +1,203 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+
+/**
+ * A noninteractive version of the ellipsoid viewer. This class provides a custom Swing component whose
+ * <code>paintComponent</code> method displays the start of the <code>JanusEllipsoid</code> object
+ * that is supplied to the constructor when this object is created.
+ * When it is attached to the samples of a running simulation it shows the latest of them, paced by a
+ * <code>FramePacer</code>, so that the simulation never waits for the display.
+ * 
+ * This class also provides a <code>main</code> method that demonstrates the use of the custom
+ * component embedded within a <code>JFrame</code>
+ * 
+ * @author Giovanni Brandani
+ *
+ */
+public class JanusEllipsoidViewer extends JComponent {
+
+	/**
+	 * constants
+	 */
+	private static final Vector3d XAXIS = new Vector3d(1.,0.,0.);	// x axis
+	private static final Vector3d YAXIS = new Vector3d(0.,1.,0.);	// y axis
+	private static final Vector3d ZAXIS = new Vector3d(0.,0.,1.);	// z axis
+	
+	/**
+	 * Field to hold the ellipsoid whose state we want to view
+	 */
+	private JanusEllipsoid je;
+
+	/**
+	 * Repaints when new samples arrive, if attached to a simulation
+	 */
+	private final FramePacer pacer = new FramePacer(this);
+
+	/**
+	 * Last frame, with the surface of the ellipsoid rendered in 3D, rendered again only when the pose or the size change
+	 */
+	private final SurfaceRenderer renderer = new SurfaceRenderer();
+	private BufferedImage frame = null;
+	private Object[] frameKey = null;	// size, geometry, interface and pose of the frame
+
+	// CONSTRUCTOR
+	
+	/**
+	 * Create a JanusEllipsoid viewer on top of the double ellipsoid
+	 * state object passed as the argument to the constructor
+	 * 
+	 * @param jeview Janus ellipsoid state to view
+	 */
+	public JanusEllipsoidViewer(JanusEllipsoid jeview) {
+		je = jeview;
+		setOpaque(true);
+		setBackground(Color.WHITE);
+	}
+	
+	// PAINTING
+	
+	/**
+	 * This is the method in which all the drawing happens. It is called automatically by Swing when the component needs to
+	 * be drawn or updated.
+	 * 
+	 * @param g current graphics context (an object that provides the drawing methods)
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		long start = System.nanoTime();
+		// First, get the dimensions of the component
+		int width = getWidth(), height = getHeight();
+		if(width<=0 || height<=0) return;
+
+		// Get the most recent sample if we are attached to a simulation; otherwise, read the state of the JanusEllipsoid object
+		// with its lock, to ensure that it is consistent
+		Sample sample = pacer.getSample();
+		Vector3d center;
+		Quaternion rot;
+		if(sample!=null) {
+			center = new Vector3d(0., 0., sample.z);
+			rot    = sample.getRot();
+		}
+		else {
+			synchronized(je) {
+				center = new Vector3d(je.center);
+				rot    = new Quaternion(je.rot);
+			}
+		}
+
+		// Redraw the frame only if something changed
+		Object[] key = frameKey(je, width, height, center.a[2], rot);
+		if(frame==null || !Arrays.equals(key, frameKey)) {
+			frame = renderer.render(je, center.a[2], rot, width, height);
+			frameKey = key;
+		}
+		g.drawImage(frame, 0, 0, null);
+		drawLabels(g, width, height);
+
+		// Show the real throughput of the simulation
+		if(pacer.isRunning()) {
+			g.setColor(Color.BLACK);
+			g.drawString(String.format("%.0f MC steps/s, %.0f fps", pacer.getStepsPerSecond(), pacer.getFramesPerSecond()), 10, 20);
+			pacer.painted(System.nanoTime()-start);
+		}
+	}
+
+	/**
+	 * Key of a frame, equal for two frames that look the same: size, geometry and grid, interface and pose;
+	 * shared by the viewers, which render a frame again only when its key changes
+	 *
+	 * @param je		ellipsoid with the geometry and the interface
+	 * @param width		width of the picture
+	 * @param height	height of the picture
+	 * @param z			z coordinate of the center
+	 * @param rot		orientation
+	 * @return the key, to be compared with Arrays.equals
+	 */
+	public static Object[] frameKey(JanusEllipsoid je, int width, int height, double z, Quaternion rot) {
+		Vector3d axis = je.getAxis();
+		return new Object[] { width, height, axis.a[0], axis.a[1], axis.a[2], je.getAlpha(), je.getGrid(), je.getInterface(),
+			z, rot.re, rot.im.a[0], rot.im.a[1], rot.im.a[2] };
+	}
+
+	/**
+	 * Label the solvents on a picture of the interface; shared by the viewers and by <code>MovieExporter</code>
+	 *
+	 * @param g			where to draw
+	 * @param width		width of the picture
+	 * @param height	height of the picture
+	 */
+	public static void drawLabels(Graphics g, int width, int height) {
+		g.setColor(Color.BLUE);
+		g.drawString( "Oil",   30, 30);
+		g.setColor(Color.WHITE);
+		g.drawString( "Water", 30, height-30);
+	}
+
+	/**
+	 * Show the samples of a running simulation, instead of the state of the ellipsoid
+	 *
+	 * @param samples	samples of the simulation
+	 */
+	public void attach(SamplePublisher samples) {
+		samples.subscribe(pacer::offer, SamplePublisher.Backpressure.SAMPLE, 1);
+		pacer.start();
+	}
+
+	/**
+	 * Run a simulation forever at full speed, showing its samples in a viewer
+	 *
+	 * @param je	the ellipsoid to simulate
+	 * @param view	viewer of the ellipsoid
+	 */
+	public static void simulate(JanusEllipsoid je, JanusEllipsoidViewer view) {
+		SamplePublisher samples = new SamplePublisher();
+		javax.swing.SwingUtilities.invokeLater(() -> view.attach(samples));
+		for(long step=0; ; step++) {
+			je.iterate((int)1e2, 1e-2, 1e-2);
+			samples.publish(je, step);
+		}
+	}
+
+	/**
+	 * Main method for setting up an initial condition, iterating the equations of motion, and displaying a the system
+	 * 
+	 * @param args	command line arguments, currently ignored
+	 */
+	public static void main(String args[]) {
+		
+		// Create the default double-ellipsoid condition
+		// set axis and other parameters as in BslA
+		JanusEllipsoid je = new JanusEllipsoid(new Vector3d(1.4,1.4,2.6), Math.PI*0.28, 100);
+		je.gamma     = 12;	// surface tension in martini
+		je.costhetaA =-0.8;
+		je.costhetaP = 0.5;	// about the value for BslA
+
+		// check ration between areas
+		//System.out.printf("%f\t%f\t%f\n", je.Sao+je.Saw, je.Spo+je.Spw, (je.Sao+je.Saw)/(je.Spo+je.Spw));
+		
+		// Set up a Frame (window) to open on the screen
+		JFrame.setDefaultLookAndFeelDecorated(true);
+		JFrame frame = new JFrame("Janus ellipsoid");
+		frame.setPreferredSize(new Dimension(600,600));
+		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		
+		// Create a ellipsoid viewer, and place this within the frame
+		JanusEllipsoidViewer view = new JanusEllipsoidViewer(je);
+		frame.getContentPane().add(view);
+		
+		// Lay out the frame's contents, and put it on screen
+		frame.pack();
+		frame.setVisible(true);
+		
+		// Do steps of 100 MC moves at full speed and keep running forever; the viewer shows the latest of them
+		simulate(je, view);
+				
+	}
+	
+}
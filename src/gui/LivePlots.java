@@ -0,0 +1,180 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+
+import javax.swing.JComponent;
+
+/**
+ * Live plots of the energy, z and theta of a running simulation, to see whether it has equilibrated: for each quantity,
+ * its time series and, on the right, its histogram. The samples of the simulation are stored in a <code>RingBuffer</code>
+ * of fixed capacity by the thread that delivers them, so that the simulation never waits and the memory stays bounded
+ * however long the session; only the last CAPACITY samples are plotted.
+ * The time series are decimated to the minimum and the maximum of the samples in each column of pixels,
+ * so that the cost of drawing depends on the size of the panel and not on the number of samples.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class LivePlots extends JComponent {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	public static final int CAPACITY = 1<<16;	// samples kept, of 100 MC steps each
+	private static final int NBINS = 40;	// bins of the histograms
+	private static final int MARGIN = 8;	// pixels around the plots
+	private static final double TRACE = 0.72;	// fraction of the width for the time series
+	private static final int TIME = 0, ENERGY = 1, Z = 2, THETA = 3;	// channels of the buffer
+	private static final String[] NAMES = { "t", "energy (kT)", "z (nm)", "theta (deg)" };
+	private static final Color[] COLORS = { Color.BLACK, Color.RED.darker(), Color.BLUE, Color.GREEN.darker() };
+
+	/**
+	 * Samples of the running simulation, or of the last one; a new buffer for each run
+	 */
+	private volatile RingBuffer history = new RingBuffer(CAPACITY, 4);
+	private Flow.Subscription subscription = null;
+
+	/**
+	 * Repaints when new samples arrive, at a rate adapted to the time spent painting
+	 */
+	private FramePacer pacer = new FramePacer(this);
+
+	/**
+	 * Only used on the Swing thread: the copy of the buffer and the decimated columns
+	 */
+	private double[][] rows = new double[4][CAPACITY];
+	private double[] colMin = new double[0], colMax = new double[0];
+	private int[] bins = new int[NBINS];
+
+	// CONSTRUCTORS
+
+	/**
+	 * Create the plots, empty until a simulation starts
+	 */
+	public LivePlots() {
+		setOpaque(true);
+		setBackground(Color.WHITE);
+		setPreferredSize(new Dimension(320,600));
+	}
+
+	// PAINTING
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		long start = System.nanoTime();
+		int width = getWidth(), height = getHeight();
+		g.setColor(getBackground());
+		g.fillRect(0, 0, width, height);
+		int n = history.snapshot(rows);
+		g.setColor(Color.BLACK);
+		if(n==0) {
+			g.drawString("no samples", MARGIN, MARGIN+12);
+			return;
+		}
+		int rowHeight = (height-20)/3;
+		for(int c=ENERGY; c<=THETA; c++) paintChannel(g, c, n, MARGIN, (c-1)*rowHeight+MARGIN, width-2*MARGIN, rowHeight-2*MARGIN);
+		g.setColor(Color.BLACK);
+		g.drawString(String.format("t = %.0f ... %.0f MC steps, %d samples", rows[TIME][0], rows[TIME][n-1], n), MARGIN, height-6);
+		if(pacer.isRunning()) pacer.painted(System.nanoTime()-start);
+	}
+
+	/**
+	 * Paint the time series and the histogram of a channel in a box
+	 */
+	private void paintChannel(Graphics g, int c, int n, int x, int y, int w, int h) {
+		double[] t = rows[TIME], v = rows[c];
+		double scale = (c==THETA) ? 180./Math.PI : 1.;
+		double vmin = Double.POSITIVE_INFINITY, vmax = Double.NEGATIVE_INFINITY, sum = 0.;
+		for(int i=0; i<n; i++) {
+			vmin = Math.min(vmin, v[i]);
+			vmax = Math.max(vmax, v[i]);
+			sum += v[i];
+		}
+		if(vmax-vmin < 1e-12) { vmin -= 0.5; vmax += 0.5; }
+		int traceWidth = (int)(TRACE*w);
+		int histX = x+traceWidth+MARGIN, histWidth = w-traceWidth-MARGIN;
+		int top = y+14, plotHeight = h-14;
+		g.setColor(Color.LIGHT_GRAY);
+		g.drawRect(x, top, traceWidth, plotHeight);
+		g.drawRect(histX, top, histWidth, plotHeight);
+		g.setColor(Color.BLACK);
+		g.drawString(String.format("%s = %.3g, mean %.3g", NAMES[c], scale*v[n-1], scale*sum/n), x, y+10);
+
+		// time series, decimated to the range of the samples in each column
+		if(colMin.length < traceWidth) {
+			colMin = new double[traceWidth];
+			colMax = new double[traceWidth];
+		}
+		Arrays.fill(colMin, 0, traceWidth, Double.POSITIVE_INFINITY);
+		Arrays.fill(colMax, 0, traceWidth, Double.NEGATIVE_INFINITY);
+		double t0 = t[0], dt = Math.max(t[n-1]-t0, 1e-12);
+		for(int i=0; i<n; i++) {
+			int col = (int)((traceWidth-1)*(t[i]-t0)/dt);
+			if(v[i]<colMin[col]) colMin[col] = v[i];
+			if(v[i]>colMax[col]) colMax[col] = v[i];
+		}
+		double sy = (plotHeight-1)/(vmax-vmin);
+		int base = top+plotHeight-1;
+		g.setColor(COLORS[c]);
+		int lastY = -1;
+		for(int col=0; col<traceWidth; col++) {
+			if(colMin[col]>colMax[col]) continue;	// no samples in this column
+			int ylo = base-(int)(sy*(colMin[col]-vmin)), yhi = base-(int)(sy*(colMax[col]-vmin));
+			int ymid = (ylo+yhi)/2;
+			if(lastY>=0) g.drawLine(x+col-1, lastY, x+col, ymid);
+			g.drawLine(x+col, ylo, x+col, yhi);
+			lastY = ymid;
+		}
+
+		// histogram, with the same vertical axis
+		Arrays.fill(bins, 0);
+		for(int i=0; i<n; i++) bins[Math.min(NBINS-1, (int)(NBINS*(v[i]-vmin)/(vmax-vmin)))]++;
+		int maxBin = 1;
+		for(int b : bins) maxBin = Math.max(maxBin, b);
+		for(int b=0; b<NBINS; b++) {
+			int y0 = base-(int)((double)(b+1)*(plotHeight-1)/NBINS), y1 = base-(int)((double)b*(plotHeight-1)/NBINS);
+			int len = (int)((double)(histWidth-1)*bins[b]/maxBin);
+			g.fillRect(histX+1, y0+1, len, Math.max(1, y1-y0));
+		}
+		g.setColor(Color.BLACK);
+		g.drawString(String.format("%.3g", scale*vmax), histX+2, top+12);
+		g.drawString(String.format("%.3g", scale*vmin), histX+2, top+plotHeight-2);
+	}
+
+	//  MESSAGES
+
+	/**
+	 * This is received whenever a simulation has started running: plot its samples from now on
+	 *
+	 * @param samples	samples of the simulation
+	 */
+	public void simulationStarted(SamplePublisher samples) {
+		RingBuffer buffer = new RingBuffer(CAPACITY, 4);
+		history = buffer;
+		double[] row = new double[4];	// only used by the delivering thread
+		pacer.start();
+		subscription = samples.subscribe(sample -> {
+			row[TIME]   = sample.time;
+			row[ENERGY] = sample.energy;
+			row[Z]      = sample.z;
+			row[THETA]  = sample.getTheta();
+			buffer.add(row);
+			pacer.offer(sample);
+		}, SamplePublisher.Backpressure.SAMPLE, SamplePublisher.DEFAULTCAPACITY);
+	}
+
+	/**
+	 * This is received whenever the simulation has stopped running: keep its plots
+	 */
+	public void simulationFinished() {
+		if(subscription != null) subscription.cancel();
+		subscription = null;
+		pacer.stop();
+		repaint();
+	}
+
+}
@@ -0,0 +1,289 @@
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Headless export of the frames of a trajectory written by <code>java JanusEllipsoid</code>, as numbered PNG files
+ * to be joined into a movie, for example with ffmpeg -i frame_%06d.png movie.mp4. The frames are drawn as in the
+ * viewers, with <code>SurfaceRenderer</code>, and optionally with a translucent overlay of time, energy and theta,
+ * and of the energy along the whole trajectory. Each worker thread owns its renderer and its image.
+ * Trajectories written before the orientation was saved are drawn with the tilt theta only.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class MovieExporter {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	private static final int OVERLAYWIDTH = 200, OVERLAYHEIGHT = 110;	// size of the overlay
+	private static final int PLOTHEIGHT = 40;	// height of the plot of the energy in the overlay
+	private static final float OPACITY = 0.75f;	// of the overlay
+
+	private final JanusEllipsoid geometry;	// only its grid and its interface are used
+	private final double[] time, z, theta, energy;
+	private final Quaternion[] rot;	// orientations, or null if they are not in the trajectory
+	private int width = 600, height = 600;
+	private int stride = 1;	// one frame every stride samples
+	private boolean overlay = true;
+	private double[] plotmin, plotmax;	// energy decimated to the width of the plot, with the minimum and maximum of each column
+	private double emin, emax;	// range of the energy
+
+	// CONSTRUCTORS
+
+	/**
+	 * Create an exporter of a trajectory
+	 *
+	 * @param geometry	ellipsoid with the geometry of the trajectory
+	 * @param time		MC time of the samples
+	 * @param z			z coordinate of the center
+	 * @param theta		tilt angle
+	 * @param energy	energy
+	 * @param rot		orientations, or null to draw the tilt theta only
+	 */
+	public MovieExporter(JanusEllipsoid geometry, double[] time, double[] z, double[] theta, double[] energy, Quaternion[] rot) {
+		this.geometry = geometry;
+		this.time = time;
+		this.z = z;
+		this.theta = theta;
+		this.energy = energy;
+		this.rot = rot;
+		this.decimate();
+	}
+
+	/**
+	 * Read a trajectory written by <code>java JanusEllipsoid</code>, with the geometry and the radius of the droplet, if any, in its header
+	 *
+	 * @param filename	name of the trajectory
+	 * @param ngrid		resolution of the surface points
+	 * @return the exporter
+	 * @throws IOException if the file cannot be read or its header has no geometry
+	 */
+	public static MovieExporter read(String filename, int ngrid) throws IOException {
+		double Lx = Double.NaN, Ly = Double.NaN, Lz = Double.NaN, alpha = Double.NaN, radius = 0.;
+		List<double[]> rows = new ArrayList<double[]>();
+		boolean oriented = true;	// whether all the samples have the orientation
+		try(BufferedReader in = new BufferedReader(new FileReader(filename))) {
+			String line;
+			while((line = in.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty()) continue;
+				if(line.startsWith("#")) {
+					if(line.startsWith("# Lx = "))    Lx    = Double.valueOf(line.substring(7));
+					if(line.startsWith("# Ly = "))    Ly    = Double.valueOf(line.substring(7));
+					if(line.startsWith("# Lz = "))    Lz    = Double.valueOf(line.substring(7));
+					if(line.startsWith("# alpha = ")) alpha = Double.valueOf(line.substring(10));
+					if(line.startsWith("# radius = ")) radius = Double.valueOf(line.substring(11));
+					continue;
+				}
+				// time z theta energy Sao Spo Si [q_re q_x q_y q_z]
+				String[] col = line.split("\\s+");
+				double[] row = new double[col.length];
+				for(int k=0; k<col.length; k++) row[k] = Double.valueOf(col[k]);
+				if(row.length<11) oriented = false;
+				rows.add(row);
+			}
+		}
+		catch(NumberFormatException e) { throw new IOException("malformed line in " + filename); }
+		if(Double.isNaN(Lx) || Double.isNaN(Ly) || Double.isNaN(Lz) || Double.isNaN(alpha)) throw new IOException("missing geometry in the header of " + filename);
+		int n = rows.size();
+		double[] time = new double[n], z = new double[n], theta = new double[n], energy = new double[n];
+		Quaternion[] rot = oriented ? new Quaternion[n] : null;
+		for(int i=0; i<n; i++) {
+			double[] row = rows.get(i);
+			time[i] = row[0]; z[i] = row[1]; theta[i] = row[2]; energy[i] = row[3];
+			if(oriented) rot[i] = new Quaternion(row[7], new Vector3d(row[8], row[9], row[10]));
+		}
+		JanusEllipsoid geometry = new JanusEllipsoid(new Vector3d(Lx, Ly, Lz), Math.PI*alpha/180., ngrid);
+		if(radius!=0.) geometry.setInterface(new SphericalInterface(radius));
+		return new MovieExporter(geometry, time, z, theta, energy, rot);
+	}
+
+	// ACCESSORS
+
+	public void setSize(int width, int height) { this.width = width; this.height = height; }
+	public void setStride(int stride)          { this.stride = Math.max(1, stride); }
+	public void setOverlay(boolean overlay)    { this.overlay = overlay; }
+	public int getSamples()                    { return this.time.length; }
+	public int getFrames()                     { return (this.time.length+this.stride-1)/this.stride; }
+	public boolean isOriented()                { return this.rot!=null; }
+
+	// COMPUTES
+
+	/**
+	 * Decimate the energy to the columns of the plot, keeping the minimum and the maximum of each,
+	 * so that the plot shows all the spikes however long the trajectory is
+	 */
+	private void decimate() {
+		int columns = OVERLAYWIDTH-20;
+		this.plotmin = new double[columns];
+		this.plotmax = new double[columns];
+		this.emin = Double.POSITIVE_INFINITY;
+		this.emax = Double.NEGATIVE_INFINITY;
+		Arrays.fill(this.plotmin, Double.POSITIVE_INFINITY);
+		Arrays.fill(this.plotmax, Double.NEGATIVE_INFINITY);
+		int n = this.energy.length;
+		for(int i=0; i<n; i++) {
+			int c = (int)((long)i*columns/n);
+			this.plotmin[c] = Math.min(this.plotmin[c], this.energy[i]);
+			this.plotmax[c] = Math.max(this.plotmax[c], this.energy[i]);
+			this.emin = Math.min(this.emin, this.energy[i]);
+			this.emax = Math.max(this.emax, this.energy[i]);
+		}
+	}
+
+	/**
+	 * Render a frame
+	 *
+	 * @param renderer	renderer of the calling thread, which owns the returned image
+	 * @param frame		index of the frame
+	 * @return the picture, valid until the next call with the same renderer
+	 */
+	public BufferedImage render(SurfaceRenderer renderer, int frame) {
+		int i = frame*this.stride;
+		Quaternion q = (this.rot!=null) ? this.rot[i] : new Quaternion(Math.cos(0.5*this.theta[i]), new Vector3d(0., Math.sin(0.5*this.theta[i]), 0.));
+		BufferedImage image = renderer.render(this.geometry, this.z[i], q, this.width, this.height);
+		Graphics2D g = image.createGraphics();
+		JanusEllipsoidViewer.drawLabels(g, this.width, this.height);
+		if(this.overlay) this.drawOverlay(g, i);
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Draw a translucent box with time, energy and theta of sample i, and the energy along the trajectory
+	 */
+	private void drawOverlay(Graphics2D g, int i) {
+		int x0 = this.width-OVERLAYWIDTH-10, y0 = 10;
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		Composite old = g.getComposite();
+		g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, OPACITY));
+		g.setColor(Color.WHITE);
+		g.fillRoundRect(x0, y0, OVERLAYWIDTH, OVERLAYHEIGHT, 10, 10);
+		g.setComposite(old);
+		g.setColor(Color.BLACK);
+		g.drawString(String.format("t = %.0f", this.time[i]),                        x0+10, y0+18);
+		g.drawString(String.format("energy = %.2f kT", this.energy[i]),              x0+10, y0+34);
+		g.drawString(String.format("theta = %.1f deg", 180.*this.theta[i]/Math.PI), x0+10, y0+50);
+		// energy along the trajectory, with the current sample marked
+		int px = x0+10, py = y0+OVERLAYHEIGHT-8;
+		double range = Math.max(this.emax-this.emin, 1e-12);
+		g.setColor(Color.DARK_GRAY);
+		for(int c=0; c<this.plotmin.length; c++) {
+			if(this.plotmin[c]>this.plotmax[c]) continue;	// no samples in this column
+			int top = py - (int)(PLOTHEIGHT*(this.plotmax[c]-this.emin)/range), bottom = py - (int)(PLOTHEIGHT*(this.plotmin[c]-this.emin)/range);
+			g.drawLine(px+c, top, px+c, bottom);
+		}
+		int c = (int)((long)i*this.plotmin.length/this.energy.length);
+		g.setColor(Color.RED);
+		g.drawLine(px+c, py-PLOTHEIGHT, px+c, py);
+	}
+
+	/**
+	 * Write all the frames as dir/frame_000000.png, ... rendering them in parallel
+	 *
+	 * @param dir		directory of the frames, created if needed
+	 * @param nthreads	number of worker threads
+	 * @return the number of frames written
+	 */
+	public int export(String dir, int nthreads) throws IOException, InterruptedException {
+		File directory = new File(dir);
+		if(!directory.isDirectory() && !directory.mkdirs()) throw new IOException("cannot create " + dir);
+		int nframes = this.getFrames();
+		AtomicInteger next = new AtomicInteger();	// frames are taken one at a time, so that the workers stay balanced
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		List<Future<Integer>> workers = new ArrayList<Future<Integer>>();
+		for(int w=0; w<nthreads; w++) {
+			workers.add(pool.submit(() -> {
+				SurfaceRenderer renderer = new SurfaceRenderer();
+				renderer.setParallel(false);	// the parallelism is over the frames
+				int count = 0;
+				for(int f; (f = next.getAndIncrement()) < nframes; count++) {
+					ImageIO.write(this.render(renderer, f), "png", new File(directory, String.format("frame_%06d.png", f)));
+				}
+				return count;
+			}));
+		}
+		pool.shutdown();
+		int written = 0;
+		try {
+			for(Future<Integer> worker : workers) written += worker.get();
+		}
+		catch(ExecutionException e) {
+			pool.shutdownNow();
+			if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+		return written;
+	}
+
+	//   MAIN METHOD
+
+	public static void main(String args[]) {
+
+		System.setProperty("java.awt.headless", "true");	// no display is needed
+		int ngrid = JanusEllipsoid.DEFAULTNGRID;
+		int nthreads = Runtime.getRuntime().availableProcessors();
+		int width = 600, height = 600, stride = 1;
+		boolean overlay = true;
+		String dir = "frames", file = null;
+
+		// parse command line arguments
+		System.out.println("# Usage: java MovieExporter [-out dir] [-stride val] [-width val] [-height val] [-ngrid val] [-threads val] [-nooverlay] trajectory");
+		try {
+			for(int i=0; i<args.length; i++) {
+				if( args[i].equals("-out") )            { dir      = args[i+1]; i++; }
+				else if( args[i].equals("-stride") )    { stride   = Integer.valueOf(args[i+1]); i++; }
+				else if( args[i].equals("-width") )     { width    = Integer.valueOf(args[i+1]); i++; }
+				else if( args[i].equals("-height") )    { height   = Integer.valueOf(args[i+1]); i++; }
+				else if( args[i].equals("-ngrid") )     { ngrid    = Integer.valueOf(args[i+1]); i++; }
+				else if( args[i].equals("-threads") )   { nthreads = Integer.valueOf(args[i+1]); i++; }
+				else if( args[i].equals("-nooverlay") ) overlay = false;
+				else file = args[i];
+			}
+		}
+		catch(Exception e) { System.out.println("# Command line argument error"); System.exit(-1); }
+		if(file==null) { System.out.println("# No input file"); System.exit(-1); }
+
+		System.out.print("# Generated by: java MovieExporter");
+		for(int i=0; i<args.length; i++) System.out.print( " " + args[i] );
+		System.out.println("");
+
+		try {
+			MovieExporter movie = read(file, ngrid);
+			movie.setSize(width, height);
+			movie.setStride(stride);
+			movie.setOverlay(overlay);
+			System.out.println("# samples = " + movie.getSamples() );
+			System.out.println("# frames = "  + movie.getFrames() );
+			if(!movie.isOriented()) System.out.println("# no orientations in the trajectory, drawing the tilt only");
+			long startTime = System.currentTimeMillis();
+			int n = movie.export(dir, nthreads);
+			long endTime = System.currentTimeMillis();
+			System.out.println("# " + n + " frames written to " + dir + " in " + 0.001*(endTime-startTime) + " s");
+		}
+		catch(IOException | InterruptedException e) { System.out.println("# Error: " + e.getMessage()); System.exit(-1); }
+
+	}
+
+}
@@ -0,0 +1,282 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Software 3D renderer of the surface grid of a Janus ellipsoid at the interface, seen from the side as in
+ * the 2D viewers: x to the right, z up, looking along y, with an orthographic projection and an optional elevation
+ * of the camera. The quads between neighbouring points of the grid, closed by fans at the poles, are rasterized
+ * with a z-buffer and flat Lambert shading, colored by type (apolar yellow, polar red) and tinted blue in water,
+ * so that triaxial shapes and the azimuthal orientation are visible. Water and oil are told apart by the
+ * <code>InterfaceGeometry</code> of the ellipsoid, both on its surface and in the background, which shows
+ * the solvents in the plane y = 0 through the center of the ellipsoid, so that a droplet appears curved.
+ * The picture is split into bands of rows, rasterized in parallel; image, z-buffer and vertex arrays are kept
+ * between frames, so that a frame allocates nothing unless the size or the grid change.
+ * A renderer is not thread safe: each view needs its own.
+ *
+ * @author Giovanni Brandani
+ *
+ */
+public class SurfaceRenderer {
+
+	// STATE
+
+	/**
+	 * constants
+	 */
+	private static final int BANDROWS = 16;	// rows of pixels per band of parallel work
+	private static final double AMBIENT = 0.35;	// fraction of the light that does not depend on the orientation
+	private static final double[] LIGHT = normalize(-0.4, -1.0, 0.6);	// direction towards the light
+	private static final int OIL = Color.WHITE.getRGB(), WATER = Color.BLUE.getRGB();	// backgrounds, as in the 2D viewers
+	private static final int APOLAR = Color.YELLOW.getRGB(), POLAR = Color.RED.getRGB();
+	private static final double TINT = 0.4;	// weight of the blue of water on the surface in water
+
+	private double elevation = 0.;	// angle of the camera above the interface, in radians
+	private boolean parallel = true;	// whether the bands are rasterized in parallel
+
+	/**
+	 * Geometry of the last grid, in the frame of the ellipsoid: vertices and normals, poles last, and triangles
+	 */
+	private Vector3d[] grid = null;	// to tell whether the grid changed
+	private double[] bx, by, bz, bnx, bny, bnz;	// vertices and their normals
+	private int[] type;	// type of each vertex
+	private int[] triangles;	// 3 vertices for each triangle
+	private int ntriangles;
+
+	/**
+	 * Buffers of each frame
+	 */
+	private double[] sx, sy, depth, nw;	// screen coordinates, depth and normal towards the light of the vertices
+	private double[] wx, wy, wz;	// positions of the vertices in the frame of the box
+	private BufferedImage image = null;
+	private int[] pixels;
+	private float[] zbuffer;
+	private int[][] bins = new int[0][];	// triangles touching each band
+	private int[] binsize = new int[0];
+
+	// CONSTRUCTORS
+
+	public SurfaceRenderer() {
+	}
+
+	// ACCESSORS
+
+	/**
+	 * Angle of the camera above the interface, in radians; 0 looks along the interface
+	 */
+	public void setElevation(double elevation) { this.elevation = elevation; }
+	public double getElevation()               { return this.elevation; }
+
+	/**
+	 * Rasterize the bands in parallel, or in the calling thread when the frames themselves are rendered in parallel
+	 */
+	public void setParallel(boolean parallel)  { this.parallel = parallel; }
+
+	// COMPUTES
+
+	/**
+	 * Render an ellipsoid in its current state, read with its lock
+	 */
+	public BufferedImage render(JanusEllipsoid je, int width, int height) {
+		double z;
+		Quaternion rot;
+		synchronized(je) {
+			z = je.center.a[2];
+			rot = new Quaternion(je.rot);
+		}
+		return this.render(je, z, rot, width, height);
+	}
+
+	/**
+	 * Render the surface of an ellipsoid in a given pose. The scale is the same as in the 2D viewers:
+	 * the height of the picture is twice the maximum length of the ellipsoid, and the interface crosses its middle.
+	 * The image is reused by the next call.
+	 *
+	 * @param je		ellipsoid with the grid to draw
+	 * @param z			z coordinate of the center
+	 * @param rot		orientation
+	 * @param width		width of the picture
+	 * @param height	height of the picture
+	 * @return the picture
+	 */
+	public BufferedImage render(JanusEllipsoid je, double z, Quaternion rot, int width, int height) {
+		this.setupGeometry(je);
+		this.setupBuffers(width, height);
+		int nv = this.bx.length;
+
+		// camera: right = x, up = (0, sin e, cos e), forward = (0, cos e, -sin e), looking from -y towards +y and down
+		double se = Math.sin(this.elevation), ce = Math.cos(this.elevation);
+		double scale = 0.5*height/je.getMaximumLength();
+		double ox = 0.5*width, oy = 0.5*height;
+		// rotation matrix of the quaternion
+		double w = rot.re, x = rot.im.a[0], y = rot.im.a[1], q = rot.im.a[2];
+		double r00 = 1.-2.*(y*y+q*q), r01 = 2.*(x*y-w*q),     r02 = 2.*(x*q+w*y);
+		double r10 = 2.*(x*y+w*q),     r11 = 1.-2.*(x*x+q*q), r12 = 2.*(y*q-w*x);
+		double r20 = 2.*(x*q-w*y),     r21 = 2.*(y*q+w*x),     r22 = 1.-2.*(x*x+y*y);
+		for(int v=0; v<nv; v++) {
+			double px = r00*this.bx[v] + r01*this.by[v] + r02*this.bz[v];
+			double py = r10*this.bx[v] + r11*this.by[v] + r12*this.bz[v];
+			double pz = r20*this.bx[v] + r21*this.by[v] + r22*this.bz[v] + z;
+			double nx = r00*this.bnx[v] + r01*this.bny[v] + r02*this.bnz[v];
+			double ny = r10*this.bnx[v] + r11*this.bny[v] + r12*this.bnz[v];
+			double nz = r20*this.bnx[v] + r21*this.bny[v] + r22*this.bnz[v];
+			this.sx[v] = ox + scale*px;
+			this.sy[v] = oy - scale*(se*py + ce*pz);
+			this.depth[v] = ce*py - se*pz;
+			this.nw[v] = nx*LIGHT[0] + ny*LIGHT[1] + nz*LIGHT[2];
+			this.wx[v] = px;
+			this.wy[v] = py;
+			this.wz[v] = pz;
+		}
+
+		InterfaceGeometry surface = je.getInterface();
+		this.bin(height);
+		IntStream bands = IntStream.range(0, this.bins.length);
+		(this.parallel ? bands.parallel() : bands).forEach(b -> this.rasterize(b, width, height, surface, ox, oy, scale, ce));
+		return this.image;
+	}
+
+	/**
+	 * Build vertices, normals and triangles when the grid changes
+	 */
+	private void setupGeometry(JanusEllipsoid je) {
+		Vector3d[] g = je.getGrid();
+		if(g==this.grid) return;
+		int n = je.getNgrid(), nv = g.length+2;
+		int[] tg = je.getTypegrid();
+		Vector3d axis = je.getAxis();
+		this.bx = new double[nv]; this.by = new double[nv]; this.bz = new double[nv];
+		this.bnx = new double[nv]; this.bny = new double[nv]; this.bnz = new double[nv];
+		this.type = new int[nv];
+		for(int k=0; k<g.length; k++) {
+			this.bx[k] = g[k].a[0]; this.by[k] = g[k].a[1]; this.bz[k] = g[k].a[2];
+			double[] nk = normalize(g[k].a[0]/(axis.a[0]*axis.a[0]), g[k].a[1]/(axis.a[1]*axis.a[1]), g[k].a[2]/(axis.a[2]*axis.a[2]));
+			this.bnx[k] = nk[0]; this.bny[k] = nk[1]; this.bnz[k] = nk[2];
+			this.type[k] = tg[k];
+		}
+		int north = g.length, south = g.length+1;	// the poles, with the type of the nearest ring
+		this.bz[north] = axis.a[2];  this.bnz[north] = 1.;  this.type[north] = tg[0];
+		this.bz[south] = -axis.a[2]; this.bnz[south] = -1.; this.type[south] = tg[g.length-1];
+		// grid point k = i*n+j has theta index i and phi index j, and phi is periodic
+		this.ntriangles = 2*(n-1)*n + 2*n;
+		this.triangles = new int[3*this.ntriangles];
+		int t = 0;
+		for(int i=0; i<n-1; i++) {
+			for(int j=0; j<n; j++) {
+				int a = i*n+j, b = i*n+(j+1)%n, c = (i+1)*n+(j+1)%n, d = (i+1)*n+j;
+				t = put(this.triangles, t, a, b, c);
+				t = put(this.triangles, t, a, c, d);
+			}
+		}
+		for(int j=0; j<n; j++) {
+			t = put(this.triangles, t, north, (j+1)%n, j);
+			t = put(this.triangles, t, south, (n-1)*n+j, (n-1)*n+(j+1)%n);
+		}
+		this.sx = new double[nv]; this.sy = new double[nv]; this.depth = new double[nv]; this.nw = new double[nv]; this.wx = new double[nv]; this.wy = new double[nv]; this.wz = new double[nv];
+		this.grid = g;
+	}
+
+	private static int put(int[] triangles, int t, int a, int b, int c) {
+		triangles[t++] = a;
+		triangles[t++] = b;
+		triangles[t++] = c;
+		return t;
+	}
+
+	/**
+	 * Allocate image and z-buffer when the size changes
+	 */
+	private void setupBuffers(int width, int height) {
+		if(this.image!=null && this.image.getWidth()==width && this.image.getHeight()==height) return;
+		this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		this.pixels = ((DataBufferInt)this.image.getRaster().getDataBuffer()).getData();
+		this.zbuffer = new float[width*height];
+		int nbands = (height+BANDROWS-1)/BANDROWS;
+		this.bins = new int[nbands][16];
+		this.binsize = new int[nbands];
+	}
+
+	/**
+	 * Put each front-facing triangle in the bands of rows that it touches
+	 */
+	private void bin(int height) {
+		Arrays.fill(this.binsize, 0);
+		for(int t=0; t<this.ntriangles; t++) {
+			int a = this.triangles[3*t], b = this.triangles[3*t+1], c = this.triangles[3*t+2];
+			// signed area on screen: the triangles are wound so that it is positive when they face the camera
+			double area = (this.sx[b]-this.sx[a])*(this.sy[c]-this.sy[a]) - (this.sx[c]-this.sx[a])*(this.sy[b]-this.sy[a]);
+			if(area<=0.) continue;
+			double ymin = Math.min(this.sy[a], Math.min(this.sy[b], this.sy[c])), ymax = Math.max(this.sy[a], Math.max(this.sy[b], this.sy[c]));
+			int first = Math.max(0, (int)Math.floor(ymin)/BANDROWS), last = Math.min(this.bins.length-1, (int)Math.ceil(ymax)/BANDROWS);
+			for(int band=first; band<=last; band++) {
+				if(this.binsize[band]==this.bins[band].length) this.bins[band] = Arrays.copyOf(this.bins[band], 2*this.bins[band].length);
+				this.bins[band][this.binsize[band]++] = t;
+			}
+		}
+	}
+
+	/**
+	 * Fill a band of rows with the solvents, clear its z-buffer and rasterize its triangles;
+	 * the solvent of a pixel is the one where its ray crosses the plane y = 0
+	 */
+	private void rasterize(int band, int width, int height, InterfaceGeometry surface, double ox, double oy, double scale, double ce) {
+		int row0 = band*BANDROWS, row1 = Math.min(height, row0+BANDROWS);
+		for(int r=row0; r<row1; r++) {
+			double z = (oy-r-0.5)/(scale*ce);
+			for(int c=0; c<width; c++) this.pixels[r*width+c] = surface.inOil((c+0.5-ox)/scale, 0., z) ? OIL : WATER;
+			Arrays.fill(this.zbuffer, r*width, (r+1)*width, Float.POSITIVE_INFINITY);
+		}
+		int[] bin = this.bins[band];
+		for(int k=0; k<this.binsize[band]; k++) {
+			int t = bin[k];
+			int a = this.triangles[3*t], b = this.triangles[3*t+1], c = this.triangles[3*t+2];
+			double ax = this.sx[a], ay = this.sy[a], bx = this.sx[b], by = this.sy[b], cx = this.sx[c], cy = this.sy[c];
+			double area = (bx-ax)*(cy-ay) - (cx-ax)*(by-ay);
+			int xmin = Math.max(0, (int)Math.floor(Math.min(ax, Math.min(bx, cx)))), xmax = Math.min(width-1, (int)Math.ceil(Math.max(ax, Math.max(bx, cx))));
+			int ymin = Math.max(row0, (int)Math.floor(Math.min(ay, Math.min(by, cy)))), ymax = Math.min(row1-1, (int)Math.ceil(Math.max(ay, Math.max(by, cy))));
+			if(xmin>xmax || ymin>ymax) continue;
+			int color = this.shade(a, b, c, surface);
+			double da = this.depth[a], db = this.depth[b], dc = this.depth[c];
+			for(int py=ymin; py<=ymax; py++) {
+				double fy = py+0.5;
+				for(int px=xmin; px<=xmax; px++) {
+					double fx = px+0.5;
+					// barycentric coordinates, all of the same sign as the area inside the triangle
+					double wa = (bx-fx)*(cy-fy) - (cx-fx)*(by-fy);
+					double wb = (cx-fx)*(ay-fy) - (ax-fx)*(cy-fy);
+					double wc = (ax-fx)*(by-fy) - (bx-fx)*(ay-fy);
+					if(wa<0. || wb<0. || wc<0.) continue;
+					float d = (float)((wa*da + wb*db + wc*dc)/area);
+					int p = py*width+px;
+					if(d<this.zbuffer[p]) {
+						this.zbuffer[p] = d;
+						this.pixels[p] = color;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flat shaded color of a triangle, tinted if its centroid is in water
+	 */
+	private int shade(int a, int b, int c, InterfaceGeometry surface) {
+		int base = (this.type[a]==0) ? APOLAR : POLAR;
+		double light = AMBIENT + (1.-AMBIENT)*Math.max(0., (this.nw[a]+this.nw[b]+this.nw[c])/3.);
+		double red = ((base>>16)&0xff)*light, green = ((base>>8)&0xff)*light, blue = (base&0xff)*light;
+		if(!surface.inOil((this.wx[a]+this.wx[b]+this.wx[c])/3., (this.wy[a]+this.wy[b]+this.wy[c])/3., (this.wz[a]+this.wz[b]+this.wz[c])/3.)) {
+			red   *= 1.-TINT;
+			green *= 1.-TINT;
+			blue   = (1.-TINT)*blue + TINT*255.*light;
+		}
+		return ((int)red<<16) | ((int)green<<8) | (int)blue;
+	}
+
+	private static double[] normalize(double x, double y, double z) {
+		double norm = Math.sqrt(x*x + y*y + z*z);
+		return new double[] { x/norm, y/norm, z/norm };
+	}
+
+}